@@ -0,0 +1,101 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper.benchmarks;
+
+import hudson.EnvVars;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.CloudFormation;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.EC2;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackPoller;
+
+/**
+ * Creates and updates a stack through {@link CloudFormation} against canned API results that report the operation
+ * over at the first poll, so only the plugin's own work is measured: building the requests, scanning large describe
+ * results for the stack, diffing parameters on update, paging through and formatting stack events and prefixing
+ * outputs. Each operation also includes one hand-off to the {@link StackPoller} and back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloudFormationBenchmark {
+
+	/**
+	 * Timeout value CloudFormation recognises as "do not sleep between polls".
+	 */
+	private static final long NO_WAIT = -12345;
+
+	@Param({ "10", "1000", "5000" })
+	public int stackCount;
+
+	@Param({ "10", "300" })
+	public int parameterCount;
+
+	@Param({ "100", "5000" })
+	public int eventCount;
+
+	private CloudFormation creating;
+	private CloudFormation updating;
+
+	@Setup
+	public void setUp() {
+		DescribeStackEventsResult events = Fixtures.describeStackEvents(eventCount);
+
+		DescribeStacksResult created = Fixtures.describeStacks(stackCount, StackStatus.CREATE_COMPLETE,
+				Fixtures.parameters(parameterCount, "old-"), Fixtures.outputs(parameterCount));
+		creating = newCloudFormation(Fixtures.cannedClient(created, events),
+				Fixtures.parameterMap(parameterCount, "new-"));
+
+		DescribeStacksResult updated = Fixtures.describeStacks(stackCount, StackStatus.UPDATE_COMPLETE,
+				Fixtures.parameters(parameterCount, "old-"), Fixtures.outputs(parameterCount));
+		updating = newCloudFormation(Fixtures.cannedClient(updated, events),
+				Fixtures.parameterMap(parameterCount, "new-"));
+	}
+
+	@Benchmark
+	public Map<String, String> create() throws Exception {
+		if (!creating.create()) throw new IllegalStateException("The canned creation failed");
+		return creating.getOutputs();
+	}
+
+	@Benchmark
+	public Map<String, String> update() throws Exception {
+		if (!updating.update()) throw new IllegalStateException("The canned update failed");
+		return updating.getOutputs();
+	}
+
+	private static CloudFormation newCloudFormation(final AmazonCloudFormation client, Map<String, String> parameters) {
+		return new CloudFormation(Fixtures.nullLogger(), Fixtures.STACK_NAME, "{}", parameters, NO_WAIT,
+				"accessKey", "secretKey", true, new EnvVars()) {
+			@Override
+			protected AmazonCloudFormation getAWSClient() {
+				return client;
+			}
+
+			@Override
+			protected EC2 getEC2Client() {
+				return null;
+			}
+		};
+	}
+
+}
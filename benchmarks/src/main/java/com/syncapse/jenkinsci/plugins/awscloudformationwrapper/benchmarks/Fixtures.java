@@ -0,0 +1,141 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackResult;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.UpdateStackResult;
+
+/**
+ * Builds the large, realistic inputs used by the benchmarks: accounts with thousands of stacks,
+ * stacks with hundreds of parameters and outputs, and long event histories.
+ */
+public final class Fixtures {
+
+	public static final String STACK_NAME = "benchmark-stack";
+
+	private Fixtures() {
+	}
+
+	/**
+	 * A logger that formats everything it is given but throws the bytes away.
+	 */
+	public static PrintStream nullLogger() {
+		return new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+
+	/**
+	 * @return a free text parameter definition as typed into the job configuration.
+	 */
+	public static String parameterText(int count, String delimiter) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) text.append(delimiter).append(' ');
+			text.append("Parameter").append(i).append(" = ${VALUE_").append(i % 10).append('}');
+		}
+		return text.toString();
+	}
+
+	public static Map<String, String> parameterMap(int count, String valuePrefix) {
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			parameters.put("Parameter" + i, valuePrefix + i);
+		}
+		return parameters;
+	}
+
+	public static List<Parameter> parameters(int count, String valuePrefix) {
+		List<Parameter> parameters = new ArrayList<Parameter>();
+		for (int i = 0; i < count; i++) {
+			parameters.add(new Parameter().withParameterKey("Parameter" + i).withParameterValue(valuePrefix + i));
+		}
+		return parameters;
+	}
+
+	public static List<Output> outputs(int count) {
+		List<Output> outputs = new ArrayList<Output>();
+		for (int i = 0; i < count; i++) {
+			outputs.add(new Output().withOutputKey("Output" + i).withOutputValue("value-" + i));
+		}
+		return outputs;
+	}
+
+	/**
+	 * @return a describe result listing <code>count</code> stacks, the benchmarked one being the last.
+	 */
+	public static DescribeStacksResult describeStacks(int count, StackStatus status, List<Parameter> parameters, List<Output> outputs) {
+		List<Stack> stacks = new ArrayList<Stack>();
+		for (int i = 0; i < count - 1; i++) {
+			stacks.add(new Stack().withStackName("other-stack-" + i).withStackStatus(StackStatus.CREATE_COMPLETE.toString()));
+		}
+		stacks.add(new Stack().withStackName(STACK_NAME).withStackStatus(status.toString())
+				.withParameters(parameters).withOutputs(outputs));
+		return new DescribeStacksResult().withStacks(stacks);
+	}
+
+	/**
+	 * @return the events of one creation, newest first as the API returns them: the stack starting, <code>count</code>
+	 * resource events and the stack completing.
+	 */
+	public static DescribeStackEventsResult describeStackEvents(int count) {
+		List<StackEvent> events = new ArrayList<StackEvent>();
+		long now = System.currentTimeMillis();
+		events.add(stackEvent(count + 1, "CREATE_COMPLETE", now));
+		for (int i = count - 1; i >= 0; i--) {
+			events.add(new StackEvent().withEventId("event-" + (i + 1)).withStackName(STACK_NAME)
+					.withLogicalResourceId("Resource" + (i % 200)).withResourceType("AWS::EC2::Instance")
+					.withResourceStatus(i % 2 == 0 ? "CREATE_IN_PROGRESS" : "CREATE_COMPLETE")
+					.withResourceStatusReason(i % 2 == 0 ? "Resource creation Initiated" : null)
+					.withTimestamp(new Date(now - (count - i) * 1000L)));
+		}
+		events.add(stackEvent(0, "CREATE_IN_PROGRESS", now - (count + 1) * 1000L));
+		return new DescribeStackEventsResult().withStackEvents(events);
+	}
+
+	private static StackEvent stackEvent(int id, String status, long timestamp) {
+		return new StackEvent().withEventId("event-" + id).withStackName(STACK_NAME).withLogicalResourceId(STACK_NAME)
+				.withResourceType("AWS::CloudFormation::Stack").withResourceStatus(status).withTimestamp(new Date(timestamp));
+	}
+
+	/**
+	 * @return a client that answers every call from the canned results without any I/O.
+	 */
+	public static AmazonCloudFormation cannedClient(final DescribeStacksResult stacks, final DescribeStackEventsResult events) {
+		return (AmazonCloudFormation) Proxy.newProxyInstance(AmazonCloudFormation.class.getClassLoader(),
+				new Class<?>[] { AmazonCloudFormation.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if (name.equals("describeStacks")) return stacks;
+						if (name.equals("describeStackEvents")) return events;
+						if (name.equals("createStack")) return new CreateStackResult().withStackId(STACK_NAME);
+						if (name.equals("updateStack")) return new UpdateStackResult().withStackId(STACK_NAME);
+						return null;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper.benchmarks;
+
+import hudson.EnvVars;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackBean;
+
+/**
+ * Measures {@link StackBean#getParsedParameters(EnvVars)} for both supported delimiters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StackBeanBenchmark {
+
+	@Param({ "10", "100", "500" })
+	public int parameterCount;
+
+	private StackBean commaDelimited;
+	private StackBean semicolonDelimited;
+	private EnvVars env;
+
+	@Setup
+	public void setUp() {
+		commaDelimited = new StackBean("stack", "description", "recipe.json",
+				Fixtures.parameterText(parameterCount, ","), 0, "accessKey", "secretKey", true, null);
+		semicolonDelimited = new StackBean("stack", "description", "recipe.json",
+				Fixtures.parameterText(parameterCount, ";"), 0, "accessKey", "secretKey", true, null);
+		env = new EnvVars();
+		for (int i = 0; i < 10; i++) {
+			env.put("VALUE_" + i, "expanded-value-" + i);
+		}
+	}
+
+	@Benchmark
+	public Map<String, String> parseCommaDelimited() {
+		return commaDelimited.getParsedParameters(env);
+	}
+
+	@Benchmark
+	public Map<String, String> parseSemicolonDelimited() {
+		return semicolonDelimited.getParsedParameters(env);
+	}
+
+}
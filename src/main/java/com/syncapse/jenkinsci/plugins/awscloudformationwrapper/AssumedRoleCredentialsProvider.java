@@ -0,0 +1,96 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicSessionCredentials;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
+import com.amazonaws.services.securitytoken.model.AssumeRoleRequest;
+import com.amazonaws.services.securitytoken.model.Credentials;
+
+/**
+ * Credentials of an assumed role. Sessions are shared by every provider assuming the same role with the same
+ * base credentials, secret included, so concurrent builds make a single STS call, and they are renewed ahead of their expiry.
+ */
+public class AssumedRoleCredentialsProvider implements AWSCredentialsProvider {
+
+	/**
+	 * How long before its expiry a session is renewed, so that no operation starts with credentials about to expire.
+	 */
+	static final long REFRESH_AHEAD_MILLIS = 5 * 60 * 1000;
+
+	static final int SESSION_SECONDS = 3600;
+
+	private static final ConcurrentMap<String, Session> SESSIONS = new ConcurrentHashMap<String, Session>();
+
+	private final AWSCredentialsProvider base;
+	private final String roleArn;
+	private final Region region;
+
+	public AssumedRoleCredentialsProvider(AWSCredentialsProvider base, String roleArn, Region region) {
+		this.base = base;
+		this.roleArn = roleArn;
+		this.region = region != null ? region : Region.getDefault();
+	}
+
+	public AWSCredentials getCredentials() {
+		return session().get(this, false);
+	}
+
+	public void refresh() {
+		session().get(this, true);
+	}
+
+	/**
+	 * @return a digest of the role and of the base credentials, secret included, so that a session is only shared
+	 * with providers that could have assumed the role themselves.
+	 */
+	String identity() {
+		return StackFingerprint.digest(roleArn + "\n" + StackCredentials.identity(base));
+	}
+
+	private Session session() {
+		String key = identity();
+		Session session = SESSIONS.get(key);
+		if (session == null) {
+			SESSIONS.putIfAbsent(key, new Session());
+			session = SESSIONS.get(key);
+		}
+		return session;
+	}
+
+	/**
+	 * Calls STS. Overridden in tests.
+	 */
+	protected Credentials assumeRole(AssumeRoleRequest request) {
+		AWSSecurityTokenService sts = new AWSSecurityTokenServiceClient(base);
+		sts.setEndpoint(region.endpointFor("sts"));
+		return sts.assumeRole(request).getCredentials();
+	}
+
+	static void clearSessions() {
+		SESSIONS.clear();
+	}
+
+	private static final class Session {
+
+		private BasicSessionCredentials credentials;
+		private long expiration;
+
+		synchronized AWSCredentials get(AssumedRoleCredentialsProvider provider, boolean force) {
+			if (force || credentials == null || expiration - System.currentTimeMillis() < REFRESH_AHEAD_MILLIS) {
+				Credentials session = provider.assumeRole(new AssumeRoleRequest().withRoleArn(provider.roleArn)
+						.withRoleSessionName("jenkins-cloudformation-" + System.currentTimeMillis())
+						.withDurationSeconds(SESSION_SECONDS));
+				credentials = new BasicSessionCredentials(session.getAccessKeyId(), session.getSecretAccessKey(),
+						session.getSessionToken());
+				expiration = session.getExpiration().getTime();
+			}
+			return credentials;
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Build step that waits for stacks started by {@link StartStackBuilder} and exports their outputs
+ * to the following build steps.
+ */
+public class AwaitStackBuilder extends Builder {
+
+	/**
+	 * Comma separated names of the stacks to wait for. Empty to wait for all the stacks started so far.
+	 */
+	private final String stackNames;
+
+	@DataBoundConstructor
+	public AwaitStackBuilder(String stackNames) {
+		this.stackNames = stackNames;
+	}
+
+	public String getStackNames() {
+		return stackNames;
+	}
+
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+			throws InterruptedException, IOException {
+		StartedStacksAction action = build.getAction(StartedStacksAction.class);
+		if (action == null) {
+			listener.error("No stack was started by this build.");
+			return false;
+		}
+
+		List<StartedStacksAction.StartedStack> stacks = new ArrayList<StartedStacksAction.StartedStack>();
+		if (stackNames == null || stackNames.trim().length() == 0) {
+			stacks.addAll(action.getStacks());
+		} else {
+			String expanded = build.getEnvironment(listener).expand(stackNames);
+			for (String name : expanded.split(",")) {
+				StartedStacksAction.StartedStack stack = action.get(name.trim());
+				if (stack == null) {
+					listener.error("Stack " + name.trim() + " was not started by this build.");
+					return false;
+				}
+				stacks.add(stack);
+			}
+		}
+
+		boolean result = true;
+		for (StartedStacksAction.StartedStack stack : stacks) {
+			result = await(build, stack, listener) && result;
+		}
+		return result;
+	}
+
+	private boolean await(AbstractBuild<?, ?> build, StartedStacksAction.StartedStack stack, BuildListener listener)
+			throws InterruptedException {
+		CloudFormation cloudFormation = stack.getCloudFormation();
+		listener.getLogger().println("Waiting for stack " + cloudFormation.getExpandedStackName());
+		boolean created;
+		try {
+			created = stack.getCreation().get();
+		} catch (InterruptedException e) {
+			cloudFormation.abort();
+			throw e;
+		} catch (CancellationException e) {
+			listener.error("The creation of stack " + cloudFormation.getExpandedStackName() + " was aborted.");
+			return false;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				listener.error("ERROR creating stack with name " + cloudFormation.getExpandedStackName()
+						+ ". Operation timedout. Try increasing the timeout period in your stack configuration.");
+			} else {
+				e.getCause().printStackTrace(listener.error("ERROR creating stack with name "
+						+ cloudFormation.getExpandedStackName()));
+			}
+			return false;
+		}
+		if (!stack.isAwaited()) {
+			StackTimelineAction.attach(build, cloudFormation, "creation", listener.getLogger());
+		}
+		stack.setAwaited(created);
+		return created;
+	}
+
+	@Extension
+	public static class DescriptorImpl extends BuildStepDescriptor<Builder> {
+
+		@Override
+		public String getDisplayName() {
+			return "Wait for AWS Cloud Formation stack";
+		}
+
+		@Override
+		public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+			return true;
+		}
+	}
+
+}
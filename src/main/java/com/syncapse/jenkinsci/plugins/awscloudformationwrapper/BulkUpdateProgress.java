@@ -0,0 +1,119 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of an update rolled out to many stacks, reported as a compact matrix with one character per stack
+ * instead of the log of every stack.
+ */
+public class BulkUpdateProgress {
+
+	public enum State {
+		PENDING('.'), UPDATING('~'), UPDATED('+'), FAILED('x'), SKIPPED('-');
+
+		final char symbol;
+
+		State(char symbol) {
+			this.symbol = symbol;
+		}
+	}
+
+	/**
+	 * Number of stacks per line of the matrix.
+	 */
+	static final int ROW_LENGTH = 50;
+
+	private final Map<String, State> states = new LinkedHashMap<String, State>();
+
+	private int finished;
+
+	private int lastReported;
+
+	public BulkUpdateProgress(List<String> stackNames) {
+		for (String stackName : stackNames) {
+			states.put(stackName, State.PENDING);
+		}
+	}
+
+	public void started(String stackName) {
+		states.put(stackName, State.UPDATING);
+	}
+
+	public void finished(String stackName, boolean updated) {
+		states.put(stackName, updated ? State.UPDATED : State.FAILED);
+		finished++;
+	}
+
+	/**
+	 * Marks the stacks not started yet as skipped.
+	 */
+	public void skipPending() {
+		for (Map.Entry<String, State> state : states.entrySet()) {
+			if (state.getValue() == State.PENDING) state.setValue(State.SKIPPED);
+		}
+	}
+
+	public int count(State state) {
+		int count = 0;
+		for (State s : states.values()) {
+			if (s == state) count++;
+		}
+		return count;
+	}
+
+	public List<String> getStackNames(State state) {
+		List<String> names = new ArrayList<String>();
+		for (Map.Entry<String, State> s : states.entrySet()) {
+			if (s.getValue() == state) names.add(s.getKey());
+		}
+		return names;
+	}
+
+	/**
+	 * Prints a one line summary each time another tenth of the stacks has finished.
+	 */
+	public void report(PrintStream logger) {
+		int step = Math.max(1, states.size() / 10);
+		if (finished - lastReported < step && finished < states.size()) return;
+		lastReported = finished;
+		logger.println(summary());
+	}
+
+	public void printMatrix(PrintStream logger) {
+		logger.println(summary() + " (" + legend() + ")");
+		StringBuilder row = new StringBuilder();
+		int index = 0;
+		for (State state : states.values()) {
+			if (index % ROW_LENGTH == 0) {
+				if (row.length() > 0) logger.println(row);
+				row.setLength(0);
+				row.append(String.format("%5d ", index + 1));
+			}
+			row.append(state.symbol);
+			index++;
+		}
+		if (row.length() > 0) logger.println(row);
+		List<String> failed = getStackNames(State.FAILED);
+		if (!failed.isEmpty()) logger.println("Failed: " + failed);
+	}
+
+	String summary() {
+		return "Updated " + count(State.UPDATED) + "/" + states.size() + " stacks, " + count(State.FAILED) + " failed, "
+				+ count(State.UPDATING) + " in progress" + (count(State.SKIPPED) > 0 ? ", " + count(State.SKIPPED)
+				+ " skipped" : "");
+	}
+
+	private static String legend() {
+		StringBuilder legend = new StringBuilder();
+		for (State state : State.values()) {
+			if (legend.length() > 0) legend.append(", ");
+			legend.append(state.symbol).append(' ').append(state.name().toLowerCase());
+		}
+		return legend.toString();
+	}
+
+}
@@ -0,0 +1,217 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Many near-identical existing stacks of one region, e.g. one per tenant, updated with the same parameter changes.
+ */
+public class BulkUpdateStackBean extends AbstractDescribableImpl<BulkUpdateStackBean> {
+
+	/**
+	 * Default for {@link #concurrency}.
+	 */
+	public static final int DEFAULT_CONCURRENCY = 10;
+
+	/**
+	 * The stacks to update, see {@link StackSelector}.
+	 */
+	private final String stackNames;
+
+	/**
+	 * The parameters to change. Parameters not listed keep their current value.
+	 */
+	private final String parameters;
+
+	private final long timeout;
+
+	private final String awsAccessKey;
+
+	private final String awsSecretKey;
+
+	private final String awsRegion;
+
+	private final boolean useInstanceProfile;
+
+	private final String roleArn;
+
+	/**
+	 * How many stacks are updated at the same time. 0 for the default.
+	 */
+	private final int concurrency;
+
+	/**
+	 * How many stacks may fail to update before the roll out stops and the build fails.
+	 */
+	private final int failureTolerance;
+
+	@DataBoundConstructor
+	public BulkUpdateStackBean(String stackNames, String parameters, long timeout, String awsAccessKey,
+			String awsSecretKey, String awsRegion, boolean useInstanceProfile, String roleArn, int concurrency,
+			int failureTolerance) {
+		this.stackNames = stackNames;
+		this.parameters = parameters;
+		this.timeout = timeout;
+		this.awsAccessKey = awsAccessKey;
+		this.awsSecretKey = awsSecretKey;
+		this.awsRegion = awsRegion;
+		this.useInstanceProfile = useInstanceProfile;
+		this.roleArn = roleArn;
+		this.concurrency = concurrency;
+		this.failureTolerance = failureTolerance;
+	}
+
+	public String getStackNames() {
+		return stackNames;
+	}
+
+	public String getParameters() {
+		return parameters;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public String getAwsAccessKey() {
+		return awsAccessKey;
+	}
+
+	public String getAwsSecretKey() {
+		return awsSecretKey;
+	}
+
+	public Region getAwsRegion() {
+		return Region.fromName(awsRegion);
+	}
+
+	public boolean getUseInstanceProfile() {
+		return useInstanceProfile;
+	}
+
+	public String getRoleArn() {
+		return roleArn;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public int getEffectiveConcurrency() {
+		return concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+	}
+
+	public int getFailureTolerance() {
+		return failureTolerance;
+	}
+
+	public StackSelector getParsedStackNames(EnvVars env) {
+		return new StackSelector(stackNames, env);
+	}
+
+	public Map<String, String> getParsedParameters(EnvVars env) {
+		Map<String, String> result = new HashMap<String, String>();
+		if (parameters == null || parameters.trim().length() == 0) return result;
+
+		String separator = parameters.contains(";") ? ";" : ",";
+		for (String param : parameters.replace("\n", "").replace("\r", "").split(separator)) {
+			if (param.trim().length() == 0) continue;
+			String token[] = param.split("=", 2);
+			result.put(token[0].trim(), env.expand(token.length > 1 ? token[1].trim() : ""));
+		}
+		return result;
+	}
+
+	public AWSCredentialsProvider getCredentials(EnvVars env) {
+		return StackCredentials.of(env.expand(awsAccessKey), env.expand(awsSecretKey), useInstanceProfile,
+				roleArn != null ? env.expand(roleArn) : null, getAwsRegion());
+	}
+
+	@Extension
+	public static final class DescriptorImpl extends Descriptor<BulkUpdateStackBean> {
+
+		@Override
+		public String getDisplayName() {
+			return "Cloud Formation stacks";
+		}
+
+		public FormValidation doCheckStackNames(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			if (0 == value.trim().length()) {
+				return FormValidation.error("Empty stack names");
+			}
+			try {
+				new StackSelector(value);
+			} catch (IllegalArgumentException e) {
+				return FormValidation.error(e.getMessage());
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckTimeout(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			return checkNumber("Timeout", value);
+		}
+
+		public FormValidation doCheckConcurrency(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			return checkNumber("Concurrency", value);
+		}
+
+		public FormValidation doCheckFailureTolerance(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			return checkNumber("Failure tolerance", value);
+		}
+
+		private static FormValidation checkNumber(String name, String value) {
+			if (value.length() > 0) {
+				try {
+					Long.parseLong(value);
+				} catch (NumberFormatException e) {
+					return FormValidation.error(name + " value " + value + " is not a number.");
+				}
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckUseInstanceProfile(@QueryParameter boolean value) {
+			if (value && !StackCredentials.isInstanceProfileAllowed()) {
+				return FormValidation.error(StackCredentials.INSTANCE_PROFILE_NOT_ALLOWED);
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckAwsRegion(@QueryParameter String value) {
+			return Region.isKnown(value) ? FormValidation.ok() : FormValidation.error(Region.unknown(value));
+		}
+
+		public ListBoxModel doFillAwsRegionItems() {
+			ListBoxModel items = new ListBoxModel();
+			for (Region region : Region.values()) {
+				items.add(region.readableName, region.name());
+			}
+			return items;
+		}
+
+	}
+
+}
@@ -5,16 +5,19 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.cloudformation.AmazonCloudFormation;
 import com.amazonaws.services.cloudformation.AmazonCloudFormationAsyncClient;
 import com.amazonaws.services.cloudformation.model.*;
 import com.amazonaws.services.cloudformation.model.Stack;
 import com.google.common.collect.Lists;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackState.Operation;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackState.Outcome;
 import hudson.EnvVars;
 
 /**
@@ -30,12 +33,22 @@ public class CloudFormation {
 	 */
 	public static final long MIN_TIMEOUT = 300;
 
+	/**
+	 * Tag holding the {@link StackFingerprint} of the template and parameters a stack was created from.
+	 */
+	public static final String FINGERPRINT_TAG = "jenkins:fingerprint";
+
+
 	private String stackName;
 	private String recipe;
+
+	/**
+	 * Digest of {@link #recipe}, computed on first use unless it was known already.
+	 */
+	private String templateDigest;
 	private List<Parameter> parameters;
 	private long timeout;
-	private String awsAccessKey;
-	private String awsSecretKey;
+	private AWSCredentialsProvider credentials;
 	private PrintStream logger;
 	private AmazonCloudFormation amazonClient;
     private EC2 ec2;
@@ -47,7 +60,71 @@ public class CloudFormation {
 	private Region awsRegion;
 
 	private Map<String, String> outputs;
+
+	/**
+	 * The outputs as returned by {@link #getOutputs()}, computed whenever the outputs or their prefix change.
+	 */
+	private Map<String, String> prefixedOutputs = Collections.emptyMap();
+
+	/**
+	 * Prefix of the output variable names. Defaults to the expanded stack name.
+	 */
+	private String outputPrefix;
+
+	/**
+	 * Whether a failed creation leaves the stack as it is, for debugging, instead of rolling it back.
+	 */
+	private boolean disableRollback;
+
+	/**
+	 * Whether the last creation failed while the stack was still being rolled back, so that a deletion has to
+	 * wait for the rollback to finish.
+	 */
+	private volatile boolean rollingBack;
+
+	/**
+	 * The status seen by the last poll, see {@link StackState.Listener}.
+	 */
+	private volatile String lastStatus;
+
+	/**
+	 * Whether the last {@link #createOrReuse()} adopted an existing stack.
+	 */
+	private boolean reused;
+
+	/**
+	 * Whether the stack is created to be reused, and so tagged with its fingerprint.
+	 */
+	private boolean tagFingerprint;
     private boolean waitForInstancesToRestart;
+	private List<StackEvent> stackEvents = Collections.emptyList();
+
+	/**
+	 * The events of the operation in progress read so far, oldest first, and the id of the newest of them.
+	 */
+	private List<StackEvent> operationEvents = new ArrayList<StackEvent>();
+	private String lastEventId;
+
+	/**
+	 * Number of status polls made by the wait in progress, reported to {@link CloudFormationMetrics}.
+	 */
+	private volatile int polls;
+
+	/**
+	 * Time budget of the create, update, recycle and delete phases.
+	 */
+	private Deadline deadline;
+
+	/**
+	 * The wait of the last create, update or delete started, and which of them it is, for {@link #abort()}.
+	 */
+	private volatile Future<Boolean> inFlight;
+	private volatile String inFlightOperation;
+
+	/**
+	 * How long the last create, update or delete took, in milliseconds.
+	 */
+	private long lastOperationMillis;
 
     /**
 	 * @param logger a logger to write progress information.
@@ -62,13 +139,23 @@ public class CloudFormation {
 			String recipeBody, Map<String, String> parameters,
 			long timeout, String awsAccessKey, String awsSecretKey, Region region, 
             boolean autoDeleteStack, EnvVars envVars, boolean terminateEC2Resources, boolean waitForInstancesToRestart) {
+		this(logger, stackName, recipeBody, parameters, timeout, StackCredentials.forKeys(awsAccessKey, awsSecretKey),
+				region, autoDeleteStack, envVars, terminateEC2Resources, waitForInstancesToRestart);
+	}
+
+	/**
+	 * @param credentials the credentials to call the AWS APIs with, see {@link StackCredentials}.
+	 */
+	public CloudFormation(PrintStream logger, String stackName,
+			String recipeBody, Map<String, String> parameters,
+			long timeout, AWSCredentialsProvider credentials, Region region,
+            boolean autoDeleteStack, EnvVars envVars, boolean terminateEC2Resources, boolean waitForInstancesToRestart) {
 
 		this.logger = logger;
 		this.stackName = stackName;
 		this.recipe = recipeBody;
 		this.parameters = parameters(parameters);
-		this.awsAccessKey = awsAccessKey;
-		this.awsSecretKey = awsSecretKey;
+		this.credentials = credentials;
 		this.awsRegion = region != null ? region : Region.getDefault();
 		if (timeout == -12345){
 			this.timeout = 0; // Faster testing.
@@ -77,12 +164,14 @@ public class CloudFormation {
 			this.timeout = timeout > MIN_TIMEOUT ? timeout : MIN_TIMEOUT;
 			this.waitBetweenAttempts = 10; // query every 10s
 		}
-		this.amazonClient = getAWSClient();
-        this.autoDeleteStack = autoDeleteStack;
 		this.envVars = envVars;
+		this.amazonClient = MeteredClient.wrap(AmazonCloudFormation.class, getAWSClient(),
+				"cloudformation", awsRegion, getExpandedStackName());
+        this.autoDeleteStack = autoDeleteStack;
         this.terminateAutoScaleEC2Resources = terminateEC2Resources;
         this.waitForInstancesToRestart = waitForInstancesToRestart;
         this.ec2 = getEC2Client();
+        setDeadline(new Deadline(this.timeout));
 	}
 
     public CloudFormation(PrintStream logger, String stackName,
@@ -119,64 +208,132 @@ public class CloudFormation {
     }
 	
 	/**
-	 * @return
+	 * @return false if the stack could not be deleted, including when the deletion timed out.
+	 * @throws InterruptedException if the build is aborted, the deletion then goes on in AWS.
 	 */
-	public boolean delete() {
+	public boolean delete() throws InterruptedException {
+		try {
+			return await(deleteAsync());
+		} catch (TimeoutException e) {
+			logger.println("ERROR deleting stack " + getExpandedStackName() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Starts deleting the stack and returns at once. The wait for the deletion runs on the {@link StackPoller}.
+	 * @return the outcome of {@link #delete()}.
+	 */
+	public Future<Boolean> deleteAsync() {
+		long start = System.currentTimeMillis();
+		deadline.start();
 		logger.println("Deleting Cloud Formation stack: " + getExpandedStackName());
 		
+		if (rollingBack) {
+			logger.println("Waiting for the rollback of stack " + getExpandedStackName() + " to finish before deleting it.");
+		} else {
+			try {
+				requestDelete();
+			} catch (RuntimeException e) {
+				recordOperation("delete", start, false);
+				throw e;
+			}
+		}
+
+		return watch("delete", start, "Timed out waiting for stack to be deleted.", new StackPoller.Check<Boolean>() {
+			public Boolean poll() {
+				if (rollingBack) {
+					Stack current = findExistingStack();
+					if (current != null && observe(Operation.ROLLBACK, current.getStackStatus()) == Outcome.WAITING) return null;
+					rollingBack = false;
+					requestDelete();
+				}
+
+				stack = findStackInAllStacks();
+				Outcome outcome = observe(Operation.DELETE, stack != null ? stack.getStackStatus()
+						: StackStatus.DELETE_COMPLETE.toString());
+				
+				Boolean result = outcome == Outcome.WAITING ? null : outcome == Outcome.SUCCEEDED;
+				
+				if (result != null) {
+					logger.println("Cloud Formation stack: " + getExpandedStackName()
+							+ (result ? " deleted successfully" : " failed deleting.") );
+				}
+				return result;
+			}
+		});
+	}
+
+	private void requestDelete() {
 		DeleteStackRequest deleteStackRequest = new DeleteStackRequest();
 		deleteStackRequest.withStackName(getExpandedStackName());
-		
 		amazonClient.deleteStack(deleteStackRequest);
-		boolean result = waitForStackToBeDeleted();
-		
-		logger.println("Cloud Formation stack: " + getExpandedStackName()
-				+ (result ? " deleted successfully" : " failed deleting.") );
-		return result;
 	}
 
 	/**
 	 * @return True of the stack was created successfully. False otherwise.
 	 * 
 	 * @throws TimeoutException if creating the stack takes longer than the timeout value passed during creation.
+	 * @throws InterruptedException if the build is aborted, see {@link #abort()}.
 	 *
 	 */
-	public boolean create() throws TimeoutException {
+	public boolean create() throws TimeoutException, InterruptedException {
+		return await(createAsync());
+	}
 
+	/**
+	 * Starts creating the stack and returns at once. The wait for the creation runs on the {@link StackPoller}.
+	 * @return the outcome of {@link #create()}. A timeout surfaces as an
+	 * {@link java.util.concurrent.ExecutionException} caused by {@link TimeoutException}.
+	 */
+	public Future<Boolean> createAsync() {
+		long start = System.currentTimeMillis();
+		deadline.start();
 		logger.println("Creating Cloud Formation stack: " + getExpandedStackName());
+		resetEvents();
 		
 		CreateStackRequest request = createStackRequest();
 		
 		try {
 			amazonClient.createStack(request);
-			
-			stack = waitForStackToBeCreated();
-			
-			StackStatus status = getStackStatus(stack.getStackStatus());
-			
-			Map<String, String> stackOutput = new HashMap<String, String>();
-			if (isStackCreationSuccessful(status)){
-				List<Output> outputs = stack.getOutputs();
-				for (Output output : outputs){
-					stackOutput.put(output.getOutputKey(), output.getOutputValue());
-				}
-				
-				logger.println("Successfully created stack: " + getExpandedStackName());
-				
-				this.outputs = stackOutput;
-				return true;
-			} else{
-				logger.println("Failed to create stack: " + getExpandedStackName() + ". Reason: " + stack.getStackStatusReason());
-				return false;
-			}
-		} catch (AmazonServiceException e) {
-			logger.println("Failed to create stack: " + getExpandedStackName() + ". Reason: " + detailedError(e));
-			return false;
 		} catch (AmazonClientException e) {
-			logger.println("Failed to create stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
-			return false;
+			boolean result = failed("create", e);
+			recordOperation("create", start, result);
+			return StackPoller.completed(result);
 		}
 
+		return watch("create", start, "Timed out waiting for stack to be created.", new StackPoller.Check<Boolean>() {
+			public Boolean poll() {
+				Stack current = describeCurrentStack();
+				Outcome outcome = observe(Operation.CREATE, current.getStackStatus());
+				StackEvent failure = null;
+				if (outcome == Outcome.WAITING) {
+					// Fail as soon as a resource fails, rather than once the whole stack has given up.
+					failure = findFailedResource();
+					if (failure == null) return null;
+				}
+
+				stack = current;
+				if (failure == null) readNewEvents();
+				printOperationEvents();
+				
+				if (outcome == Outcome.SUCCEEDED){
+					setOutputs(readOutputs(stack));
+					logger.println("Successfully created stack: " + getExpandedStackName());
+					return true;
+				} else if (failure != null) {
+					rollingBack = !disableRollback;
+					logger.println("Failed to create stack: " + getExpandedStackName() + ". Resource "
+							+ failure.getLogicalResourceId() + " failed: " + failure.getResourceStatusReason()
+							+ (disableRollback ? " The stack is left as it is for debugging." : ""));
+					return false;
+				} else{
+					rollingBack = Operation.ROLLBACK.outcome(stack.getStackStatus()) == Outcome.WAITING;
+					logger.println("Failed to create stack: " + getExpandedStackName() + ". Reason: " + stack.getStackStatusReason());
+					return false;
+				}
+			}
+		});
 	}
 
     /**
@@ -185,50 +342,295 @@ public class CloudFormation {
      * Currently this only supports updating existing stack parameters, not templates (will always use previous template)
      *
      * @throws TimeoutException if creating the stack takes longer than the timeout value passed during creation.
+     * @throws InterruptedException if the build is aborted, see {@link #abort()}.
      *
      */
-    public boolean update() throws TimeoutException {
+    public boolean update() throws TimeoutException, InterruptedException {
+        return await(updateAsync());
+    }
+
+    /**
+     * Starts updating the stack and returns at once. The wait for the update runs on the {@link StackPoller}.
+     * @return the outcome of {@link #update()}.
+     */
+    public Future<Boolean> updateAsync() {
+        long start = System.currentTimeMillis();
+        deadline.start();
         logger.println("Updating cloud formation stack: " + getExpandedStackName());
+        resetEvents();
 
         try {
             UpdateStackRequest request = createUpdateStackRequest();
 
             amazonClient.updateStack(request);
+        } catch (AmazonClientException e) {
+            boolean result;
+            if (e instanceof AmazonServiceException && e.getMessage().contains("No updates are to be performed")) {
+                logger.println("The stack "+getExpandedStackName()+" in AWS already matches the updated parameters, no updates are needed");
+                result = true;
+            } else {
+                result = failed("update", e);
+            }
+            recordOperation("update", start, result);
+            return StackPoller.completed(result);
+        }
 
-            stack = waitForStackToBeUpdated();
-
-            StackStatus status = getStackStatus(stack.getStackStatus());
+        return watch("update", start, "Timed out waiting for stack to be updated.", new StackPoller.Check<Boolean>() {
+            public Boolean poll() {
+                Stack current = describeCurrentStack();
+                Outcome outcome = observe(Operation.UPDATE, current.getStackStatus());
+                if (outcome == Outcome.WAITING) return null;
+
+                stack = current;
+                printStackEvents();
+
+                if (outcome == Outcome.SUCCEEDED) {
+                    setOutputs(readOutputs(stack));
+                    logger.println("Successfully updated stack: " + getExpandedStackName());
+                    return true;
+                } else {
+                    logger.println("Failed to update stack: " + getExpandedStackName() + ". Status: "+stack.getStackStatus()+ " Reason: " + stack.getStackStatusReason());
+                    return false;
+                }
+            }
+        });
+    }
 
-            Map<String, String> stackOutput = new HashMap<String, String>();
-            if (isStackUpdateSuccessful(status)) {
-                List<Output> outputs = stack.getOutputs();
-                for (Output output : outputs) {
-                    stackOutput.put(output.getOutputKey(), output.getOutputValue());
+    /**
+     * Polls the check on the {@link StackPoller} until the operation is over, and records it.
+     * Amazon errors while waiting fail the operation, except for deletions where they are thrown.
+     * @param timeoutMessage message of the {@link TimeoutException} thrown once the {@link Deadline} is exceeded.
+     * A deletion is always given at least {@link #MIN_TIMEOUT}, so that a stack is not left behind because
+     * creating it used the budget up.
+     */
+    private Future<Boolean> watch(final String operation, final long start, final String timeoutMessage,
+            final StackPoller.Check<Boolean> check) {
+        Future<Boolean> future = StackPoller.get().watch(new StackPoller.Check<Boolean>() {
+            public Boolean poll() throws Exception {
+                boolean done = false;
+                boolean result = false;
+                try {
+                    if (deadline.isExpired()
+                            && (!"delete".equals(operation) || System.currentTimeMillis() - start > MIN_TIMEOUT * 1000)) {
+                        throw new TimeoutException(timeoutMessage + " (timeout=" + deadline.getBudgetSeconds() + ")");
+                    }
+                    polls++;
+                    Boolean outcome;
+                    try {
+                        outcome = check.poll();
+                    } catch (AmazonClientException e) {
+                        if ("delete".equals(operation)) throw e;
+                        outcome = failed(operation, e);
+                    }
+                    done = outcome != null;
+                    result = done && outcome;
+                    return outcome;
+                } catch (Exception e) {
+                    done = true;
+                    throw e;
+                } finally {
+                    if (done) recordOperation(operation, start, result);
                 }
+            }
+        }, waitBetweenAttempts * 1000);
+        inFlightOperation = operation;
+        inFlight = future;
+        return future;
+    }
 
-                logger.println("Successfully updated stack: " + getExpandedStackName());
+    /**
+     * Waits for an operation started on the {@link StackPoller}. An interrupt, e.g. the build being aborted,
+     * stops the wait at once and {@link #abort() aborts} the operation.
+     */
+    private boolean await(Future<Boolean> operation) throws InterruptedException {
+        try {
+            return operation.get();
+        } catch (InterruptedException e) {
+            abort();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AmazonClientException("Stack operation failed", cause);
+        }
+    }
 
-                this.outputs = stackOutput;
-                return true;
+    /**
+     * Stops waiting for the create, update or delete under way. A creation is deleted if the stack was to be
+     * deleted anyway, an update is cancelled so that the stack rolls back, and a deletion goes on in AWS.
+     * @return false if no operation was under way.
+     */
+    public boolean abort() {
+        Future<Boolean> operation = inFlight;
+        if (operation == null || !operation.cancel(false)) return false;
+        deadline.stop();
+        String name = getExpandedStackName();
+        try {
+            if ("update".equals(inFlightOperation)) {
+                logger.println("Aborted, cancelling the update of stack " + name);
+                amazonClient.cancelUpdateStack(new CancelUpdateStackRequest().withStackName(name));
+            } else if ("create".equals(inFlightOperation) && autoDeleteStack && !rollingBack) {
+                logger.println("Aborted, deleting stack " + name);
+                requestDelete();
+            } else if ("delete".equals(inFlightOperation)) {
+                logger.println("Aborted, the deletion of stack " + name + " goes on in AWS.");
             } else {
-                logger.println("Failed to update stack: " + getExpandedStackName() + ". Status: "+status+ " Reason: " + stack.getStackStatusReason());
+                logger.println("Aborted while waiting for stack " + name + ". Check in your amazon account to ensure you are not charged for this.");
+            }
+        } catch (AmazonClientException e) {
+            logger.println("Failed to abort the " + inFlightOperation + " of stack " + name + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean failed(String operation, AmazonClientException e) {
+        if (e instanceof AmazonServiceException) {
+            logger.println("Failed to " + operation + " stack: " + getExpandedStackName() + ". Reason: " + detailedError((AmazonServiceException) e));
+        } else {
+            logger.println("Failed to " + operation + " stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
+        }
+        return false;
+    }
+
+    private Stack describeCurrentStack() {
+        return getStack(amazonClient.describeStacks(new DescribeStacksRequest().withStackName(getExpandedStackName())));
+    }
+
+    private static Map<String, String> readOutputs(Stack stack) {
+        return StackOutputsCache.get().outputsOf(stack);
+    }
+
+    private void setOutputs(Map<String, String> outputs) {
+        this.outputs = outputs;
+        prefixOutputs();
+    }
+
+    private void prefixOutputs() {
+        if (outputs == null) return;
+        // Prefix outputs with stack name to prevent collisions with other stacks created in the same build.
+        Map<String, String> map = new HashMap<String, String>();
+        String prefix = outputPrefix != null ? outputPrefix : getExpandedStackName();
+        for (Map.Entry<String, String> output : outputs.entrySet()) {
+            map.put(prefix + "_" + output.getKey(), output.getValue());
+        }
+        prefixedOutputs = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Adopts the existing stack of the same name if it was created from the same template and parameters
+     * and is healthy, or creates it otherwise. A stack that does not match is deleted first.
+     * @return True if the stack was adopted or created successfully. False otherwise.
+     *
+     * @throws TimeoutException if creating the stack takes longer than the timeout value passed during creation.
+     */
+    public boolean createOrReuse() throws TimeoutException, InterruptedException {
+        return createOrReuse(true);
+    }
+
+    /**
+     * @param mayReplace false if other builds use the stack, which is then left alone rather than replaced when it
+     * does not match.
+     * @see #createOrReuse()
+     */
+    public boolean createOrReuse(boolean mayReplace) throws TimeoutException, InterruptedException {
+        String fingerprint = getFingerprint();
+        Stack existing = findExistingStack();
+        reused = false;
+        if (existing != null) {
+            String status = existing.getStackStatus();
+            if (fingerprint.equals(getTag(existing, FINGERPRINT_TAG)) && StackState.isUsable(status)) {
+                logger.println("Reusing stack " + getExpandedStackName() + ", its template and parameters are unchanged.");
+                reused = describe();
+                return reused;
+            }
+            if (!mayReplace) {
+                logger.println("Stack " + getExpandedStackName() + " (" + status + ") does not match the current "
+                        + "template and parameters, but is in use by another build and cannot be replaced.");
                 return false;
             }
+            logger.println("Stack " + getExpandedStackName() + " (" + status
+                    + ") does not match the current template and parameters, replacing it.");
+            if (!delete()) return false;
+        }
+        tagFingerprint = true;
+        return create();
+    }
+
+    /**
+     * @return true if the last {@link #createOrReuse()} adopted an existing stack rather than creating one.
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * @return the fingerprint of the template, parameters and region of this stack.
+     */
+    public String getFingerprint() {
+        if (templateDigest == null) templateDigest = StackFingerprint.digest(recipe);
+        return StackFingerprint.ofTemplateDigest(templateDigest, parameters, awsRegion);
+    }
+
+    private Stack findExistingStack() {
+        try {
+            return getStack(amazonClient.describeStacks(new DescribeStacksRequest().withStackName(getExpandedStackName())));
         } catch (AmazonServiceException e) {
-            if (e.getMessage().contains("No updates are to be performed")) {
-                logger.println("The stack "+getExpandedStackName()+" in AWS already matches the updated parameters, no updates are needed");
-                return true;
+            if (e.getMessage() != null && e.getMessage().contains("does not exist")) return null;
+            throw e;
+        }
+    }
+
+    private static String getTag(Stack stack, String key) {
+        for (Tag tag : stack.getTags()) {
+            if (key.equals(tag.getKey())) return tag.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Looks up an existing stack and reads its outputs, without changing it.
+     * @return True if the stack exists and was created or updated successfully. False otherwise.
+     */
+    public boolean describe() {
+        try {
+            stack = getStack(amazonClient.describeStacks(new DescribeStacksRequest().withStackName(getExpandedStackName())));
+            if (stack == null) return false;
+
+            String status = stack.getStackStatus();
+            if (!StackState.isUsable(status)) {
+                logger.println("Stack " + getExpandedStackName() + " can not be used, its status is " + status);
+                return false;
             }
 
-            logger.println("Failed to update stack: " + getExpandedStackName() + ". Reason: " + detailedError(e));
-            return false;
-        } catch (AmazonClientException e) {
-            logger.println("Failed to update stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
+            setOutputs(readOutputs(stack));
+            return true;
+        } catch (AmazonServiceException e) {
+            logger.println("Failed to describe stack: " + getExpandedStackName() + ". Reason: " + detailedError(e));
             return false;
         }
     }
 
-    public boolean doTerminateAutoScaleEC2Resources() {
+    /**
+     * Lists the stacks of the account in this region, following the pagination tokens.
+     * @param statusFilter the statuses to include, or none for all stacks, including deleted ones.
+     */
+    public List<StackSummary> listStacks(StackStatus... statusFilter) {
+        List<StackSummary> result = new ArrayList<StackSummary>();
+        String nextToken = null;
+        do {
+            ListStacksRequest request = new ListStacksRequest().withNextToken(nextToken);
+            for (StackStatus status : statusFilter) {
+                request.withStackStatusFilters(status.toString());
+            }
+            ListStacksResult page = amazonClient.listStacks(request);
+            result.addAll(page.getStackSummaries());
+            nextToken = page.getNextToken();
+        } while (nextToken != null);
+        return result;
+    }
+
+    public boolean doTerminateAutoScaleEC2Resources() throws InterruptedException {
         try {
             logger.println("Attempting to terminate EC2 instances in any auto-scaling groups associated with stack " + getExpandedStackName());
             ListStackResourcesResult resources = amazonClient.listStackResources(new ListStackResourcesRequest().withStackName(getExpandedStackName()));
@@ -250,6 +652,21 @@ public class CloudFormation {
         }
     }
 
+    private void recordOperation(String operation, long start, boolean success) {
+        deadline.stop();
+        lastOperationMillis = System.currentTimeMillis() - start;
+        CloudFormationMetrics.get().record(operation, awsRegion.name(), getExpandedStackName(),
+                lastOperationMillis, success, polls);
+        polls = 0;
+    }
+
+    /**
+     * @return how long the last create, update or delete took, including the wait for it to complete, in milliseconds.
+     */
+    public long getLastOperationMillis() {
+        return lastOperationMillis;
+    }
+
     private String detailedError(AmazonServiceException e){
 		StringBuffer message = new StringBuffer();
 		message.append("Detailed Message: ").append(e.getMessage()).append('\n');
@@ -259,36 +676,26 @@ public class CloudFormation {
 	}
 
 	protected AmazonCloudFormation getAWSClient() {
-		AWSCredentials credentials = new BasicAWSCredentials(this.awsAccessKey,
-				this.awsSecretKey);
 		AmazonCloudFormation amazonClient = new AmazonCloudFormationAsyncClient(
 				credentials);
-		amazonClient.setEndpoint(awsRegion.endPoint);
+		amazonClient.setEndpoint(awsRegion.endpointFor("cloudformation"));
 		return amazonClient;
 	}
 
     protected EC2 getEC2Client() {
-        return new EC2(awsAccessKey, awsSecretKey, awsRegion, logger, timeout);
+        return new EC2(credentials, awsRegion, logger, timeout);
     }
 	
-	private boolean waitForStackToBeDeleted() {
-		
-		while (true){
-			
-			stack = getStack(amazonClient.describeStacks());
-			
-			if (stack == null) return true;
-			
-			StackStatus stackStatus = getStackStatus(stack.getStackStatus());
-			
-			if (StackStatus.DELETE_COMPLETE == stackStatus) return true;
-				
-			if (StackStatus.DELETE_FAILED == stackStatus) return false;
-			
-			sleep();
-			
+	/**
+	 * Looks for the stack in the full stack listing, following the pagination tokens until it is found.
+	 */
+	private Stack findStackInAllStacks() {
+		DescribeStacksResult result = amazonClient.describeStacks();
+		while (true) {
+			Stack found = getStack(result);
+			if (found != null || result.getNextToken() == null) return found;
+			result = amazonClient.describeStacks(new DescribeStacksRequest().withNextToken(result.getNextToken()));
 		}
-		
 	}
 
 	private List<Parameter> parameters(Map<String, String> parameters) {
@@ -309,61 +716,81 @@ public class CloudFormation {
 		return result;
 	}
 
-	private Stack waitForStackToBeCreated() throws TimeoutException{
-		
-		DescribeStacksRequest describeStacksRequest = new DescribeStacksRequest().withStackName(getExpandedStackName());
-		StackStatus status = StackStatus.CREATE_IN_PROGRESS;
-		Stack stack = null;
-		long startTime = System.currentTimeMillis();
-		while ( isStackCreationInProgress(status) ){
-			if (isTimeout(startTime)){
-				throw new TimeoutException("Timed out waiting for stack to be created. (timeout=" + timeout + ")");
-			}
-			stack = getStack(amazonClient.describeStacks(describeStacksRequest));
-			status = getStackStatus(stack.getStackStatus());
-			if (isStackCreationInProgress(status)) sleep();
+	private void printStackEvents() {
+		readNewEvents();
+		printOperationEvents();
+	}
+
+	private void printOperationEvents() {
+		for (StackEvent event : operationEvents) {
+			logger.println(event.getEventId() + " - " + event.getResourceType() + " - " + event.getResourceStatus() + " - " + event.getResourceStatusReason());
 		}
 		
-		printStackEvents();
-		
-		return stack;
+		this.stackEvents = new ArrayList<StackEvent>(operationEvents);
 	}
 
-    private Stack waitForStackToBeUpdated() {
-        DescribeStacksRequest describeStacksRequest = new DescribeStacksRequest().withStackName(getExpandedStackName());
-        StackStatus status = StackStatus.UPDATE_IN_PROGRESS;
-        Stack stack = null;
-        long startTime = System.currentTimeMillis();
-        while ( isStackUpdateInProgress(status) ){
-            if (isTimeout(startTime)){
-                throw new TimeoutException("Timed out waiting for stack to be updated. (timeout=" + timeout + ")");
-            }
-            stack = getStack(amazonClient.describeStacks(describeStacksRequest));
-            status = getStackStatus(stack.getStackStatus());
-            if (isStackUpdateInProgress(status)) sleep();
-        }
-
-        printStackEvents();
-
-        return stack;
-    }
+	/**
+	 * Forgets the events read, before an operation starts.
+	 */
+	private void resetEvents() {
+		operationEvents = new ArrayList<StackEvent>();
+		lastEventId = null;
+	}
 
-	private void printStackEvents() {
-		DescribeStackEventsRequest r = new DescribeStackEventsRequest();
-		r.withStackName(getExpandedStackName());
-		DescribeStackEventsResult describeStackEvents = amazonClient.describeStackEvents(r);
-		
-		List<StackEvent> stackEvents = describeStackEvents.getStackEvents();
-		Collections.reverse(stackEvents);
+	/**
+	 * Pages back through the stack events until the newest event already read, or the event that started the
+	 * latest operation on the stack. A poll that finds no new event costs one call, and the events of an
+	 * operation are paged through once however often they are read.
+	 * @return the events not read before, oldest first.
+	 */
+	private List<StackEvent> readNewEvents() {
+		List<StackEvent> events = new ArrayList<StackEvent>();
+		String nextToken = null;
+		paging: do {
+			DescribeStackEventsRequest r = new DescribeStackEventsRequest();
+			r.withStackName(getExpandedStackName()).withNextToken(nextToken);
+			DescribeStackEventsResult describeStackEvents = amazonClient.describeStackEvents(r);
+			
+			for (StackEvent event : describeStackEvents.getStackEvents()) {
+				if (lastEventId != null && lastEventId.equals(event.getEventId())) break paging;
+				events.add(event);
+				if (isOperationStart(event)) {
+					operationEvents.clear();
+					break paging;
+				}
+			}
+			nextToken = describeStackEvents.getNextToken();
+		} while (nextToken != null);
 		
-		for (StackEvent event : stackEvents) {
-			logger.println(event.getEventId() + " - " + event.getResourceType() + " - " + event.getResourceStatus() + " - " + event.getResourceStatusReason());
+		Collections.reverse(events);
+		operationEvents.addAll(events);
+		if (!events.isEmpty()) lastEventId = events.get(events.size() - 1).getEventId();
+		return events;
+	}
+
+	/**
+	 * Reads the events since the previous poll only: a failure is found in the poll that follows it.
+	 * @return the first resource of the operation in progress that failed to be created, or null if none did.
+	 */
+	private StackEvent findFailedResource() {
+		for (StackEvent event : readNewEvents()) {
+			if ("CREATE_FAILED".equals(event.getResourceStatus())) return event;
 		}
-		
+		return null;
 	}
 
-	private boolean isTimeout(long startTime) {
-		return timeout == 0 ? false : (System.currentTimeMillis() - startTime) > (timeout * 1000);
+	private boolean isOperationStart(StackEvent event) {
+		return getExpandedStackName().equals(event.getLogicalResourceId())
+				&& "AWS::CloudFormation::Stack".equals(event.getResourceType())
+				&& ("CREATE_IN_PROGRESS".equals(event.getResourceStatus())
+						|| "UPDATE_IN_PROGRESS".equals(event.getResourceStatus()));
+	}
+
+	/**
+	 * @return the events of the last create or update this instance waited for, oldest first. Empty if none.
+	 */
+	public List<StackEvent> getStackEvents() {
+		return stackEvents;
 	}
 
 	private Stack getStack(DescribeStacksResult result) {
@@ -376,39 +803,15 @@ public class CloudFormation {
 		
 	}
 
-	private boolean isStackCreationSuccessful(StackStatus status) {
-		return status == StackStatus.CREATE_COMPLETE;
-	}
-
-    private boolean isStackUpdateSuccessful(StackStatus status) {
-        return status == StackStatus.UPDATE_COMPLETE;
-    }
-
-	private void sleep() {
-		try {
-			Thread.sleep(waitBetweenAttempts * 1000);
-		} catch (InterruptedException e) {
-			if (stack != null){
-				logger.println("Received an interruption signal. There is a stack created or in the proces of creation. Check in your amazon account to ensure you are not charged for this.");
-				logger.println("Stack details: " + stack);
-			}
-		}
-	}
-
-	private boolean isStackCreationInProgress(StackStatus status) {
-		return status == StackStatus.CREATE_IN_PROGRESS;
-	}
-
-    private boolean isStackUpdateInProgress(StackStatus status) {
-        return status == StackStatus.UPDATE_IN_PROGRESS ||
-               status == StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS ||
-               status == StackStatus.UPDATE_ROLLBACK_COMPLETE_CLEANUP_IN_PROGRESS ||
-               status == StackStatus.UPDATE_ROLLBACK_IN_PROGRESS;
-    }
-
-	private StackStatus getStackStatus(String status) {
-		StackStatus result = StackStatus.fromValue(status);
-		return result;
+	/**
+	 * Publishes the status to the {@link StackState} listeners if it changed since the last poll.
+	 * @return the outcome of the operation waited for.
+	 */
+	private Outcome observe(Operation operation, String status) {
+		String previous = lastStatus;
+		lastStatus = status;
+		if (status != null && !status.equals(previous)) StackState.fireTransition(this, previous, status);
+		return operation.outcome(status);
 	}
 
 	private CreateStackRequest createStackRequest() {
@@ -418,6 +821,8 @@ public class CloudFormation {
 		r.withParameters(parameters);
 		r.withTemplateBody(recipe);
 		r.withCapabilities("CAPABILITY_IAM");
+		if (tagFingerprint) r.withTags(new Tag().withKey(FINGERPRINT_TAG).withValue(getFingerprint()));
+		if (disableRollback) r.withDisableRollback(true);
 		
 		return r;
 	}
@@ -476,24 +881,61 @@ public class CloudFormation {
         return updateRequestParams;
     }
 
+    /**
+     * @return the outputs of the stack, each prefixed with the stack name. The map is immutable.
+     */
     public Map<String, String> getOutputs() {
-		// Prefix outputs with stack name to prevent collisions with other stacks created in the same build.
-		HashMap<String, String> map = new HashMap<String, String>();
-
-        if (outputs == null)
-            return map;
-
-		for (String key : outputs.keySet()) {
-			map.put(getExpandedStackName() + "_" + key, outputs.get(key));
-		}
-		return map;
+		return prefixedOutputs;
 	}
 
-	private String getExpandedStackName() {
+	public String getExpandedStackName() {
 		return envVars.expand(stackName);
 	}
 
+    /**
+     * Sets the prefix of the output variable names, for stacks whose name is not the one the job refers to them by.
+     */
+    public void setOutputPrefix(String outputPrefix) {
+        this.outputPrefix = outputPrefix;
+        prefixOutputs();
+    }
+
+    /**
+     * Leaves a stack that fails to be created as it is, with the resources that were created, instead of rolling it back.
+     */
+    public void setDisableRollback(boolean disableRollback) {
+        this.disableRollback = disableRollback;
+    }
+
+    public boolean getDisableRollback() {
+        return disableRollback;
+    }
+
+    /**
+     * Sets the digest of the template when it is known already, so that it is not computed again.
+     */
+    public void setTemplateDigest(String templateDigest) {
+        this.templateDigest = templateDigest;
+    }
+
+    public Region getAwsRegion() {
+        return awsRegion;
+    }
+
     public void setTimeout(long timeout) {
         this.timeout = timeout;
+        setDeadline(new Deadline(timeout));
+    }
+
+    /**
+     * Shares the time budget of this stack's operations, including the recycling of its auto scaling groups.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+        if (ec2 != null) ec2.setDeadline(deadline);
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
     }
 }
@@ -3,9 +3,12 @@
  */
 package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.model.Action;
+import hudson.model.InvisibleAction;
 import hudson.model.BuildListener;
 import hudson.model.Result;
 import hudson.model.AbstractBuild;
@@ -16,11 +19,21 @@ import hudson.tasks.BuildWrapperDescriptor;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
 
 /**
  * @author erickdovale
@@ -30,20 +43,29 @@ public class CloudFormationBuildWrapper extends BuildWrapper {
 
 	protected List<StackBean> stacks;
 
-	private transient List<CloudFormation> cloudFormations = new ArrayList<CloudFormation>();
+	/**
+	 * Percentage by which stack creation may exceed the median of recent builds before the build is
+	 * marked unstable. 0 disables the check.
+	 */
+	protected int slowdownThreshold;
 
-	@DataBoundConstructor
 	public CloudFormationBuildWrapper(List<StackBean> stacks) {
+		this(stacks, 0);
+	}
+
+	@DataBoundConstructor
+	public CloudFormationBuildWrapper(List<StackBean> stacks, int slowdownThreshold) {
 		this.stacks = stacks;
+		this.slowdownThreshold = slowdownThreshold;
 	}
 
 	@Override
 	public void makeBuildVariables(AbstractBuild build,
 			Map<String, String> variables) {
 
-		for (CloudFormation cf : cloudFormations) {
-			variables.putAll(cf.getOutputs());
-		}
+		CreatedStacks created = (CreatedStacks) build.getAction(CreatedStacks.class);
+		// not kept once the build is reloaded from disk
+		if (created != null && created.outputs != null) variables.putAll(created.outputs);
 
 	}
 
@@ -53,38 +75,110 @@ public class CloudFormationBuildWrapper extends BuildWrapper {
 
         EnvVars env = build.getEnvironment(listener);
         env.overrideAll(build.getBuildVariables());
+
+        Map<StackBean, Map<String, String>> fileParameters;
+        Map<StackBean, StackTemplate> templates;
+        try {
+            for (StackBean stackBean : stacks) {
+                if (stackBean.getUseInstanceProfile() && !StackCredentials.isInstanceProfileAllowed()) {
+                    throw new AbortException("Stack " + stackBean.getStackName() + ": " + StackCredentials.INSTANCE_PROFILE_NOT_ALLOWED);
+                }
+                List<String> conflicting = conflictingOptions(stackBean);
+                if (!conflicting.isEmpty()) {
+                    throw new AbortException("Stack " + stackBean.getStackName() + " sets " + conflicting
+                            + ", which cannot be combined with targetRegions.");
+                }
+            }
+            fileParameters = readParametersFiles(build, env);
+            templates = readTemplates(build, env, listener.getLogger());
+            validateTemplates(env, templates, fileParameters);
+        } catch (IOException e) {
+            listener.error(e.getMessage());
+            build.setResult(Result.FAILURE);
+            return null;
+        }
+
+        try {
+            StackReferences.of(build).prefetch(referenceLookups(env, fileParameters), listener.getLogger());
+        } catch (RuntimeException e) {
+            listener.error("Failed to resolve the references to other stacks: " + e.getMessage());
+            build.setResult(Result.FAILURE);
+            return null;
+        }
         
+        final CreatedStacks created = new CreatedStacks();
+        build.addAction(created);
         boolean success = true;
         
-		for (StackBean stackBean : stacks) {
+		try {
+			for (StackBean stackBean : stacks) {
 
-			final CloudFormation cloudFormation = newCloudFormation(stackBean,
-					build, env, listener.getLogger());
+				// expanded now, so that parameters can use the outputs of the stacks created before
+				Map<String, String> parameters = stackBean.getParsedParameters(env, fileParameters.get(stackBean));
 
-			try {
-				if (cloudFormation.create()) {
-					cloudFormations.add(cloudFormation);
-					env.putAll(cloudFormation.getOutputs());
-				} else {
+				if (!stackBean.getParsedTargetRegions(env).isEmpty()) {
+					if (!createInRegions(created, stackBean, templates.get(stackBean), parameters, build, env,
+							listener.getLogger())) {
+						build.setResult(Result.FAILURE);
+						success = false;
+						break;
+					}
+					continue;
+				}
+
+				StackPoolManager.Lease lease = leaseFromPool(stackBean, listener.getLogger());
+				final CloudFormation cloudFormation = lease != null
+						? newPooledCloudFormation(stackBean, parameters, lease, build, env, listener.getLogger())
+						: newCloudFormation(stackBean, templates.get(stackBean), parameters, build, env, listener.getLogger());
+
+				try {
+					boolean ready = lease != null
+							? prepareLeasedStack(stackBean, parameters, lease, cloudFormation, build, env,
+									listener.getLogger())
+							: stackBean.getReuseStack()
+								? createOrReuse(created, stackBean, cloudFormation, env)
+								: cloudFormation.create();
+					StackTimelineAction.attach(build, cloudFormation, "creation", listener.getLogger());
+					if (ready) {
+						created.add(cloudFormation);
+						if (lease != null) created.leases.put(cloudFormation, lease);
+						env.putAll(cloudFormation.getOutputs());
+						if (lease == null && !cloudFormation.isReused() && StackDurationHistory.recordAndCheck(build, stackBean.getStackName(), "create",
+								cloudFormation.getLastOperationMillis(), slowdownThreshold, listener.getLogger())) {
+							build.setResult(Result.UNSTABLE);
+						}
+					} else {
+						if (lease != null) {
+							lease.setModified(true);
+							StackPoolManager.get().release(lease);
+						} else {
+							keepForTearDown(created, stackBean, cloudFormation);
+						}
+						build.setResult(Result.FAILURE);
+						success = false;
+						break;
+					}
+				} catch (TimeoutException e) {
+					listener.getLogger()
+							.append("ERROR creating stack with name "
+									+ stackBean.getStackName()
+									+ ". Operation timedout. Try increasing the timeout period in your stack configuration.");
+					if (lease == null) keepForTearDown(created, stackBean, cloudFormation);
 					build.setResult(Result.FAILURE);
 					success = false;
 					break;
 				}
-			} catch (TimeoutException e) {
-				listener.getLogger()
-						.append("ERROR creating stack with name "
-								+ stackBean.getStackName()
-								+ ". Operation timedout. Try increasing the timeout period in your stack configuration.");
-				build.setResult(Result.FAILURE);
-				success = false;
-				break;
-			}
 
+			}
+		} catch (InterruptedException e) {
+			// Aborted: have the stacks created so far deleted, without waiting for them.
+			tearDown(created, false);
+			throw e;
 		}
-		
+
 		// If any stack fails to create then destroy them all
 		if (!success) {
-			doTearDown();
+			doTearDown(created);
 			return null;
 		}
 
@@ -93,46 +187,389 @@ public class CloudFormationBuildWrapper extends BuildWrapper {
 			public boolean tearDown(AbstractBuild build, BuildListener listener)
 					throws IOException, InterruptedException {
 
-				return doTearDown();
+				return doTearDown(created);
 				
 			}
 
 		};
 	}
 	
-	protected boolean doTearDown() throws IOException, InterruptedException{
+	protected boolean doTearDown(CreatedStacks created) throws IOException, InterruptedException{
+		return tearDown(created, true);
+	}
+
+	/**
+	 * @param wait whether to wait for the stacks to be deleted, or only to start deleting them.
+	 */
+	private boolean tearDown(CreatedStacks created, boolean wait) throws InterruptedException {
 		boolean result = true;
 
-		List<CloudFormation> reverseOrder = new ArrayList<CloudFormation>(cloudFormations);
+		List<CloudFormation> reverseOrder = new ArrayList<CloudFormation>(created.cloudFormations);
 		Collections.reverse(reverseOrder);
+		created.cloudFormations.clear();
 
 		for (CloudFormation cf : reverseOrder) {
+            // stacks leased from a pool go back to it
+            StackPoolManager.Lease lease = created.leases.remove(cf);
+            if (lease != null) {
+                StackPoolManager.get().release(lease);
+                continue;
+            }
+            if (created.reusedStacks.remove(cf)) {
+                ReusedStackRegistry.get().release(cf.getExpandedStackName(), cf.getAwsRegion());
+                continue;
+            }
             // automatically delete the stack?
             if (cf.getAutoDeleteStack()) {
                 // delete the stack
-                result = result && cf.delete();
+                if (wait) {
+                    result = cf.delete() && result;
+                } else {
+                    try {
+                        cf.deleteAsync();
+                    } catch (RuntimeException e) {
+                        result = false;
+                    }
+                }
             }
 		}
 
 		return result;
 	}
 
-	protected CloudFormation newCloudFormation(StackBean stackBean,
-			AbstractBuild<?, ?> build, EnvVars env, PrintStream logger)
-			throws IOException {
+	/**
+	 * @return the parameters file of each stack as it is written, or null for the stacks without one. Values are
+	 * expanded when each stack is created, once the outputs of the stacks before it are known.
+	 */
+	private Map<StackBean, Map<String, String>> readParametersFiles(AbstractBuild<?, ?> build, EnvVars env)
+			throws IOException, InterruptedException {
+		Map<StackBean, Map<String, String>> fileParameters = new HashMap<StackBean, Map<String, String>>();
+		for (StackBean stackBean : stacks) {
+			String file = stackBean.getParsedParametersFile(env);
+			fileParameters.put(stackBean, file == null ? null : ParametersFile.read(build.getWorkspace().child(file)));
+		}
+		return fileParameters;
+	}
 
-		return new CloudFormation(logger, stackBean.getStackName(), build
-				.getWorkspace().child(stackBean.getCloudFormationRecipe())
-				.readToString(), stackBean.getParsedParameters(env),
-				stackBean.getTimeout(), stackBean.getParsedAwsAccessKey(env),
-				stackBean.getParsedAwsSecretKey(env),
-				stackBean.getAwsRegion(), stackBean.getAutoDeleteStack(), env, false, false);
+	/**
+	 * @return the template of each stack as it is sent, read once for both its check and its creation.
+	 */
+	private Map<StackBean, StackTemplate> readTemplates(AbstractBuild<?, ?> build, EnvVars env, PrintStream logger)
+			throws IOException, InterruptedException {
+		Map<StackBean, StackTemplate> templates = new HashMap<StackBean, StackTemplate>();
+		for (StackBean stackBean : stacks) {
+			templates.put(stackBean, stackBean.readTemplate(build.getWorkspace(), env, logger));
+		}
+		return templates;
+	}
+
+	/**
+	 * Checks the template of every stack with the names of its parameters, before any stack is created.
+	 */
+	private void validateTemplates(EnvVars env, Map<StackBean, StackTemplate> templates,
+			Map<StackBean, Map<String, String>> fileParameters) throws IOException, InterruptedException {
+		List<TemplateValidator.Check> checks = new ArrayList<TemplateValidator.Check>();
+		for (StackBean stackBean : stacks) {
+			checks.add(new TemplateValidator.Check(stackBean, env, templates.get(stackBean),
+					stackBean.getParameterNames(fileParameters.get(stackBean))));
+		}
+		TemplateValidator.validate(checks);
+	}
+
+	/**
+	 * @return the parameters of every stack to create, with the region and account of each stack. The references
+	 * written in the parameters are read up front; those that only appear once the outputs of earlier stacks are
+	 * expanded are read when the stack is created.
+	 */
+	private List<StackReferences.Lookup> referenceLookups(EnvVars env, Map<StackBean, Map<String, String>> fileParameters) {
+		List<StackReferences.Lookup> lookups = new ArrayList<StackReferences.Lookup>();
+		for (StackBean stackBean : stacks) {
+			Map<String, String> parameters = stackBean.getParsedParameters(env, fileParameters.get(stackBean));
+			if (!StackReferences.hasReferences(parameters)) continue;
+			List<StackBean.Target> targets = stackBean.getParsedTargetRegions(env);
+			if (targets.isEmpty()) {
+				lookups.add(new StackReferences.Lookup(parameters, stackBean.getCredentials(env,
+						stackBean.getAwsRegion()), stackBean.getAwsRegion()));
+			}
+			for (StackBean.Target target : targets) {
+				lookups.add(new StackReferences.Lookup(parameters, stackBean.getCredentials(env, target),
+						target.getRegion()));
+			}
+		}
+		return lookups;
+	}
+
+	/**
+	 * @return the options of the bean that a stack created in several regions cannot honour, none if it has no
+	 *         target regions.
+	 */
+	static List<String> conflictingOptions(StackBean stackBean) {
+		List<String> conflicting = new ArrayList<String>();
+		if (stackBean.getTargetRegions() == null || stackBean.getTargetRegions().trim().length() == 0) return conflicting;
+		if (stackBean.getAwsRegion() != null) conflicting.add("awsRegion");
+		if (stackBean.getPoolName() != null && stackBean.getPoolName().trim().length() > 0) conflicting.add("poolName");
+		if (stackBean.getReuseStack()) conflicting.add("reuseStack");
+		return conflicting;
+	}
+
+	/**
+	 * @param parameters the parameters of the bean, with variables expanded.
+	 */
+	protected CloudFormation newCloudFormation(StackBean stackBean, StackTemplate template, Map<String, String> parameters,
+			AbstractBuild<?, ?> build, EnvVars env, PrintStream logger) {
+
+		AWSCredentialsProvider credentials = stackBean.getCredentials(env, stackBean.getAwsRegion());
+		CloudFormation cloudFormation = new CloudFormation(logger, stackBean.getStackName(), template.getBody(),
+				StackReferences.of(build).resolve(parameters, credentials, stackBean.getAwsRegion(), logger),
+				stackBean.getTimeout(), credentials,
+				stackBean.getAwsRegion(), stackBean.getAutoDeleteStack() && !stackBean.getReuseStack(), env, false, false);
+		cloudFormation.setDisableRollback(stackBean.getDisableRollback());
+		cloudFormation.setTemplateDigest(template.getDigest());
+		return cloudFormation;
 
 	}
 
+	/**
+	 * Creates the stack in each of the bean's target regions at once. Outputs are exported as
+	 * <code>stackName_REGION_outputName</code>.
+	 * @return false if more regions failed than the bean tolerates.
+	 */
+	private boolean createInRegions(CreatedStacks created, StackBean stackBean, StackTemplate template,
+			Map<String, String> parameters, AbstractBuild<?, ?> build, EnvVars env, PrintStream logger)
+			throws InterruptedException {
+		String stackName = env.expand(stackBean.getStackName());
+
+		Map<CloudFormation, Future<Boolean>> creations = new LinkedHashMap<CloudFormation, Future<Boolean>>();
+		for (StackBean.Target target : stackBean.getParsedTargetRegions(env)) {
+			CloudFormation cloudFormation = newRegionalCloudFormation(stackBean, parameters, template, target, build, env, logger);
+			cloudFormation.setOutputPrefix(stackName + "_" + target.getRegion().name());
+			creations.put(cloudFormation, cloudFormation.createAsync());
+		}
+
+		int failures = 0;
+		for (Map.Entry<CloudFormation, Future<Boolean>> creation : creations.entrySet()) {
+			CloudFormation cloudFormation = creation.getKey();
+			boolean success;
+			try {
+				success = creation.getValue().get();
+			} catch (InterruptedException e) {
+				// Stacks already created are left for the caller to delete.
+				for (CloudFormation started : creations.keySet()) {
+					if (!started.abort() && !created.cloudFormations.contains(started)) created.cloudFormations.add(started);
+				}
+				throw e;
+			} catch (ExecutionException e) {
+				logger.println("ERROR creating stack " + stackName + " in " + cloudFormation.getAwsRegion().readableName
+						+ ": " + e.getCause());
+				success = false;
+			}
+			StackTimelineAction.attach(build, cloudFormation, "creation", logger);
+			if (success) {
+				created.add(cloudFormation);
+				env.putAll(cloudFormation.getOutputs());
+			} else {
+				logger.println("Stack " + stackName + " failed in " + cloudFormation.getAwsRegion().readableName);
+				keepForTearDown(created, stackBean, cloudFormation);
+				failures++;
+			}
+		}
+
+		if (failures > 0) {
+			logger.println("Stack " + stackName + " failed in " + failures + " of " + creations.size()
+					+ " regions, " + stackBean.getFailureTolerance() + " tolerated.");
+		}
+		return failures <= stackBean.getFailureTolerance();
+	}
+
+	/**
+	 * Has a stack that failed to be created deleted on tear down, once its rollback is over, unless it is kept for debugging.
+	 */
+	private void keepForTearDown(CreatedStacks created, StackBean stackBean, CloudFormation cloudFormation) {
+		if (cloudFormation.getAutoDeleteStack() && !stackBean.getDisableRollback() && !cloudFormation.isReused()) {
+			created.cloudFormations.add(cloudFormation);
+		}
+	}
+
+	protected CloudFormation newRegionalCloudFormation(StackBean stackBean, Map<String, String> parameters,
+			StackTemplate template, StackBean.Target target, AbstractBuild<?, ?> build, EnvVars env, PrintStream logger) {
+		AWSCredentialsProvider credentials = stackBean.getCredentials(env, target);
+		CloudFormation cloudFormation = new CloudFormation(logger, stackBean.getStackName(), template.getBody(),
+				StackReferences.of(build).resolve(parameters, credentials, target.getRegion(), logger), stackBean.getTimeout(),
+				credentials, target.getRegion(),
+				stackBean.getAutoDeleteStack(), env, false, false);
+		cloudFormation.setDisableRollback(stackBean.getDisableRollback());
+		cloudFormation.setTemplateDigest(template.getDigest());
+		return cloudFormation;
+	}
+
+	/**
+	 * Adopts a stack left by an earlier build if its fingerprint matches, and registers it for expiry when idle.
+	 * A stack that does not match is only replaced if no other build is using it.
+	 */
+	private boolean createOrReuse(CreatedStacks created, StackBean stackBean, CloudFormation cloudFormation, EnvVars env)
+			throws TimeoutException, InterruptedException {
+		ReusedStackRegistry registry = ReusedStackRegistry.get();
+		int users = registry.acquire(cloudFormation.getExpandedStackName(), cloudFormation.getAwsRegion(),
+				stackBean.getParsedAwsAccessKey(env), stackBean.getParsedAwsSecretKey(env),
+				stackBean.getUseInstanceProfile(), stackBean.getParsedRoleArn(env), stackBean.getReuseTtl());
+		boolean success = false;
+		try {
+			success = cloudFormation.createOrReuse(users == 1);
+		} finally {
+			if (success) {
+				created.reusedStacks.add(cloudFormation);
+			} else {
+				registry.release(cloudFormation.getExpandedStackName(), cloudFormation.getAwsRegion());
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * @return a stack leased from the pool configured on the bean, or null if it has none or the pool is empty.
+	 */
+	private StackPoolManager.Lease leaseFromPool(StackBean stackBean, PrintStream logger) {
+		if (stackBean.getPoolName() == null || stackBean.getPoolName().length() == 0) return null;
+
+		StackPool pool = StackPool.get(stackBean.getPoolName());
+		if (pool == null) {
+			logger.println("Warm stack pool " + stackBean.getPoolName() + " does not exist, creating a new stack.");
+			return null;
+		}
+		StackPoolManager.Lease lease = StackPoolManager.get().lease(pool);
+		if (lease == null) {
+			logger.println("Warm stack pool " + pool.getName() + " has no ready stack, creating a new stack.");
+		}
+		return lease;
+	}
+
+	/**
+	 * Brings a leased stack in line with the parameters of the bean, if they differ from the pool's, and reads its outputs.
+	 */
+	private boolean prepareLeasedStack(StackBean stackBean, Map<String, String> parameters, StackPoolManager.Lease lease,
+			CloudFormation cloudFormation, AbstractBuild<?, ?> build, EnvVars env, PrintStream logger)
+			throws InterruptedException {
+		logger.println("Leased stack " + lease.getStackName() + " from warm stack pool " + lease.getPoolName()
+				+ " for " + stackBean.getStackName());
+
+		StackPool pool = lease.getPool();
+		Map<String, String> wanted = StackReferences.of(build).resolve(parameters, StackCredentials.forKeys(
+				pool.getAwsAccessKey(), pool.getAwsSecretKey()), pool.getAwsRegion(), logger);
+		if (pool.getParsedParameters().entrySet().containsAll(wanted.entrySet())) {
+			return cloudFormation.describe();
+		}
+		lease.setModified(true);
+		return cloudFormation.update() && cloudFormation.describe();
+	}
+
+	protected CloudFormation newPooledCloudFormation(StackBean stackBean, Map<String, String> parameters,
+			StackPoolManager.Lease lease, AbstractBuild<?, ?> build, EnvVars env, PrintStream logger) {
+		StackPool pool = lease.getPool();
+		CloudFormation cloudFormation = new CloudFormation(logger, lease.getStackName(), null,
+				StackReferences.of(build).resolve(parameters, StackCredentials.forKeys(pool.getAwsAccessKey(),
+						pool.getAwsSecretKey()), pool.getAwsRegion(), logger), stackBean.getTimeout(), pool.getAwsAccessKey(),
+				pool.getAwsSecretKey(), pool.getAwsRegion(), false, env, false, false);
+		cloudFormation.setOutputPrefix(env.expand(stackBean.getStackName()));
+		return cloudFormation;
+	}
+
 	@Extension
 	public static class DescriptorImpl extends BuildWrapperDescriptor {
 
+		/**
+		 * Warm stack pools available to all jobs.
+		 */
+		private List<StackPool> pools = new ArrayList<StackPool>();
+
+		/**
+		 * Regions added to, or replacing, the built-in region catalogue.
+		 */
+		private List<CustomRegion> customRegions = new ArrayList<CustomRegion>();
+
+		/**
+		 * Whether jobs may use the instance profile of the controller, and so act as its IAM role.
+		 */
+		private boolean allowInstanceProfile;
+
+		/**
+		 * Number of threads polling the stacks waited for, 0 for {@link StackPoller#DEFAULT_THREADS}.
+		 */
+		private int pollerThreads;
+
+		public DescriptorImpl() {
+			load();
+			applyCustomRegions();
+			StackCredentials.setInstanceProfileAllowed(allowInstanceProfile);
+			StackPoller.setThreads(pollerThreads);
+		}
+
+		public boolean getAllowInstanceProfile() {
+			return allowInstanceProfile;
+		}
+
+		public int getPollerThreads() {
+			return pollerThreads;
+		}
+
+		public List<CustomRegion> getCustomRegions() {
+			return customRegions;
+		}
+
+		private void applyCustomRegions() {
+			List<Region> regions = new ArrayList<Region>();
+			if (customRegions != null) {
+				for (CustomRegion region : customRegions) {
+					regions.add(region.toRegion());
+				}
+			}
+			Region.setCustomRegions(regions);
+		}
+
+		public List<StackPool> getPools() {
+			return pools;
+		}
+
+		@Override
+		public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+			Object pools = json.get("pools");
+			this.pools = pools != null ? req.bindJSONToList(StackPool.class, pools) : new ArrayList<StackPool>();
+			Object customRegions = json.get("customRegions");
+			this.customRegions = customRegions != null
+					? req.bindJSONToList(CustomRegion.class, customRegions) : new ArrayList<CustomRegion>();
+			applyCustomRegions();
+			allowInstanceProfile = json.optBoolean("allowInstanceProfile");
+			StackCredentials.setInstanceProfileAllowed(allowInstanceProfile);
+			pollerThreads = json.optInt("pollerThreads");
+			StackPoller.setThreads(pollerThreads);
+			save();
+			StackPoolManager.get().refillAll();
+			return true;
+		}
+
+		public Region[] getRegions() {
+			return Region.values();
+		}
+
+		/**
+		 * Refuses to save stacks set up with options that cannot be combined.
+		 */
+		@Override
+		public BuildWrapper newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+			CloudFormationBuildWrapper wrapper = (CloudFormationBuildWrapper) super.newInstance(req, formData);
+			for (StackBean stackBean : wrapper.getStacks()) {
+				List<String> conflicting = conflictingOptions(stackBean);
+				if (!conflicting.isEmpty()) {
+					throw new FormException("Stack " + stackBean.getStackName() + " sets " + conflicting
+							+ ", which cannot be combined with targetRegions.", "stacks");
+				}
+				if (stackBean.getAwsRegion() == null
+						&& (stackBean.getTargetRegions() == null || stackBean.getTargetRegions().trim().length() == 0)) {
+					throw new FormException("Stack " + stackBean.getStackName() + " sets no region.", "stacks");
+				}
+			}
+			return wrapper;
+		}
+
 		@Override
 		public String getDisplayName() {
 			return "Create AWS Cloud Formation stack";
@@ -149,13 +586,42 @@ public class CloudFormationBuildWrapper extends BuildWrapper {
 		return stacks;
 	}
 
+	public int getSlowdownThreshold() {
+		return slowdownThreshold;
+	}
+
+	@Override
+	public Collection<? extends Action> getProjectActions(AbstractProject job) {
+		return Collections.singletonList(new StackDurationTrendAction(job));
+	}
+
 	/**
-	 * @return
+	 * The stacks a build created, leased or reused, and their outputs. Kept on the build rather than on the wrapper,
+	 * which concurrent builds of the job share.
 	 */
-	private Object readResolve() {
-		// Initialize the cloud formation collection during deserialization to avoid NPEs. 
-		cloudFormations = new ArrayList<CloudFormation>();
-		return this;
+	public static class CreatedStacks extends InvisibleAction {
+
+		/**
+		 * The stacks to tear down at the end of the build, in the order they were created.
+		 */
+		private transient List<CloudFormation> cloudFormations = new ArrayList<CloudFormation>();
+
+		/**
+		 * Stacks leased from warm stack pools, given back instead of deleted at the end of the build.
+		 */
+		private transient Map<CloudFormation, StackPoolManager.Lease> leases = new HashMap<CloudFormation, StackPoolManager.Lease>();
+
+		/**
+		 * Stacks kept for reuse by later builds, released to the {@link ReusedStackRegistry} instead of deleted.
+		 */
+		private transient List<CloudFormation> reusedStacks = new ArrayList<CloudFormation>();
+
+		private transient Map<String, String> outputs = new HashMap<String, String>();
+
+		private void add(CloudFormation cloudFormation) {
+			cloudFormations.add(cloudFormation);
+			outputs.putAll(cloudFormation.getOutputs());
+		}
 	}
 	
 }
@@ -0,0 +1,232 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.tasks.BuildWrapper;
+import hudson.tasks.BuildWrapperDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+/**
+ * Rolls the same parameter changes out to many existing stacks, a few at a time. The log of each stack is only
+ * printed if its update fails, progress is otherwise reported as a {@link BulkUpdateProgress} matrix.
+ */
+public class CloudFormationBulkUpdateBuildWrapper extends BuildWrapper {
+
+	/**
+	 * Statuses of the stacks that can be updated.
+	 */
+	static final StackStatus[] UPDATABLE = StackState.toArray(StackState.USABLE);
+
+	/**
+	 * How long to block on the oldest update in progress before checking the others again.
+	 */
+	private static final long WAIT_MILLIS = 500;
+
+	protected List<BulkUpdateStackBean> stacks;
+
+	@DataBoundConstructor
+	public CloudFormationBulkUpdateBuildWrapper(List<BulkUpdateStackBean> stacks) {
+		this.stacks = stacks;
+	}
+
+	public List<BulkUpdateStackBean> getStacks() {
+		return stacks;
+	}
+
+	@Override
+	public void makeBuildVariables(AbstractBuild build, Map<String, String> variables) {
+		UpdatedOutputs updated = (UpdatedOutputs) build.getAction(UpdatedOutputs.class);
+		// not kept once the build is reloaded from disk
+		if (updated != null && updated.outputs != null) variables.putAll(updated.outputs);
+	}
+
+	@Override
+	public Environment setUp(AbstractBuild build, Launcher launcher, BuildListener listener)
+			throws IOException, InterruptedException {
+
+		EnvVars env = build.getEnvironment(listener);
+		env.overrideAll(build.getBuildVariables());
+		PrintStream logger = listener.getLogger();
+
+		final Map<String, String> outputs = new HashMap<String, String>();
+		build.addAction(new UpdatedOutputs(outputs));
+		for (BulkUpdateStackBean stackBean : stacks) {
+			List<String> stackNames;
+			try {
+				StackSelector selector = stackBean.getParsedStackNames(env);
+				stackNames = selector.select(newCloudFormation(stackBean, "", env,
+						new PrintStream(new ByteArrayOutputStream())), UPDATABLE);
+				logger.println("Stacks matching " + selector + ": " + stackNames.size());
+			} catch (RuntimeException e) {
+				logger.println("ERROR selecting the stacks to update: " + e.getMessage());
+				build.setResult(Result.FAILURE);
+				break;
+			}
+
+			if (!rollOut(stackBean, stackNames, env, outputs, logger)) {
+				build.setResult(Result.FAILURE);
+				break;
+			}
+		}
+
+		return new Environment() {
+			@Override
+			public void buildEnvVars(Map<String, String> env) {
+				env.putAll(outputs);
+			}
+
+			@Override
+			public boolean tearDown(AbstractBuild build, BuildListener listener) throws IOException, InterruptedException {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Updates the stacks, never more than the bean's concurrency at once. Once more stacks have failed than
+	 * tolerated, no more updates are started. The log of each stack is only kept until its update is over.
+	 * @param outputs receives the outputs of the stacks updated.
+	 * @return true if no more stacks failed than tolerated.
+	 */
+	private boolean rollOut(BulkUpdateStackBean stackBean, List<String> stackNames, EnvVars env,
+			Map<String, String> outputs, PrintStream logger) throws InterruptedException {
+		BulkUpdateProgress progress = new BulkUpdateProgress(stackNames);
+		Map<String, ByteArrayOutputStream> logs = new LinkedHashMap<String, ByteArrayOutputStream>();
+		Map<CloudFormation, Future<Boolean>> inFlight = new LinkedHashMap<CloudFormation, Future<Boolean>>();
+		int next = 0;
+		int failures = 0;
+
+		try {
+			while (next < stackNames.size() || !inFlight.isEmpty()) {
+				while (inFlight.size() < stackBean.getEffectiveConcurrency() && next < stackNames.size()
+						&& failures <= stackBean.getFailureTolerance()) {
+					String stackName = stackNames.get(next++);
+					ByteArrayOutputStream log = new ByteArrayOutputStream();
+					logs.put(stackName, log);
+					progress.started(stackName);
+					try {
+						CloudFormation cloudFormation = newCloudFormation(stackBean, stackName, env, new PrintStream(log));
+						inFlight.put(cloudFormation, cloudFormation.updateAsync());
+					} catch (AmazonClientException e) {
+						new PrintStream(log).println("Failed to update stack: " + stackName + ". Reason: " + e.getMessage());
+						failures += finished(progress, stackName, false, log, logger);
+					}
+				}
+				if (inFlight.isEmpty()) break;
+
+				CloudFormation done = awaitAny(inFlight);
+				boolean updated;
+				try {
+					updated = inFlight.remove(done).get();
+				} catch (ExecutionException e) {
+					new PrintStream(logs.get(done.getExpandedStackName())).println("ERROR updating stack "
+							+ done.getExpandedStackName() + ": " + e.getCause().getMessage());
+					updated = false;
+				}
+				if (updated) outputs.putAll(done.getOutputs());
+				failures += finished(progress, done.getExpandedStackName(), updated,
+						logs.remove(done.getExpandedStackName()), logger);
+			}
+		} finally {
+			// Only left over if the build was aborted.
+			for (CloudFormation update : inFlight.keySet()) {
+				update.abort();
+			}
+		}
+
+		progress.skipPending();
+		progress.printMatrix(logger);
+		if (failures > 0) {
+			logger.println(failures + " of " + stackNames.size() + " stacks failed, "
+					+ stackBean.getFailureTolerance() + " tolerated.");
+		}
+		return failures <= stackBean.getFailureTolerance();
+	}
+
+	/**
+	 * @return 1 if the update failed, 0 otherwise.
+	 */
+	private static int finished(BulkUpdateProgress progress, String stackName, boolean updated,
+			ByteArrayOutputStream log, PrintStream logger) {
+		progress.finished(stackName, updated);
+		if (!updated) {
+			logger.println("---- " + stackName);
+			logger.print(log.toString());
+		}
+		progress.report(logger);
+		return updated ? 0 : 1;
+	}
+
+	/**
+	 * @return the key of an update that is over, waiting for one if need be.
+	 */
+	private static CloudFormation awaitAny(Map<CloudFormation, Future<Boolean>> inFlight) throws InterruptedException {
+		while (true) {
+			for (Map.Entry<CloudFormation, Future<Boolean>> update : inFlight.entrySet()) {
+				if (update.getValue().isDone()) return update.getKey();
+			}
+			try {
+				inFlight.values().iterator().next().get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (ExecutionException e) {
+				// reported by the caller
+			} catch (java.util.concurrent.TimeoutException e) {
+				// check the others
+			}
+		}
+	}
+
+	protected CloudFormation newCloudFormation(BulkUpdateStackBean stackBean, String stackName, EnvVars env,
+			PrintStream logger) {
+		return new CloudFormation(logger, stackName, null, stackBean.getParsedParameters(env), stackBean.getTimeout(),
+				stackBean.getCredentials(env), stackBean.getAwsRegion(), false, env, false, false);
+	}
+
+	@Extension
+	public static class DescriptorImpl extends BuildWrapperDescriptor {
+
+		@Override
+		public String getDisplayName() {
+			return "Update many AWS Cloud Formation stacks";
+		}
+
+		@Override
+		public boolean isApplicable(AbstractProject<?, ?> item) {
+			return true;
+		}
+
+	}
+
+	/**
+	 * The outputs of the stacks updated by a build, kept on the build rather than on the wrapper.
+	 */
+	public static class UpdatedOutputs extends InvisibleAction {
+
+		private transient Map<String, String> outputs;
+
+		UpdatedOutputs(Map<String, String> outputs) {
+			this.outputs = outputs;
+		}
+	}
+
+}
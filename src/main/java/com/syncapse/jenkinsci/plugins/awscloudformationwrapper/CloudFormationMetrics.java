@@ -0,0 +1,214 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Controller-wide registry of how long stack operations and individual AWS API calls take,
+ * broken down by operation type, region and stack.
+ */
+public class CloudFormationMetrics {
+
+	/**
+	 * Stack names often embed build numbers, so the number of distinct series is capped.
+	 * Once reached, new stacks are accounted under {@link #OTHER_STACKS}.
+	 */
+	static final int MAX_SERIES = 2000;
+
+	static final String OTHER_STACKS = "*";
+
+	private static final CloudFormationMetrics INSTANCE = new CloudFormationMetrics();
+
+	static {
+		// Loaded by the first AWS call of a stack, before any of its statuses is polled.
+		StackState.addListener(new StatusDurations(INSTANCE));
+	}
+
+	private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<String, Series>();
+
+	public static CloudFormationMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Records one completed operation.
+	 * 
+	 * @param polls the number of times the status had to be polled while waiting, or 0 for operations that do not wait.
+	 */
+	public void record(String operation, String region, String stack, long millis, boolean success, int polls) {
+		Series s = series(operation, region, stack);
+		s.latency.record(millis);
+		if (!success) s.failures.incrementAndGet();
+		if (polls > 0) {
+			s.polls.addAndGet(polls);
+			s.waits.incrementAndGet();
+		}
+	}
+
+	public List<Series> getSeries() {
+		List<Series> result = new ArrayList<Series>(series.values());
+		Collections.sort(result, new Comparator<Series>() {
+			public int compare(Series a, Series b) {
+				return a.getKey().compareTo(b.getKey());
+			}
+		});
+		return result;
+	}
+
+	public void reset() {
+		series.clear();
+	}
+
+	public JSONObject toJSON() {
+		JSONArray array = new JSONArray();
+		for (Series s : getSeries()) {
+			JSONObject o = new JSONObject();
+			o.put("operation", s.getOperation());
+			o.put("region", s.getRegion());
+			o.put("stack", s.getStack());
+			o.put("count", s.getCount());
+			o.put("failures", s.getFailures());
+			o.put("meanMillis", s.getMeanMillis());
+			o.put("p50Millis", s.getP50Millis());
+			o.put("p90Millis", s.getP90Millis());
+			o.put("p99Millis", s.getP99Millis());
+			o.put("maxMillis", s.getMaxMillis());
+			o.put("polls", s.getPolls());
+			o.put("buckets", JSONArray.fromObject(s.latency.getBuckets()));
+			array.add(o);
+		}
+		JSONObject result = new JSONObject();
+		result.put("bucketBoundsMillis", JSONArray.fromObject(LatencyHistogram.BUCKET_BOUNDS));
+		result.put("series", array);
+		return result;
+	}
+
+	private Series series(String operation, String region, String stack) {
+		String key = Series.key(operation, region, stack);
+		Series s = series.get(key);
+		if (s != null) return s;
+		if (series.size() >= MAX_SERIES) {
+			stack = OTHER_STACKS;
+			key = Series.key(operation, region, stack);
+		}
+		Series created = new Series(operation, region, stack);
+		s = series.putIfAbsent(key, created);
+		return s != null ? s : created;
+	}
+
+	/**
+	 * Records how long the stacks waited for stay in each status with an operation under way, as the
+	 * <code>status:STATUS</code> operation.
+	 */
+	static class StatusDurations implements StackState.Listener {
+
+		private final CloudFormationMetrics metrics;
+		private final Map<CloudFormation, Long> since = Collections.synchronizedMap(new WeakHashMap<CloudFormation, Long>());
+
+		StatusDurations(CloudFormationMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		public void onTransition(CloudFormation cloudFormation, String from, String to) {
+			long now = System.currentTimeMillis();
+			Long entered = since.put(cloudFormation, now);
+			if (from == null || entered == null || !StackState.isInProgress(from)) return;
+			metrics.record("status:" + from, cloudFormation.getAwsRegion().name(), cloudFormation.getExpandedStackName(),
+					now - entered, true, 0);
+		}
+	}
+
+	/**
+	 * Counters and latency histogram of one operation type against one stack in one region.
+	 */
+	public static class Series {
+		private final String operation;
+		private final String region;
+		private final String stack;
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong polls = new AtomicLong();
+		private final AtomicLong waits = new AtomicLong();
+
+		Series(String operation, String region, String stack) {
+			this.operation = operation;
+			this.region = region;
+			this.stack = stack;
+		}
+
+		static String key(String operation, String region, String stack) {
+			return operation + '|' + region + '|' + stack;
+		}
+
+		public String getKey() {
+			return key(operation, region, stack);
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public String getRegion() {
+			return region;
+		}
+
+		public String getStack() {
+			return stack;
+		}
+
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public long getMeanMillis() {
+			return latency.getMean();
+		}
+
+		public long getP50Millis() {
+			return latency.getPercentile(0.5);
+		}
+
+		public long getP90Millis() {
+			return latency.getPercentile(0.9);
+		}
+
+		public long getP99Millis() {
+			return latency.getPercentile(0.99);
+		}
+
+		public long getMaxMillis() {
+			return latency.getMax();
+		}
+
+		public long getPolls() {
+			return polls.get();
+		}
+
+		/**
+		 * @return the average number of status polls each wait needed.
+		 */
+		public double getPollsPerWait() {
+			long n = waits.get();
+			return n == 0 ? 0 : (double) polls.get() / n;
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+	}
+
+}
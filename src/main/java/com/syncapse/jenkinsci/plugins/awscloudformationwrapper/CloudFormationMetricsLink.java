@@ -0,0 +1,66 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.ManagementLink;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * "Manage Jenkins" page showing {@link CloudFormationMetrics}. The same data is available as JSON
+ * from <code>/cloudformation-metrics/json</code>.
+ */
+@Extension
+public class CloudFormationMetricsLink extends ManagementLink {
+
+	@Override
+	public String getIconFileName() {
+		return "graph.gif";
+	}
+
+	public String getDisplayName() {
+		return "CloudFormation Metrics";
+	}
+
+	@Override
+	public String getDescription() {
+		return "Latency of stack operations and AWS API calls made by the CloudFormation plugin.";
+	}
+
+	@Override
+	public String getUrlName() {
+		return "cloudformation-metrics";
+	}
+
+	public List<CloudFormationMetrics.Series> getSeries() {
+		Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+		return CloudFormationMetrics.get().getSeries();
+	}
+
+	public void doJson(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+		Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.getWriter().print(CloudFormationMetrics.get().toJSON().toString(2));
+	}
+
+	/**
+	 * Only answers POST, so that a link or an image on another page cannot reset the metrics.
+	 */
+	public void doReset(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+		Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+		if (!"POST".equals(req.getMethod())) {
+			rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Reset with a POST request.");
+			return;
+		}
+		CloudFormationMetrics.get().reset();
+		rsp.sendRedirect(".");
+	}
+
+}
@@ -10,12 +10,21 @@ import hudson.model.BuildListener;
 import hudson.tasks.*;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
 /**
  * User: joeljohnson
  * Date: 12/14/11
@@ -23,6 +32,12 @@ import java.util.logging.Logger;
  */
 public class CloudFormationNotifier extends Notifier {
 	private static final Logger LOGGER = Logger.getLogger(CloudFormationNotifier.class.getName());
+
+	/**
+	 * Statuses of the stacks a pattern may select for deletion: every settled status of a stack not deleted yet.
+	 */
+	static final StackStatus[] DELETABLE = StackState.toArray(StackState.DELETABLE);
+
 	private final List<SimpleStackBean> stacks;
 
 	@DataBoundConstructor
@@ -60,21 +75,49 @@ public class CloudFormationNotifier extends Notifier {
 	@Override
 	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
 		EnvVars envVars = build.getEnvironment(listener);
+		PrintStream logger = listener.getLogger();
 		boolean result = true;
+
+		// Start every deletion first, then wait for them all.
+		Map<CloudFormation, Future<Boolean>> deletions = new LinkedHashMap<CloudFormation, Future<Boolean>>();
 		for (SimpleStackBean stack : stacks) {
-			CloudFormation cloudFormation = new CloudFormation(
-					listener.getLogger(),
-					stack.getStackName(),
-					"",
-					new HashMap<String, String>(),
-					0,
-					stack.getParsedAwsAccessKey(envVars),
-					stack.getParsedAwsSecretKey(envVars),
-					stack.getAwsRegion(),
-					false,
-					envVars, false, false
-			);
-			if(cloudFormation.delete()) {
+			List<String> stackNames;
+			try {
+				StackSelector selector = new StackSelector(stack.getStackName(), envVars);
+				stackNames = selector.select(newCloudFormation(stack, "", envVars,
+						new PrintStream(new ByteArrayOutputStream())), DELETABLE);
+				if (!selector.isLiteral()) logger.println("Stacks matching " + selector + ": " + stackNames);
+			} catch (RuntimeException e) {
+				logger.println("ERROR selecting the stacks to delete: " + e.getMessage());
+				result = false;
+				continue;
+			}
+			for (String stackName : stackNames) {
+				CloudFormation cloudFormation = newCloudFormation(stack, stackName, envVars, logger);
+				try {
+					deletions.put(cloudFormation, cloudFormation.deleteAsync());
+				} catch (AmazonClientException e) {
+					logger.println("Failed to delete stack: " + stackName + ". Reason: " + e.getMessage());
+					result = false;
+				}
+			}
+		}
+
+		for (Map.Entry<CloudFormation, Future<Boolean>> deletion : deletions.entrySet()) {
+			boolean deleted;
+			try {
+				deleted = deletion.getValue().get();
+			} catch (InterruptedException e) {
+				for (CloudFormation cloudFormation : deletions.keySet()) {
+					cloudFormation.abort();
+				}
+				throw e;
+			} catch (ExecutionException e) {
+				logger.println("Failed to delete stack: " + deletion.getKey().getExpandedStackName() + ". Reason: "
+						+ e.getCause().getMessage());
+				deleted = false;
+			}
+			if (deleted) {
 				LOGGER.info("Success");
 			} else {
 				LOGGER.warning("Failed");
@@ -84,6 +127,21 @@ public class CloudFormationNotifier extends Notifier {
 		return result;
 	}
 
+	protected CloudFormation newCloudFormation(SimpleStackBean stack, String stackName, EnvVars envVars, PrintStream logger) {
+		return new CloudFormation(
+				logger,
+				stackName,
+				"",
+				new HashMap<String, String>(),
+				0,
+				stack.getParsedAwsAccessKey(envVars),
+				stack.getParsedAwsSecretKey(envVars),
+				stack.getAwsRegion(),
+				false,
+				envVars, false, false
+		);
+	}
+
 	@Override
 	public BuildStepDescriptor getDescriptor() {
 		return DESCRIPTOR;
@@ -0,0 +1,120 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.tasks.BuildWrapper;
+import hudson.tasks.BuildWrapperDescriptor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Exports the outputs of existing, shared stacks to the build, leaving the stacks untouched.
+ */
+public class CloudFormationOutputsBuildWrapper extends BuildWrapper {
+
+	protected List<DescribeStackBean> stacks;
+
+	@DataBoundConstructor
+	public CloudFormationOutputsBuildWrapper(List<DescribeStackBean> stacks) {
+		this.stacks = stacks;
+	}
+
+	public List<DescribeStackBean> getStacks() {
+		return stacks;
+	}
+
+	@Override
+	public void makeBuildVariables(AbstractBuild build, Map<String, String> variables) {
+		ExportedOutputs exported = (ExportedOutputs) build.getAction(ExportedOutputs.class);
+		// not kept once the build is reloaded from disk
+		if (exported != null && exported.outputs != null) variables.putAll(exported.outputs);
+	}
+
+	@Override
+	public Environment setUp(AbstractBuild build, Launcher launcher, BuildListener listener)
+			throws IOException, InterruptedException {
+
+		EnvVars env = build.getEnvironment(listener);
+		env.overrideAll(build.getBuildVariables());
+
+		final Map<String, String> outputs = new HashMap<String, String>();
+		for (DescribeStackBean stackBean : stacks) {
+			List<String> stackNames = stackBean.getParsedStackNames(env);
+			Map<String, Map<String, String>> found;
+			try {
+				found = newReader(stackBean, env, listener.getLogger()).read(stackNames, stackBean.getCacheTtlMillis());
+			} catch (AmazonClientException e) {
+				listener.error("Failed to read the outputs of " + stackNames + ": " + e.getMessage());
+				build.setResult(Result.FAILURE);
+				return null;
+			}
+
+			for (String stackName : stackNames) {
+				Map<String, String> stackOutputs = found.get(stackName);
+				if (stackOutputs == null) {
+					listener.error("Stack " + stackName + " does not exist in "
+							+ (stackBean.getAwsRegion() != null ? stackBean.getAwsRegion() : Region.getDefault()).readableName);
+					build.setResult(Result.FAILURE);
+					return null;
+				}
+				for (Map.Entry<String, String> output : stackOutputs.entrySet()) {
+					outputs.put(stackName + "_" + output.getKey(), output.getValue());
+				}
+			}
+		}
+
+		build.addAction(new ExportedOutputs(outputs));
+		return new Environment() {
+			@Override
+			public void buildEnvVars(Map<String, String> env) {
+				env.putAll(outputs);
+			}
+		};
+	}
+
+	protected StackOutputsReader newReader(DescribeStackBean stackBean, EnvVars env, PrintStream logger) {
+		return new StackOutputsReader(stackBean.getCredentials(env), stackBean.getAwsRegion(), logger);
+	}
+
+	@Extension
+	public static class DescriptorImpl extends BuildWrapperDescriptor {
+
+		@Override
+		public String getDisplayName() {
+			return "Read the outputs of existing AWS Cloud Formation stacks";
+		}
+
+		@Override
+		public boolean isApplicable(AbstractProject<?, ?> item) {
+			return true;
+		}
+
+	}
+
+	/**
+	 * The outputs exported to a build, kept on the build rather than on the wrapper that concurrent builds share.
+	 */
+	public static class ExportedOutputs extends InvisibleAction {
+
+		private transient Map<String, String> outputs;
+
+		ExportedOutputs(Map<String, String> outputs) {
+			this.outputs = outputs;
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
 import hudson.model.BuildListener;
 import hudson.model.Result;
 import hudson.tasks.BuildWrapper;
@@ -17,6 +18,8 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -28,11 +31,22 @@ public class CloudFormationUpdateBuildWrapper extends BuildWrapper {
 
 	protected List<UpdateStackBean> stacks;
 
+	/**
+	 * Percentage by which a stack update may exceed the median of recent builds before the build is
+	 * marked unstable. 0 disables the check.
+	 */
+	protected int slowdownThreshold;
+
 	private transient List<CloudFormation> cloudFormations = new ArrayList<CloudFormation>();
 
-	@DataBoundConstructor
 	public CloudFormationUpdateBuildWrapper(List<UpdateStackBean> stacks) {
+		this(stacks, 0);
+	}
+
+	@DataBoundConstructor
+	public CloudFormationUpdateBuildWrapper(List<UpdateStackBean> stacks, int slowdownThreshold) {
 		this.stacks = stacks;
+		this.slowdownThreshold = slowdownThreshold;
 	}
 
 	@Override
@@ -60,9 +74,15 @@ public class CloudFormationUpdateBuildWrapper extends BuildWrapper {
 					build, env, listener.getLogger());
 
 			try {
-				if (cloudFormation.update()) {
+				boolean updated = cloudFormation.update();
+				StackTimelineAction.attach(build, cloudFormation, "update", listener.getLogger());
+				if (updated) {
 					cloudFormations.add(cloudFormation);
 					env.putAll(cloudFormation.getOutputs());
+					if (StackDurationHistory.recordAndCheck(build, stackBean.getStackName(), "update",
+							cloudFormation.getLastOperationMillis(), slowdownThreshold, listener.getLogger())) {
+						build.setResult(Result.UNSTABLE);
+					}
                     if (cloudFormation.getTerminateAutoScaleEC2Resources()) {
                         if (!cloudFormation.doTerminateAutoScaleEC2Resources()) {
                             build.setResult(Result.UNSTABLE);
@@ -121,6 +141,15 @@ public class CloudFormationUpdateBuildWrapper extends BuildWrapper {
 		return stacks;
 	}
 
+	public int getSlowdownThreshold() {
+		return slowdownThreshold;
+	}
+
+	@Override
+	public Collection<? extends Action> getProjectActions(AbstractProject job) {
+		return Collections.singletonList(new StackDurationTrendAction(job));
+	}
+
 	/**
 	 * @return
 	 */
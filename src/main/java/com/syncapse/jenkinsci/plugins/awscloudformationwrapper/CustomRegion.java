@@ -0,0 +1,116 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * A region configured in the global configuration, in addition to the built-in ones: a region launched after
+ * this release of the plugin, a region with FIPS or VPC endpoints, or a local simulator.
+ */
+public class CustomRegion extends AbstractDescribableImpl<CustomRegion> {
+
+	/**
+	 * Name jobs refer to the region by. A built-in name replaces that region.
+	 */
+	private final String name;
+
+	private final String regionId;
+
+	private final String displayName;
+
+	/**
+	 * Domain of the default endpoints, <code>service.regionId.domain</code>. Defaults to amazonaws.com.
+	 */
+	private final String domain;
+
+	/**
+	 * Endpoints of the services not following the default pattern, one <code>service=endpoint</code> per line.
+	 */
+	private final String endpoints;
+
+	@DataBoundConstructor
+	public CustomRegion(String name, String regionId, String displayName, String domain, String endpoints) {
+		this.name = name != null ? name.trim() : null;
+		this.regionId = regionId != null ? regionId.trim() : null;
+		this.displayName = displayName;
+		this.domain = domain != null ? domain.trim() : null;
+		this.endpoints = endpoints;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getRegionId() {
+		return regionId;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	public String getDomain() {
+		return domain;
+	}
+
+	public String getEndpoints() {
+		return endpoints;
+	}
+
+	public Region toRegion() {
+		String readableName = displayName != null && displayName.trim().length() > 0 ? displayName : name;
+		return new Region(name, regionId, readableName, domain, parseEndpoints(endpoints));
+	}
+
+	static Map<String, String> parseEndpoints(String endpoints) {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		if (endpoints == null) return result;
+		for (String line : endpoints.split("[\\r\\n]+")) {
+			int equals = line.indexOf('=');
+			if (equals < 0) continue;
+			result.put(line.substring(0, equals).trim(), line.substring(equals + 1).trim());
+		}
+		return result;
+	}
+
+	@Extension
+	public static final class DescriptorImpl extends Descriptor<CustomRegion> {
+
+		@Override
+		public String getDisplayName() {
+			return "AWS Region";
+		}
+
+		public FormValidation doCheckName(@QueryParameter String value) {
+			if (value.trim().length() == 0) {
+				return FormValidation.error("Empty region name");
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckRegionId(@QueryParameter String value) {
+			if (value.trim().length() == 0) {
+				return FormValidation.error("Empty region id");
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckEndpoints(@QueryParameter String value) {
+			for (String line : value.split("[\\r\\n]+")) {
+				if (line.trim().length() > 0 && line.indexOf('=') < 0) {
+					return FormValidation.error("Expected service=endpoint: " + line.trim());
+				}
+			}
+			return FormValidation.ok();
+		}
+	}
+
+}
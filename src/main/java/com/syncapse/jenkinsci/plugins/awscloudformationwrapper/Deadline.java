@@ -0,0 +1,65 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+/**
+ * A time budget shared by every phase run against one stack: creation or update, recycling its auto scaling
+ * groups and deletion. The budget is only spent while a phase runs, not while the build itself runs in between.
+ */
+public class Deadline {
+
+	/**
+	 * Budget in milliseconds, 0 for none.
+	 */
+	private final long budgetMillis;
+
+	private long spentMillis;
+
+	/**
+	 * Number of phases running, and since when at least one has been.
+	 */
+	private int running;
+	private long runningSince;
+
+	/**
+	 * @param budgetSeconds the budget, or 0 for none.
+	 */
+	public Deadline(long budgetSeconds) {
+		this.budgetMillis = Math.max(0, budgetSeconds) * 1000;
+	}
+
+	public static Deadline unlimited() {
+		return new Deadline(0);
+	}
+
+	public synchronized void start() {
+		if (running++ == 0) runningSince = System.currentTimeMillis();
+	}
+
+	public synchronized void stop() {
+		if (running == 0) return;
+		if (--running == 0) spentMillis += System.currentTimeMillis() - runningSince;
+	}
+
+	/**
+	 * @return the time left, or {@link Long#MAX_VALUE} if there is no budget.
+	 */
+	public synchronized long remainingMillis() {
+		if (budgetMillis == 0) return Long.MAX_VALUE;
+		long spent = spentMillis + (running > 0 ? System.currentTimeMillis() - runningSince : 0);
+		return budgetMillis - spent;
+	}
+
+	public boolean isExpired() {
+		return remainingMillis() <= 0;
+	}
+
+	public long getBudgetSeconds() {
+		return budgetMillis / 1000;
+	}
+
+	@Override
+	public String toString() {
+		if (budgetMillis == 0) return "no time limit";
+		return Math.max(0, remainingMillis() / 1000) + " of " + getBudgetSeconds() + " seconds left";
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Existing stacks of one region whose outputs a build reads, without creating, updating or deleting them.
+ */
+public class DescribeStackBean extends AbstractDescribableImpl<DescribeStackBean> {
+
+	/**
+	 * Default for {@link #cacheTtl}, in seconds.
+	 */
+	public static final long DEFAULT_CACHE_TTL = 30;
+
+	/**
+	 * Names of the stacks, separated by commas or new lines.
+	 */
+	private final String stackNames;
+
+	private final String awsRegion;
+
+	private final String awsAccessKey;
+
+	private final String awsSecretKey;
+
+	private final boolean useInstanceProfile;
+
+	private final String roleArn;
+
+	/**
+	 * How long outputs read by any build are reused by the others, in seconds. 0 for the default.
+	 */
+	private final long cacheTtl;
+
+	@DataBoundConstructor
+	public DescribeStackBean(String stackNames, String awsRegion, String awsAccessKey, String awsSecretKey,
+			boolean useInstanceProfile, String roleArn, long cacheTtl) {
+		this.stackNames = stackNames;
+		this.awsRegion = awsRegion;
+		this.awsAccessKey = awsAccessKey;
+		this.awsSecretKey = awsSecretKey;
+		this.useInstanceProfile = useInstanceProfile;
+		this.roleArn = roleArn;
+		this.cacheTtl = cacheTtl;
+	}
+
+	public String getStackNames() {
+		return stackNames;
+	}
+
+	public Region getAwsRegion() {
+		return Region.fromName(awsRegion);
+	}
+
+	public String getAwsAccessKey() {
+		return awsAccessKey;
+	}
+
+	public String getAwsSecretKey() {
+		return awsSecretKey;
+	}
+
+	public boolean getUseInstanceProfile() {
+		return useInstanceProfile;
+	}
+
+	public String getRoleArn() {
+		return roleArn;
+	}
+
+	public long getCacheTtl() {
+		return cacheTtl;
+	}
+
+	public long getCacheTtlMillis() {
+		return (cacheTtl > 0 ? cacheTtl : DEFAULT_CACHE_TTL) * 1000;
+	}
+
+	public List<String> getParsedStackNames(EnvVars env) {
+		List<String> names = new ArrayList<String>();
+		for (String name : env.expand(stackNames).split("[,\\r\\n]+")) {
+			if (name.trim().length() > 0) names.add(name.trim());
+		}
+		return names;
+	}
+
+	public AWSCredentialsProvider getCredentials(EnvVars env) {
+		return StackCredentials.of(env.expand(awsAccessKey), env.expand(awsSecretKey), useInstanceProfile,
+				roleArn != null ? env.expand(roleArn) : null, getAwsRegion());
+	}
+
+	@Extension
+	public static final class DescriptorImpl extends Descriptor<DescribeStackBean> {
+
+		@Override
+		public String getDisplayName() {
+			return "Existing Cloud Formation stacks";
+		}
+
+		public FormValidation doCheckStackNames(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			if (0 == value.trim().length()) {
+				return FormValidation.error("Empty stack names");
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckCacheTtl(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			if (value.length() > 0) {
+				try {
+					Long.parseLong(value);
+				} catch (NumberFormatException e) {
+					return FormValidation.error("Cache time "+ value + " is not a number.");
+				}
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckUseInstanceProfile(@QueryParameter boolean value) {
+			if (value && !StackCredentials.isInstanceProfileAllowed()) {
+				return FormValidation.error(StackCredentials.INSTANCE_PROFILE_NOT_ALLOWED);
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckAwsRegion(@QueryParameter String value) {
+			return Region.isKnown(value) ? FormValidation.ok() : FormValidation.error(Region.unknown(value));
+		}
+
+		public ListBoxModel doFillAwsRegionItems() {
+			ListBoxModel items = new ListBoxModel();
+			for (Region region : Region.values()) {
+				items.add(region.readableName, region.name());
+			}
+			return items;
+		}
+
+	}
+
+}
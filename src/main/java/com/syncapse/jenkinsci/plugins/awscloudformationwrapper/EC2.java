@@ -1,7 +1,6 @@
 package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.autoscaling.AmazonAutoScaling;
 import com.amazonaws.services.autoscaling.AmazonAutoScalingClient;
 import com.amazonaws.services.autoscaling.model.*;
@@ -23,30 +22,54 @@ public class EC2 {
     private AmazonEC2 ec2Client;
     private AmazonAutoScaling autoScalingClient;
     private PrintStream logger;
-    private long timeout;
+    private Deadline deadline;
+    private Region awsRegion;
 
     public EC2(String awsAccessKey, String awsSecretKey, Region awsRegion, PrintStream logger, long timeout) {
-        AWSCredentials credentials = new BasicAWSCredentials(awsAccessKey,
-                awsSecretKey);
-        ec2Client = new AmazonEC2Client(credentials);
-
-        ec2Client.setEndpoint(awsRegion.endPoint.replace("cloudformation", "ec2"));
+        this(StackCredentials.forKeys(awsAccessKey, awsSecretKey), awsRegion, logger, timeout);
+    }
 
-        autoScalingClient = new AmazonAutoScalingClient(credentials);
-        autoScalingClient.setEndpoint(awsRegion.endPoint.replace("cloudformation", "autoscaling"));
+    public EC2(AWSCredentialsProvider credentials, Region awsRegion, PrintStream logger, long timeout) {
+        this(ec2Client(credentials, awsRegion), autoScalingClient(credentials, awsRegion), awsRegion, logger, timeout);
+    }
 
+    /**
+     * Creates an instance talking to the given clients, e.g. local stand-ins of the AWS services.
+     */
+    public EC2(AmazonEC2 ec2Client, AmazonAutoScaling autoScalingClient, Region awsRegion, PrintStream logger, long timeout) {
+        this.awsRegion = awsRegion != null ? awsRegion : Region.getDefault();
+        this.ec2Client = MeteredClient.wrap(AmazonEC2.class, ec2Client, "ec2", this.awsRegion, null);
+        this.autoScalingClient = MeteredClient.wrap(AmazonAutoScaling.class, autoScalingClient, "autoscaling", this.awsRegion, null);
         this.logger = logger;
-        this.timeout = timeout;
+        this.deadline = new Deadline(timeout);
+    }
+
+    /**
+     * Makes the waits for instances to terminate and restart draw from the given budget, e.g. the one of the stack.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    private static AmazonEC2 ec2Client(AWSCredentialsProvider credentials, Region awsRegion) {
+        AmazonEC2 client = new AmazonEC2Client(credentials);
+        client.setEndpoint(awsRegion.endpointFor("ec2"));
+        return client;
+    }
+
+    private static AmazonAutoScaling autoScalingClient(AWSCredentialsProvider credentials, Region awsRegion) {
+        AmazonAutoScaling client = new AmazonAutoScalingClient(credentials);
+        client.setEndpoint(awsRegion.endpointFor("autoscaling"));
+        return client;
     }
 
-    public void terminateInstances(List<String> instanceIds, boolean waitForTermination) {
+    public void terminateInstances(List<String> instanceIds, boolean waitForTermination) throws InterruptedException {
         logger.println("Terminating instances " + instanceIds);
         ec2Client.terminateInstances(new TerminateInstancesRequest().withInstanceIds(instanceIds));
 
         if (waitForTermination) {
             logger.println("Waiting for EC2 instances to fully terminate");
             boolean terminated = false;
-            long startTime = System.currentTimeMillis();
             int count = 0;
 
             while (!terminated) {
@@ -56,17 +79,12 @@ public class EC2 {
                     logger.println("Still waiting for instances to terminate (instances: "+instanceIds+")");
                 }
 
-                if (isTimeout(startTime)) {
+                if (deadline.isExpired()) {
                     logger.println("Timed out waiting for EC2 instances to terminate");
                     throw new TimeoutException("Timed out waiting for EC2 instances to terminate");
                 }
 
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException ex) {
-                    logger.println("Received interrupted exception while waiting for EC2 instances to terminate, will no longer wait..");
-                    break;
-                }
+                Thread.sleep(5000);
 
                 terminated = true;
                 DescribeInstancesResult instanceInfo = ec2Client.describeInstances(new DescribeInstancesRequest().withInstanceIds(instanceIds));
@@ -81,7 +99,21 @@ public class EC2 {
         }
     }
 
-    public void stopInstancesInScalingGroup(String autoScalingGroupName, boolean waitForInstancesToRestart) throws TimeoutException {
+    public void stopInstancesInScalingGroup(String autoScalingGroupName, boolean waitForInstancesToRestart) throws TimeoutException, InterruptedException {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        deadline.start();
+        try {
+            doStopInstancesInScalingGroup(autoScalingGroupName, waitForInstancesToRestart);
+            success = true;
+        } finally {
+            deadline.stop();
+            CloudFormationMetrics.get().record("asg-recycle", awsRegion.name(), autoScalingGroupName,
+                    System.currentTimeMillis() - start, success, 0);
+        }
+    }
+
+    private void doStopInstancesInScalingGroup(String autoScalingGroupName, boolean waitForInstancesToRestart) throws TimeoutException, InterruptedException {
         DescribeAutoScalingGroupsResult groupInfo = autoScalingClient.describeAutoScalingGroups(new DescribeAutoScalingGroupsRequest().withAutoScalingGroupNames(autoScalingGroupName));
         boolean waitForInstancesToTerminate = waitForInstancesToRestart;
 
@@ -102,7 +134,6 @@ public class EC2 {
             //Wait for instances in auto-scaling group to restart, TODO make this configurable
             logger.println("Waiting for EC2 instances in auto-scaling group "+autoScalingGroupName+" to restart");
             boolean instancesRestarted = false;
-            long startTime = System.currentTimeMillis();
             int waitCount = 0;
 
             while (!instancesRestarted) {
@@ -112,7 +143,7 @@ public class EC2 {
                     logger.println("Still waiting for auto-scaling group "+autoScalingGroupName+" to become healthy..");
                 }
 
-                if (isTimeout(startTime)) {
+                if (deadline.isExpired()) {
                     logger.println("Timed out waiting for EC2 instances to restart");
                     throw new TimeoutException("Timed out waiting for EC2 instances to restart");
                 }
@@ -128,17 +159,8 @@ public class EC2 {
                 if (groupInfo.getAutoScalingGroups().get(0).getMinSize() <= count)
                     instancesRestarted = true;
 
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException ex) {
-                    logger.println("Received interrupted exception while waiting for EC2 instances to restart, will no longer wait..");
-                    break;
-                }
+                Thread.sleep(5000);
             }
         }
     }
-
-    private boolean isTimeout(long startTime) {
-        return timeout == 0 ? false : (System.currentTimeMillis() - startTime) > (timeout * 1000);
-    }
 }
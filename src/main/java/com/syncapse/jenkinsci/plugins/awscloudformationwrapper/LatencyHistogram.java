@@ -0,0 +1,85 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in milliseconds with fixed, roughly logarithmic buckets
+ * ranging from API round trips to half hour stack operations.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Upper bounds (inclusive) of the buckets, in milliseconds. Anything larger goes into an overflow bucket.
+	 */
+	static final long[] BUCKET_BOUNDS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000,
+			60000, 120000, 300000, 600000, 1800000 };
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long millis) {
+		if (millis < 0) millis = 0;
+		buckets.incrementAndGet(bucketOf(millis));
+		count.incrementAndGet();
+		sum.addAndGet(millis);
+		long current;
+		while (millis > (current = max.get())) {
+			if (max.compareAndSet(current, millis)) break;
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / n;
+	}
+
+	/**
+	 * @param quantile between 0 and 1.
+	 * @return the upper bound of the bucket holding the given quantile, capped at the largest recorded value.
+	 */
+	public long getPercentile(double quantile) {
+		long n = count.get();
+		if (n == 0) return 0;
+		long rank = (long) Math.ceil(quantile * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) return Math.min(BUCKET_BOUNDS[i], max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return the number of recorded values per bucket, the last element being the overflow bucket.
+	 */
+	public long[] getBuckets() {
+		long[] result = new long[buckets.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = buckets.get(i);
+		}
+		return result;
+	}
+
+	private static int bucketOf(long millis) {
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			if (millis <= BUCKET_BOUNDS[i]) return i;
+		}
+		return BUCKET_BOUNDS.length;
+	}
+
+}
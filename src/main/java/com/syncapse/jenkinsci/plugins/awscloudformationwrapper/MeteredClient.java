@@ -0,0 +1,58 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps an AWS client interface so every API call is timed into {@link CloudFormationMetrics}
+ * as operation <code>api:&lt;service&gt;:&lt;method&gt;</code>.
+ */
+public class MeteredClient implements InvocationHandler {
+
+	private final Object delegate;
+	private final String service;
+	private final String region;
+	private final String stack;
+
+	private MeteredClient(Object delegate, String service, String region, String stack) {
+		this.delegate = delegate;
+		this.service = service;
+		this.region = region;
+		this.stack = stack;
+	}
+
+	public static <T> T wrap(Class<T> type, T client, String service, Region region, String stack) {
+		if (client == null) return null;
+		String regionName = (region != null ? region : Region.getDefault()).name();
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				new MeteredClient(client, service, regionName, stack)));
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class || method.getName().startsWith("set")
+				|| method.getName().equals("shutdown") || method.getName().equals("getCachedResponseMetadata")) {
+			return invokeDelegate(method, args);
+		}
+		long start = System.currentTimeMillis();
+		boolean success = false;
+		try {
+			Object result = invokeDelegate(method, args);
+			success = true;
+			return result;
+		} finally {
+			CloudFormationMetrics.get().record("api:" + service + ":" + method.getName(), region, stack,
+					System.currentTimeMillis() - start, success, 0);
+		}
+	}
+
+	private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+}
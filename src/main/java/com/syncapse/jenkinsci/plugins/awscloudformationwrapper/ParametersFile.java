@@ -0,0 +1,115 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.FilePath;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Stack parameters kept in a file of the workspace, either in the CloudFormation parameters format
+ * (<code>[{"ParameterKey": "Key", "ParameterValue": "value"}]</code>) or as flat YAML (<code>Key: value</code>).
+ * The file is streamed once from the node it is on and parsed as it arrives. Variables in the values are left
+ * for the caller to expand.
+ */
+public final class ParametersFile {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private ParametersFile() {
+	}
+
+	/**
+	 * @return the parameters of the file, in the order of the file. Files ending in <code>.yaml</code> or
+	 * <code>.yml</code> are read as YAML, any other as JSON.
+	 */
+	public static Map<String, String> read(FilePath file) throws IOException, InterruptedException {
+		String name = file.getName().toLowerCase();
+		InputStream in = file.read();
+		try {
+			if (name.endsWith(".yaml") || name.endsWith(".yml")) {
+				return parseYaml(new InputStreamReader(in, "UTF-8"));
+			}
+			return parseJson(in);
+		} catch (IOException e) {
+			throw new IOException("Failed to read parameters file " + file.getName() + ": " + e.getMessage(), e);
+		} finally {
+			in.close();
+		}
+	}
+
+	static Map<String, String> parseJson(InputStream in) throws IOException {
+		JsonParser parser = JSON.createParser(in);
+		try {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("Expected an array of parameters at " + parser.getCurrentLocation());
+			}
+			Map<String, String> parameters = new LinkedHashMap<String, String>();
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				String key = null;
+				String value = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					JsonToken token = parser.nextToken();
+					if ("ParameterKey".equals(field)) {
+						key = parser.getText();
+					} else if ("ParameterValue".equals(field)) {
+						value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+					} else {
+						parser.skipChildren();
+					}
+				}
+				if (key == null) throw new IOException("Parameter without a ParameterKey at " + parser.getCurrentLocation());
+				parameters.put(key, value);
+			}
+			return parameters;
+		} finally {
+			parser.close();
+		}
+	}
+
+	static Map<String, String> parseYaml(Reader reader) throws IOException {
+		BufferedReader lines = new BufferedReader(reader);
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		int number = 0;
+		String line;
+		while ((line = lines.readLine()) != null) {
+			number++;
+			String trimmed = line.trim();
+			if (trimmed.length() == 0 || trimmed.startsWith("#") || trimmed.equals("---")) continue;
+			int colon = trimmed.indexOf(':');
+			if (colon <= 0 || Character.isWhitespace(line.charAt(0))) {
+				throw new IOException("Line " + number + " is not a flat key: value pair");
+			}
+			parameters.put(unquote(trimmed.substring(0, colon).trim()), yamlValue(trimmed.substring(colon + 1).trim()));
+		}
+		return parameters;
+	}
+
+	private static String yamlValue(String value) {
+		if (value.startsWith("\"") || value.startsWith("'")) {
+			int end = value.indexOf(value.charAt(0), 1);
+			return end > 0 ? value.substring(1, end) : value.substring(1);
+		}
+		int comment = value.indexOf(" #");
+		if (comment >= 0) value = value.substring(0, comment).trim();
+		return value.equals("~") || value.equals("null") ? null : value;
+	}
+
+	private static String unquote(String text) {
+		if (text.length() >= 2 && (text.charAt(0) == '"' || text.charAt(0) == '\'')
+				&& text.charAt(text.length() - 1) == text.charAt(0)) {
+			return text.substring(1, text.length() - 1);
+		}
+		return text;
+	}
+
+}
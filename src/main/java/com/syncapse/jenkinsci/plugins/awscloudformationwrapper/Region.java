@@ -1,25 +1,212 @@
 package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
-public enum Region {
-	US_East_Northern_Virginia("US East (Northern Virginia) Region", "cloudformation.us-east-1.amazonaws.com"),
-	US_WEST_Oregon("US West (Oregon) Region", "cloudformation.us-west-2.amazonaws.com"),
-	US_WEST_Northern_California("US West (Northern California) Region", "cloudformation.us-west-1.amazonaws.com"),
-	EU_Ireland("EU (Ireland) Region", "cloudformation.eu-west-1.amazonaws.com"),
-	Asia_Pacific_Singapore("Asia Pacific (Singapore) Region", "cloudformation.ap-southeast-1.amazonaws.com"),
-	Asia_Pacific_Sydney("Asia Pacific (Sydney) Region", "cloudformation.ap-southeast-2.amazonaws.com"),
-	Asia_Pacific_Tokyo("Asia Pacific (Tokyo) Region", "cloudformation.ap-northeast-1.amazonaws.com"),
-	South_America_Sao_Paulo("South America (Sao Paulo) Region", "cloudformation.sa-east-1.amazonaws.com");
-	
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An AWS region and the endpoints of the services used in it. The built-in regions are read from
+ * <code>regions.properties</code>; more can be configured globally, see {@link CustomRegion}, e.g. to
+ * use FIPS endpoints or a local simulator.
+ * <p>
+ * Regions are referred to by name, which for the built-in ones are the names of the constants of the
+ * enum this class replaced, so existing configurations keep working.
+ * 
+ * @author erickdovale
+ */
+public final class Region {
+
+	private static final String DEFAULT_DOMAIN = "amazonaws.com";
+
+	private static final Map<String, Region> BUILT_IN = loadCatalogue();
+
+	private static volatile List<Region> custom = Collections.emptyList();
+
+	public static final Region US_East_Northern_Virginia = builtIn("US_East_Northern_Virginia");
+	public static final Region US_WEST_Oregon = builtIn("US_WEST_Oregon");
+	public static final Region US_WEST_Northern_California = builtIn("US_WEST_Northern_California");
+	public static final Region EU_Ireland = builtIn("EU_Ireland");
+	public static final Region Asia_Pacific_Singapore = builtIn("Asia_Pacific_Singapore");
+	public static final Region Asia_Pacific_Sydney = builtIn("Asia_Pacific_Sydney");
+	public static final Region Asia_Pacific_Tokyo = builtIn("Asia_Pacific_Tokyo");
+	public static final Region South_America_Sao_Paulo = builtIn("South_America_Sao_Paulo");
+
+	private final String name;
+	private final String id;
+	private final String domain;
+	private final Map<String, String> endpointOverrides;
+	private final ConcurrentMap<String, String> endpoints = new ConcurrentHashMap<String, String>();
+
 	public final String readableName;
+
+	/**
+	 * The CloudFormation endpoint of the region.
+	 */
 	public final String endPoint;
-	
-	private Region(String readdableName, String endPoint){
-		this.readableName = readdableName;
-		this.endPoint = endPoint;
+
+	/**
+	 * @param endpointOverrides endpoints by service name, for the services that do not follow
+	 * <code>service.id.domain</code>. May include the protocol, e.g. <code>http://localhost:4581</code>.
+	 */
+	Region(String name, String id, String readableName, String domain, Map<String, String> endpointOverrides) {
+		this.name = name;
+		this.id = id;
+		this.readableName = readableName;
+		this.domain = domain != null && domain.length() > 0 ? domain : DEFAULT_DOMAIN;
+		this.endpointOverrides = new LinkedHashMap<String, String>(endpointOverrides);
+		this.endPoint = endpointFor("cloudformation");
+	}
+
+	/**
+	 * @return the name job configurations refer to the region by.
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * @return the AWS region id, e.g. <code>us-east-1</code>.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the endpoint of the given service, e.g. <code>ec2</code> or <code>autoscaling</code>, in this region.
+	 */
+	public String endpointFor(String service) {
+		String endpoint = endpoints.get(service);
+		if (endpoint == null) {
+			endpoint = endpointOverrides.get(service);
+			if (endpoint == null) endpoint = service + "." + id + "." + domain;
+			endpoints.putIfAbsent(service, endpoint);
+		}
+		return endpoint;
 	}
 
 	public static Region getDefault() {
 		return US_East_Northern_Virginia;
 	}
-	
+
+	/**
+	 * @return the built-in regions followed by the configured ones. A configured region replaces the built-in one
+	 *         of the same name, in its place.
+	 */
+	public static Region[] values() {
+		Map<String, Region> all = new LinkedHashMap<String, Region>(BUILT_IN);
+		for (Region region : custom) {
+			all.put(region.name, region);
+		}
+		return all.values().toArray(new Region[all.size()]);
+	}
+
+	/**
+	 * Looks a region up by name or by AWS region id. Configured regions take precedence over built-in ones.
+	 * @throws IllegalArgumentException if there is no such region.
+	 */
+	public static Region valueOf(String nameOrId) {
+		Region region = find(nameOrId);
+		if (region == null) throw new IllegalArgumentException(unknown(nameOrId));
+		return region;
+	}
+
+	/**
+	 * @return the region with the given name or id, or null if the name is empty.
+	 * @throws IllegalArgumentException if there is no such region, e.g. a configured region since removed.
+	 */
+	public static Region fromName(String nameOrId) {
+		return nameOrId == null || nameOrId.trim().length() == 0 ? null : valueOf(nameOrId);
+	}
+
+	/**
+	 * @return whether the name or id is that of a region, or empty for the default one.
+	 */
+	public static boolean isKnown(String nameOrId) {
+		return nameOrId == null || nameOrId.trim().length() == 0 || find(nameOrId) != null;
+	}
+
+	/**
+	 * @return the problem reported for a name or id that is not that of a region.
+	 */
+	public static String unknown(String nameOrId) {
+		return "Unknown AWS region " + nameOrId + ". If it was configured globally, it has since been removed.";
+	}
+
+	private static Region find(String nameOrId) {
+		String key = nameOrId.trim();
+		for (Region region : custom) {
+			if (region.name.equals(key)) return region;
+		}
+		Region region = BUILT_IN.get(key);
+		if (region != null) return region;
+		for (Region candidate : values()) {
+			if (candidate.id.equals(key)) return candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the configured regions.
+	 */
+	static void setCustomRegions(List<Region> regions) {
+		custom = Collections.unmodifiableList(new ArrayList<Region>(regions));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Region && ((Region) o).name.equals(name);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private static Region builtIn(String name) {
+		Region region = BUILT_IN.get(name);
+		if (region == null) throw new IllegalStateException("Region " + name + " missing from the region catalogue");
+		return region;
+	}
+
+	private static Map<String, Region> loadCatalogue() {
+		Map<String, Region> regions = new LinkedHashMap<String, Region>();
+		InputStream in = Region.class.getResourceAsStream("regions.properties");
+		if (in == null) throw new IllegalStateException("regions.properties not found");
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				int equals = line.indexOf('=');
+				String name = line.substring(0, equals).trim();
+				String[] fields = line.substring(equals + 1).split("\\|");
+				regions.put(name, new Region(name, fields[0].trim(), fields[1].trim(),
+						fields.length > 2 ? fields[2].trim() : null, Collections.<String, String>emptyMap()));
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read regions.properties", e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		return regions;
+	}
+
 }
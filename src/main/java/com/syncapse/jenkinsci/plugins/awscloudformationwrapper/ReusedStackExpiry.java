@@ -0,0 +1,66 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.util.HashMap;
+import java.util.List;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Deletes the stacks kept for reuse that no build has used for longer than their time to live.
+ */
+@Extension
+public class ReusedStackExpiry extends AsyncPeriodicWork {
+
+	public ReusedStackExpiry() {
+		super("CloudFormation reused stack expiry");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return 5 * MIN;
+	}
+
+	@Override
+	protected void execute(TaskListener listener) throws InterruptedException {
+		ReusedStackRegistry registry = ReusedStackRegistry.get();
+		List<ReusedStackRegistry.Entry> expired = registry.takeExpired(System.currentTimeMillis());
+		for (int i = 0; i < expired.size(); i++) {
+			ReusedStackRegistry.Entry entry = expired.get(i);
+			listener.getLogger().println("Deleting stack " + entry.getStackName() + ", idle for more than "
+					+ entry.getTtlMinutes() + " minutes.");
+			AWSCredentialsProvider credentials;
+			Region region;
+			try {
+				credentials = entry.getCredentials();
+				region = entry.getRegion();
+			} catch (IllegalStateException e) {
+				listener.getLogger().println("Kept stack " + entry.getStackName() + ": " + e.getMessage());
+				registry.restore(entry);
+				continue;
+			} catch (IllegalArgumentException e) {
+				listener.getLogger().println("Kept stack " + entry.getStackName() + ": " + e.getMessage());
+				registry.restore(entry);
+				continue;
+			}
+			CloudFormation cloudFormation = new CloudFormation(listener.getLogger(), entry.getStackName(), null,
+					new HashMap<String, String>(), 0, credentials, region, true, new EnvVars(), false, false);
+			try {
+				if (!cloudFormation.delete()) {
+					registry.restore(entry);
+				}
+			} catch (InterruptedException e) {
+				// The deletion goes on in AWS, the stacks not reached yet expire again next time.
+				for (ReusedStackRegistry.Entry pending : expired.subList(i + 1, expired.size())) {
+					registry.restore(pending);
+				}
+				throw e;
+			}
+		}
+	}
+
+}
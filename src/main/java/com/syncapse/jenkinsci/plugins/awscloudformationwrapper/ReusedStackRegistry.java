@@ -0,0 +1,193 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.XmlFile;
+import hudson.model.Hudson;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Remembers the stacks kept alive for reuse across builds and when they were last used, so that
+ * {@link ReusedStackExpiry} can delete the ones left idle for longer than their time to live.
+ * Persisted to <code>cloudformation-reused-stacks.xml</code> in the Jenkins home.
+ */
+public class ReusedStackRegistry {
+
+	private static final Logger LOGGER = Logger.getLogger(ReusedStackRegistry.class.getName());
+
+	/**
+	 * Idle time used when a stack bean does not set one, in minutes.
+	 */
+	public static final long DEFAULT_TTL = 60;
+
+	private static ReusedStackRegistry instance;
+
+	private List<Entry> entries = new ArrayList<Entry>();
+
+	private transient XmlFile file;
+
+	public static synchronized ReusedStackRegistry get() {
+		if (instance == null) {
+			instance = load(new XmlFile(Hudson.XSTREAM,
+					new File(Hudson.getInstance().getRootDir(), "cloudformation-reused-stacks.xml")));
+		}
+		return instance;
+	}
+
+	static ReusedStackRegistry load(XmlFile file) {
+		ReusedStackRegistry registry = null;
+		if (file.exists()) {
+			try {
+				registry = (ReusedStackRegistry) file.read();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+			}
+		}
+		if (registry == null) registry = new ReusedStackRegistry();
+		if (registry.entries == null) registry.entries = new ArrayList<Entry>();
+		registry.file = file;
+		return registry;
+	}
+
+	/**
+	 * Marks the stack as in use by a build, registering it if it is new.
+	 * @return the number of builds using the stack, this one included.
+	 */
+	public synchronized int acquire(String stackName, Region region, String awsAccessKey,
+			String awsSecretKey, boolean useInstanceProfile, String roleArn, long ttlMinutes) {
+		Entry entry = find(stackName, region);
+		if (entry == null) {
+			entry = new Entry(stackName, region, awsAccessKey, awsSecretKey, useInstanceProfile, roleArn);
+			entries.add(entry);
+		}
+		entry.ttlMinutes = ttlMinutes > 0 ? ttlMinutes : DEFAULT_TTL;
+		entry.inUse++;
+		entry.lastUsed = System.currentTimeMillis();
+		save();
+		return entry.inUse;
+	}
+
+	/**
+	 * Marks the stack as no longer in use by a build. Its idle time starts now.
+	 */
+	public synchronized void release(String stackName, Region region) {
+		Entry entry = find(stackName, region);
+		if (entry == null) return;
+		if (entry.inUse > 0) entry.inUse--;
+		entry.lastUsed = System.currentTimeMillis();
+		save();
+	}
+
+	/**
+	 * Removes and returns the stacks that no build is using and that have been idle for longer than their time to live.
+	 */
+	public synchronized List<Entry> takeExpired(long now) {
+		List<Entry> expired = new ArrayList<Entry>();
+		for (Entry entry : entries) {
+			if (entry.inUse == 0 && now - entry.lastUsed > entry.ttlMinutes * 60 * 1000) {
+				expired.add(entry);
+			}
+		}
+		if (!expired.isEmpty()) {
+			entries.removeAll(expired);
+			save();
+		}
+		return expired;
+	}
+
+	/**
+	 * Puts back an entry whose stack could not be deleted, so that it is tried again later.
+	 */
+	public synchronized void restore(Entry entry) {
+		if (find(entry.stackName, entry.region) == null) {
+			entries.add(entry);
+			save();
+		}
+	}
+
+	public synchronized List<Entry> getEntries() {
+		return new ArrayList<Entry>(entries);
+	}
+
+	private Entry find(String stackName, Region region) {
+		for (Entry entry : entries) {
+			if (entry.stackName.equals(stackName) && entry.region.equals(region.name())) return entry;
+		}
+		return null;
+	}
+
+	private void save() {
+		if (file == null) return;
+		try {
+			file.write(this);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to save " + file, e);
+		}
+	}
+
+	public static class Entry {
+
+		private final String stackName;
+		private final String region;
+		private final String awsAccessKey;
+		private final Secret awsSecretKey;
+		private final boolean useInstanceProfile;
+		private final String roleArn;
+		private long lastUsed;
+		private long ttlMinutes = DEFAULT_TTL;
+
+		/**
+		 * Number of builds using the stack. Not persisted, builds do not survive a restart.
+		 */
+		private transient int inUse;
+
+		Entry(String stackName, Region region, String awsAccessKey, String awsSecretKey,
+				boolean useInstanceProfile, String roleArn) {
+			this.stackName = stackName;
+			this.region = region.name();
+			this.awsAccessKey = awsAccessKey;
+			this.awsSecretKey = Secret.fromString(awsSecretKey);
+			this.useInstanceProfile = useInstanceProfile;
+			this.roleArn = roleArn;
+		}
+
+		public String getStackName() {
+			return stackName;
+		}
+
+		public Region getRegion() {
+			return Region.valueOf(region);
+		}
+
+		public String getAwsAccessKey() {
+			return awsAccessKey;
+		}
+
+		public String getAwsSecretKey() {
+			return Secret.toString(awsSecretKey);
+		}
+
+		/**
+		 * @return the credentials the stack was created with.
+		 */
+		public AWSCredentialsProvider getCredentials() {
+			return StackCredentials.of(awsAccessKey, getAwsSecretKey(), useInstanceProfile, roleArn, getRegion());
+		}
+
+		public long getLastUsed() {
+			return lastUsed;
+		}
+
+		public long getTtlMinutes() {
+			return ttlMinutes;
+		}
+	}
+
+}
@@ -23,7 +23,7 @@ import org.kohsuke.stapler.QueryParameter;
 public class SimpleStackBean extends AbstractDescribableImpl<SimpleStackBean> {
 
 	/**
-	 * The name of the stack.
+	 * The name of the stack, or several stacks as understood by {@link StackSelector}.
 	 */
 	private String stackName;
 
@@ -40,15 +40,15 @@ public class SimpleStackBean extends AbstractDescribableImpl<SimpleStackBean> {
 	/**
 	 * The AWS Region to work against.
 	 */
-	private Region awsRegion;
+	private String awsRegion;
 
 	@DataBoundConstructor
 	public SimpleStackBean(String stackName, String awsAccessKey,
-			String awsSecretKey, Region awsRegion) {
+			String awsSecretKey, String awsRegion) {
 		this.stackName = stackName;
 		this.awsAccessKey = awsAccessKey;
 		this.awsSecretKey = awsSecretKey;
-		this.awsRegion = awsRegion != null ? awsRegion : Region.getDefault();
+		this.awsRegion = awsRegion != null && awsRegion.length() > 0 ? awsRegion : Region.getDefault().name();
 	}
 
 	public String getStackName() {
@@ -72,7 +72,7 @@ public class SimpleStackBean extends AbstractDescribableImpl<SimpleStackBean> {
 	}
 
 	public Region getAwsRegion() {
-		return awsRegion;
+		return Region.fromName(awsRegion);
 	}
 
 	@Extension
@@ -90,6 +90,11 @@ public class SimpleStackBean extends AbstractDescribableImpl<SimpleStackBean> {
 			if (0 == value.length()) {
 				return FormValidation.error("Empty stack name");
 			}
+			try {
+				new StackSelector(value);
+			} catch (IllegalArgumentException e) {
+				return FormValidation.error(e.getMessage());
+			}
 			return FormValidation.ok();
 		}
 
@@ -111,6 +116,10 @@ public class SimpleStackBean extends AbstractDescribableImpl<SimpleStackBean> {
 			return FormValidation.ok();
 		}
 
+		public FormValidation doCheckAwsRegion(@QueryParameter String value) {
+			return Region.isKnown(value) ? FormValidation.ok() : FormValidation.error(Region.unknown(value));
+		}
+
 		public ListBoxModel doFillAwsRegionItems() {
 			ListBoxModel items = new ListBoxModel();
 			for (Region region : Region.values()) {
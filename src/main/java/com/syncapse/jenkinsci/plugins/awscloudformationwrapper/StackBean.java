@@ -2,6 +2,7 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
@@ -9,13 +10,20 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
+import com.amazonaws.auth.AWSCredentialsProvider;
+
 /**
  * 
  * 
@@ -64,12 +72,82 @@ public class StackBean extends AbstractDescribableImpl<StackBean> {
      */
     private boolean autoDeleteStack = true;
     
-    private Region awsRegion;
+    /**
+     * Name of the {@link Region}. Older configurations hold the name of the former enum constant, which is the same.
+     */
+    private String awsRegion;
+
+    /**
+     * Name of the warm stack pool to lease the stack from, if any.
+     */
+    private String poolName;
+
+    /**
+     * Whether to reuse an existing stack created from the same template and parameters instead of creating one.
+     */
+    private boolean reuseStack;
+
+    /**
+     * Minutes a reused stack may stay idle before it is deleted.
+     */
+    private long reuseTtl;
+
+    /**
+     * Regions to create the stack in concurrently instead of {@link #awsRegion}, one per line, optionally with the role
+     * to assume there: <code>REGION</code> or <code>REGION=roleArn</code>. Empty to use {@link #awsRegion} only.
+     */
+    private String targetRegions;
+
+    /**
+     * How many target regions may fail without failing the build.
+     */
+    private int failureTolerance;
+
+    /**
+     * Whether to call AWS with the instance profile of the Jenkins controller instead of the keys.
+     */
+    private boolean useInstanceProfile;
+
+    /**
+     * Role to assume with the keys or the instance profile, if any.
+     */
+    private String roleArn;
+
+    /**
+     * Whether a stack that fails to be created is left as it is, for debugging, instead of being rolled back and deleted.
+     */
+    private boolean disableRollback;
+
+    /**
+     * Workspace file holding more parameters, in the CloudFormation JSON format or as flat YAML. The inline
+     * {@link #parameters} override the ones of the file.
+     */
+    private String parametersFile;
+
+    /**
+     * Whether the whitespace of a JSON template is stripped before it is sent.
+     */
+    private boolean compactTemplate;
+
+    /**
+     * Workspace files of JSON template fragments merged into the template, one per line, after the recipe if it is set.
+     */
+    private String templateFragments;
 	
-	@DataBoundConstructor
 	public StackBean(String stackName, String description,
 			String cloudFormationRecipe, String parameters, long timeout,
 			String awsAccessKey, String awsSecretKey, boolean autoDeleteStack, Region awsRegion) {
+		this(stackName, description, cloudFormationRecipe, parameters, timeout, awsAccessKey,
+				awsSecretKey, autoDeleteStack, awsRegion != null ? awsRegion.name() : null, null, false, 0, null, 0, false, null, false, null, false, null);
+	}
+
+	@DataBoundConstructor
+	public StackBean(String stackName, String description,
+			String cloudFormationRecipe, String parameters, long timeout,
+			String awsAccessKey, String awsSecretKey, boolean autoDeleteStack, String awsRegion,
+			String poolName, boolean reuseStack, long reuseTtl, String targetRegions, int failureTolerance,
+			boolean useInstanceProfile, String roleArn, boolean disableRollback, String parametersFile,
+			boolean compactTemplate, String templateFragments) {
 		super();
 		this.stackName = stackName;
 		this.description = description;
@@ -80,6 +158,17 @@ public class StackBean extends AbstractDescribableImpl<StackBean> {
 		this.awsSecretKey = awsSecretKey;
         this.autoDeleteStack = autoDeleteStack;
         this.awsRegion = awsRegion;
+        this.poolName = poolName;
+        this.reuseStack = reuseStack;
+        this.reuseTtl = reuseTtl;
+        this.targetRegions = targetRegions;
+        this.failureTolerance = failureTolerance;
+        this.useInstanceProfile = useInstanceProfile;
+        this.roleArn = roleArn;
+        this.disableRollback = disableRollback;
+        this.parametersFile = parametersFile;
+        this.compactTemplate = compactTemplate;
+        this.templateFragments = templateFragments;
 	}
 
 	public String getStackName() {
@@ -115,10 +204,208 @@ public class StackBean extends AbstractDescribableImpl<StackBean> {
     }
     
     public Region getAwsRegion(){
-    	return awsRegion;
+    	return Region.fromName(awsRegion);
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public boolean getReuseStack() {
+        return reuseStack;
+    }
+
+    public long getReuseTtl() {
+        return reuseTtl;
+    }
+
+    public String getTargetRegions() {
+        return targetRegions;
+    }
+
+    public int getFailureTolerance() {
+        return failureTolerance;
+    }
+
+    public boolean getUseInstanceProfile() {
+        return useInstanceProfile;
+    }
+
+    public String getRoleArn() {
+        return roleArn;
+    }
+
+    public boolean getDisableRollback() {
+        return disableRollback;
+    }
+
+    public boolean getCompactTemplate() {
+        return compactTemplate;
+    }
+
+    public String getTemplateFragments() {
+        return templateFragments;
+    }
+
+    /**
+     * @return the workspace paths of the template fragments, with the recipe first if it is set, or an empty list if
+     * the bean has no fragments.
+     */
+    public List<String> getParsedTemplateFragments(EnvVars env) {
+        List<String> fragments = new ArrayList<String>();
+        if (templateFragments == null || templateFragments.trim().length() == 0) return fragments;
+
+        if (cloudFormationRecipe != null && cloudFormationRecipe.trim().length() > 0) {
+            fragments.add(env.expand(cloudFormationRecipe.trim()));
+        }
+        for (String line : env.expand(templateFragments).split("[\\r\\n]+")) {
+            line = line.trim();
+            if (line.length() > 0) fragments.add(line);
+        }
+        return fragments;
+    }
+
+	/**
+	 * @return the template of the stack as it is sent: the recipe, or the merge of the template fragments, compacted if
+	 * the bean asks for it.
+	 */
+	public StackTemplate readTemplate(FilePath workspace, EnvVars env, PrintStream logger)
+			throws IOException, InterruptedException {
+		List<String> fragments = getParsedTemplateFragments(env);
+		if (!fragments.isEmpty()) {
+			// merged templates are compact already
+			return mergeFragments(workspace, fragments, logger);
+		}
+		String template = workspace.child(cloudFormationRecipe).readToString();
+		return new StackTemplate(compactTemplate ? TemplateCompactor.compact(template, env.expand(stackName), logger) : template);
+	}
+
+	private static StackTemplate mergeFragments(FilePath workspace, List<String> fragments, PrintStream logger)
+			throws IOException, InterruptedException {
+		List<FilePath> files = new ArrayList<FilePath>();
+		for (String fragment : fragments) {
+			files.add(workspace.child(fragment));
+		}
+		return TemplateFragments.merge(files, logger);
+	}
+
+    public String getParsedRoleArn(EnvVars env) {
+        return roleArn != null ? env.expand(roleArn) : null;
+    }
+
+    /**
+     * @return the credentials to create the stack with in the given region.
+     */
+    public AWSCredentialsProvider getCredentials(EnvVars env, Region region) {
+        return getCredentials(env, getParsedAwsAccessKey(env), getParsedAwsSecretKey(env), region);
+    }
+
+    /**
+     * @return the credentials to create the stack with in the target region, assuming its role if it has one.
+     */
+    public AWSCredentialsProvider getCredentials(EnvVars env, Target target) {
+        return StackCredentials.of(getParsedAwsAccessKey(env), getParsedAwsSecretKey(env), useInstanceProfile,
+                target.getRoleArn(), target.getRegion());
+    }
+
+    /**
+     * @return the regions to create the stack in, with the role to assume in each. Empty if the stack is
+     * created in {@link #getAwsRegion()} only.
+     */
+    public List<Target> getParsedTargetRegions(EnvVars env) {
+        List<Target> targets = new ArrayList<Target>();
+        if (targetRegions == null) return targets;
+
+        for (String line : env.expand(targetRegions).split("[\\r\\n]+")) {
+            line = line.trim();
+            if (line.length() == 0) continue;
+            targets.add(parseTarget(line, getParsedRoleArn(env)));
+        }
+        return targets;
+    }
+
+    /**
+     * @param defaultRoleArn the role to assume in a region that names none.
+     */
+    static Target parseTarget(String line, String defaultRoleArn) {
+        int equals = line.indexOf('=');
+        if (equals < 0) return new Target(Region.valueOf(line), defaultRoleArn);
+
+        String roleArn = line.substring(equals + 1).trim();
+        if (roleArn.length() == 0) throw new IllegalArgumentException("Expected a role ARN after the region in " + line);
+        return new Target(Region.valueOf(line.substring(0, equals).trim()), roleArn);
+    }
+
+    /**
+     * A region the stack is created in, and the role to assume there with the credentials of the bean.
+     */
+    public static class Target {
+
+        private final Region region;
+        private final String roleArn;
+
+        Target(Region region, String roleArn) {
+            this.region = region;
+            this.roleArn = roleArn;
+        }
+
+        public Region getRegion() {
+            return region;
+        }
+
+        /**
+         * @return the role to assume, or null to use the credentials of the bean directly.
+         */
+        public String getRoleArn() {
+            return roleArn;
+        }
     }
 
 	public Map<String, String> getParsedParameters(EnvVars env) {
+		return parseParameters(parameters, env);
+	}
+
+	/**
+	 * @param fileParameters the parameters read from {@link #getParametersFile()}, or null.
+	 * @return the parameters of the file overridden by the inline ones, with variables expanded.
+	 */
+	public Map<String, String> getParsedParameters(EnvVars env, Map<String, String> fileParameters) {
+		Map<String, String> result = new HashMap<String, String>();
+		if (fileParameters != null) {
+			for (Map.Entry<String, String> parameter : fileParameters.entrySet()) {
+				result.put(parameter.getKey(), parameter.getValue() != null ? env.expand(parameter.getValue()) : null);
+			}
+		}
+		result.putAll(getParsedParameters(env));
+		return result;
+	}
+
+	/**
+	 * @param fileParameters the parameters read from {@link #getParametersFile()}, or null.
+	 * @return the names of the parameters the stack is created with, known before any variable is expanded.
+	 */
+	public Set<String> getParameterNames(Map<String, String> fileParameters) {
+		Set<String> names = new HashSet<String>();
+		if (fileParameters != null) names.addAll(fileParameters.keySet());
+		names.addAll(parseParameters(parameters, new EnvVars()).keySet());
+		return names;
+	}
+
+	public String getParametersFile() {
+		return parametersFile;
+	}
+
+	/**
+	 * @return the path of the parameters file in the workspace, or null if there is none.
+	 */
+	public String getParsedParametersFile(EnvVars env) {
+		return parametersFile != null && parametersFile.trim().length() > 0 ? env.expand(parametersFile.trim()) : null;
+	}
+
+	/**
+	 * Parses a comma or semicolon delimited list of <code>key=value</code> pairs, expanding variables in the values.
+	 */
+	static Map<String, String> parseParameters(String parameters, EnvVars env) {
 		
 		if (parameters == null || parameters.isEmpty())
 			return new HashMap<String, String>();
@@ -183,18 +470,25 @@ public class StackBean extends AbstractDescribableImpl<StackBean> {
 
 		public FormValidation doCheckCloudFormationRecipe(
 				@AncestorInPath AbstractProject<?, ?> project,
-				@QueryParameter String value) throws IOException {
-			if (0 == value.length()) {
+				@QueryParameter String value, @QueryParameter String templateFragments) throws IOException {
+			if (0 == value.length() && (templateFragments == null || templateFragments.trim().length() == 0)) {
 				return FormValidation.error("Empty recipe file.");
 			}
 			return FormValidation.ok();
 		}
 
+		public FormValidation doCheckUseInstanceProfile(@QueryParameter boolean value) {
+			if (value && !StackCredentials.isInstanceProfileAllowed()) {
+				return FormValidation.error(StackCredentials.INSTANCE_PROFILE_NOT_ALLOWED);
+			}
+			return FormValidation.ok();
+		}
+
 		public FormValidation doCheckAwsAccessKey(
 				@AncestorInPath AbstractProject<?, ?> project,
 				@QueryParameter String value) throws IOException {
 			if (0 == value.length()) {
-				return FormValidation.error("Empty aws access key");
+				return FormValidation.warning("Empty aws access key. Only valid when using the instance profile.");
 			}
 			return FormValidation.ok();
 		}
@@ -203,19 +497,69 @@ public class StackBean extends AbstractDescribableImpl<StackBean> {
 				@AncestorInPath AbstractProject<?, ?> project,
 				@QueryParameter String value) throws IOException {
 			if (0 == value.length()) {
-				return FormValidation.error("Empty aws secret key");
+				return FormValidation.warning("Empty aws secret key. Only valid when using the instance profile.");
 			}
 			return FormValidation.ok();
 		}
 		
+		public FormValidation doCheckReuseTtl(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			if (value.length() > 0) {
+				try {
+					Long.parseLong(value);
+				} catch (NumberFormatException e) {
+					return FormValidation.error("Idle time "+ value + " is not a number.");
+				}
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckTargetRegions(
+				@AncestorInPath AbstractProject<?, ?> project,
+				@QueryParameter String value) throws IOException {
+			for (String line : value.split("[\\r\\n]+")) {
+				if (line.trim().length() == 0 || line.contains("$")) continue;
+				try {
+					parseTarget(line.trim(), null);
+				} catch (IllegalArgumentException e) {
+					return FormValidation.error("Invalid target region " + line.trim() + ": " + e.getMessage());
+				}
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckAwsRegion(@QueryParameter String value, @QueryParameter String targetRegions) {
+			if (!Region.isKnown(value)) return FormValidation.error(Region.unknown(value));
+			boolean hasRegion = value != null && value.trim().length() > 0;
+			boolean hasTargets = targetRegions != null && targetRegions.trim().length() > 0;
+			if (hasRegion && hasTargets) {
+				return FormValidation.error("The stack is created in its target regions; select none here.");
+			}
+			if (!hasRegion && !hasTargets) {
+				return FormValidation.error("Select a region, or enter target regions below.");
+			}
+			return FormValidation.ok();
+		}
+
 		public ListBoxModel doFillAwsRegionItems() {
             ListBoxModel items = new ListBoxModel();
             for (Region region : Region.values()) {
 				items.add(region.readableName, region.name());
 			}
+			items.add("None - create in the target regions", "");
             return items;
         }
 
+		public ListBoxModel doFillPoolNameItems() {
+			ListBoxModel items = new ListBoxModel();
+			items.add("None - create a new stack", "");
+			for (StackPool pool : StackPool.all()) {
+				items.add(pool.getName(), pool.getName());
+			}
+			return items;
+		}
+
 	}
 
 
@@ -0,0 +1,86 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.InstanceProfileCredentialsProvider;
+
+/**
+ * Builds the credentials the AWS clients are created with: static keys, the instance profile of the
+ * Jenkins controller, and optionally a role assumed with either of them.
+ */
+public class StackCredentials {
+
+	/**
+	 * Shared by all stacks, it caches the instance profile credentials until they are about to expire.
+	 */
+	private static final AWSCredentialsProvider INSTANCE_PROFILE = new InstanceProfileCredentialsProvider();
+
+	static final String INSTANCE_PROFILE_NOT_ALLOWED = "Using the instance profile of the Jenkins controller has "
+			+ "not been allowed by an administrator, see the AWS CloudFormation section of the global configuration.";
+
+	/**
+	 * Whether jobs may act as the IAM role of the controller, which an administrator has to allow.
+	 */
+	private static volatile boolean instanceProfileAllowed;
+
+	private StackCredentials() {
+	}
+
+	static void setInstanceProfileAllowed(boolean allowed) {
+		instanceProfileAllowed = allowed;
+	}
+
+	public static boolean isInstanceProfileAllowed() {
+		return instanceProfileAllowed;
+	}
+
+	public static AWSCredentialsProvider forKeys(String awsAccessKey, String awsSecretKey) {
+		final AWSCredentials credentials = new BasicAWSCredentials(awsAccessKey, awsSecretKey);
+		return new AWSCredentialsProvider() {
+			public AWSCredentials getCredentials() {
+				return credentials;
+			}
+
+			public void refresh() {
+			}
+		};
+	}
+
+	public static AWSCredentialsProvider instanceProfile() {
+		return INSTANCE_PROFILE;
+	}
+
+	/**
+	 * @param roleArn the role to assume with the base credentials, or empty to use them directly.
+	 * @throws IllegalStateException if the instance profile is asked for but not allowed.
+	 */
+	public static AWSCredentialsProvider of(String awsAccessKey, String awsSecretKey, boolean useInstanceProfile,
+			String roleArn, Region region) {
+		if (useInstanceProfile && !instanceProfileAllowed) {
+			throw new IllegalStateException(INSTANCE_PROFILE_NOT_ALLOWED);
+		}
+		AWSCredentialsProvider base = useInstanceProfile ? instanceProfile() : forKeys(awsAccessKey, awsSecretKey);
+		if (roleArn == null || roleArn.trim().length() == 0) return base;
+		return new AssumedRoleCredentialsProvider(base, roleArn.trim(), region);
+	}
+
+	/**
+	 * @return a digest of the credentials, secret included, to key what is cached for them. Unlike the access key id,
+	 * which is no secret, it can only be matched by whoever holds the credentials.
+	 */
+	public static String identity(AWSCredentialsProvider provider) {
+		if (provider instanceof AssumedRoleCredentialsProvider) return ((AssumedRoleCredentialsProvider) provider).identity();
+		// its rotating session token would change the digest every few hours
+		if (provider == INSTANCE_PROFILE) return "instance-profile";
+		AWSCredentials credentials = provider.getCredentials();
+		StringBuilder identity = new StringBuilder(credentials.getAWSAccessKeyId()).append('\n')
+				.append(credentials.getAWSSecretKey());
+		if (credentials instanceof AWSSessionCredentials) {
+			identity.append('\n').append(((AWSSessionCredentials) credentials).getSessionToken());
+		}
+		return StackFingerprint.digest(identity.toString());
+	}
+
+}
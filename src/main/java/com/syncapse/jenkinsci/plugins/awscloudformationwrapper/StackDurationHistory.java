@@ -0,0 +1,209 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Time series of how long stack operations took in each build of a job, kept as a small CSV file
+ * in the job directory. Records are keyed by the configured (unexpanded) stack name, so stacks
+ * named after the build number still line up across builds.
+ */
+public class StackDurationHistory {
+
+	static final String FILE_NAME = "cloudformation-durations.csv";
+
+	/**
+	 * Older records are dropped once the file grows past this many lines.
+	 */
+	static final int MAX_RECORDS = 2000;
+
+	/**
+	 * One lock per file, shared by all the histories of a job: concurrent builds each get their own instance.
+	 */
+	private static final ConcurrentMap<File, Object> LOCKS = new ConcurrentHashMap<File, Object>();
+
+	private final File file;
+	private final Object lock;
+
+	StackDurationHistory(File file) {
+		this.file = file;
+		File key = file.getAbsoluteFile();
+		LOCKS.putIfAbsent(key, new Object());
+		this.lock = LOCKS.get(key);
+	}
+
+	/**
+	 * @return the history of the given job, or null if it has no directory to keep it in.
+	 */
+	public static StackDurationHistory of(AbstractProject<?, ?> project) {
+		if (project == null || project.getRootDir() == null) return null;
+		return new StackDurationHistory(new File(project.getRootDir(), FILE_NAME));
+	}
+
+	/**
+	 * Number of previous builds the rolling median is computed over.
+	 */
+	static final int MEDIAN_WINDOW = 10;
+
+	/**
+	 * Records how long a stack operation of the given build took and compares it with recent builds.
+	 * 
+	 * @param slowdownThreshold percentage above the rolling median considered a regression, 0 to skip the check.
+	 * @return true if the operation was slower than the rolling median by more than the threshold.
+	 */
+	public static boolean recordAndCheck(AbstractBuild<?, ?> build, String stackName, String operation, long millis,
+			int slowdownThreshold, PrintStream logger) {
+		StackDurationHistory history = of(build.getProject());
+		if (history == null) return false;
+		try {
+			boolean slower = false;
+			if (slowdownThreshold > 0) {
+				long median = history.rollingMedian(stackName, operation, MEDIAN_WINDOW);
+				slower = median > 0 && millis > median * (100 + slowdownThreshold) / 100;
+				if (slower) {
+					logger.println("Stack " + stackName + " " + operation + " took " + millis / 1000 + "s, more than "
+							+ slowdownThreshold + "% above the median of " + median / 1000 + "s over the last "
+							+ MEDIAN_WINDOW + " builds.");
+				}
+			}
+			history.record(new Record(build.getNumber(), System.currentTimeMillis(), stackName, operation, millis));
+			return slower;
+		} catch (IOException e) {
+			logger.println("Could not record the duration of stack " + stackName + ": " + e);
+			return false;
+		}
+	}
+
+	public void record(Record record) throws IOException {
+		synchronized (lock) {
+			List<Record> records = read();
+			records.add(record);
+			boolean rewrite = records.size() > MAX_RECORDS;
+			if (rewrite) records = records.subList(records.size() - MAX_RECORDS, records.size());
+
+			PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, !rewrite), "UTF-8"));
+			try {
+				for (Record r : rewrite ? records : Collections.singletonList(record)) {
+					w.println(r.toLine());
+				}
+			} finally {
+				w.close();
+			}
+		}
+	}
+
+	public long lastModified() {
+		return file.lastModified();
+	}
+
+	/**
+	 * @return all records, oldest first.
+	 */
+	public List<Record> read() throws IOException {
+		synchronized (lock) {
+			List<Record> records = new ArrayList<Record>();
+			BufferedReader r;
+			try {
+				r = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			} catch (FileNotFoundException e) {
+				return records;
+			}
+			try {
+				String line;
+				while ((line = r.readLine()) != null) {
+					Record record = Record.fromLine(line);
+					if (record != null) records.add(record);
+				}
+			} finally {
+				r.close();
+			}
+			return records;
+		}
+	}
+
+	/**
+	 * @return the median duration of the last <code>window</code> successful records of the given stack and operation,
+	 *         or 0 if there are none.
+	 */
+	public long rollingMedian(String stackName, String operation, int window) throws IOException {
+		List<Long> durations = new ArrayList<Long>();
+		List<Record> records = read();
+		for (int i = records.size() - 1; i >= 0 && durations.size() < window; i--) {
+			Record record = records.get(i);
+			if (record.stackName.equals(stackName) && record.operation.equals(operation)) {
+				durations.add(record.millis);
+			}
+		}
+		if (durations.isEmpty()) return 0;
+		Collections.sort(durations);
+		int middle = durations.size() / 2;
+		return durations.size() % 2 == 1 ? durations.get(middle) : (durations.get(middle - 1) + durations.get(middle)) / 2;
+	}
+
+	/**
+	 * One stack operation of one build.
+	 */
+	public static class Record {
+		final int buildNumber;
+		final long timestamp;
+		final String stackName;
+		final String operation;
+		final long millis;
+
+		public Record(int buildNumber, long timestamp, String stackName, String operation, long millis) {
+			this.buildNumber = buildNumber;
+			this.timestamp = timestamp;
+			this.stackName = stackName;
+			this.operation = operation;
+			this.millis = millis;
+		}
+
+		public int getBuildNumber() {
+			return buildNumber;
+		}
+
+		public String getStackName() {
+			return stackName;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		String toLine() {
+			return buildNumber + "," + timestamp + "," + operation + "," + millis + "," + stackName;
+		}
+
+		static Record fromLine(String line) {
+			String[] fields = line.split(",", 5);
+			if (fields.length < 5) return null;
+			try {
+				return new Record(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), fields[4], fields[2],
+						Long.parseLong(fields[3]));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+}
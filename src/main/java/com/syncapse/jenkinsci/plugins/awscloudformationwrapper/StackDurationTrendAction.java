@@ -0,0 +1,82 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.List;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.category.CategoryDataset;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Project action drawing the trend of stack operation durations over the builds of the job.
+ */
+public class StackDurationTrendAction implements Action {
+
+	private final AbstractProject<?, ?> project;
+
+	public StackDurationTrendAction(AbstractProject<?, ?> project) {
+		this.project = project;
+	}
+
+	public AbstractProject<?, ?> getProject() {
+		return project;
+	}
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return "Stack provisioning trend";
+	}
+
+	public String getUrlName() {
+		return "cloudformation-trend";
+	}
+
+	public boolean hasData() throws IOException {
+		StackDurationHistory history = StackDurationHistory.of(project);
+		return history != null && !history.read().isEmpty();
+	}
+
+	public void doGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		final CategoryDataset dataset = buildDataset();
+		StackDurationHistory history = StackDurationHistory.of(project);
+		new Graph(history != null ? history.lastModified() : 0, 500, 200) {
+			@Override
+			protected JFreeChart createGraph() {
+				JFreeChart chart = ChartFactory.createLineChart(null, "Build", "Seconds", dataset,
+						PlotOrientation.VERTICAL, true, true, false);
+				chart.setBackgroundPaint(Color.white);
+				CategoryPlot plot = chart.getCategoryPlot();
+				plot.setBackgroundPaint(Color.WHITE);
+				plot.setRangeGridlinePaint(Color.black);
+				return chart;
+			}
+		}.doPng(req, rsp);
+	}
+
+	private CategoryDataset buildDataset() throws IOException {
+		DataSetBuilder<String, Integer> builder = new DataSetBuilder<String, Integer>();
+		StackDurationHistory history = StackDurationHistory.of(project);
+		if (history != null) {
+			List<StackDurationHistory.Record> records = history.read();
+			for (StackDurationHistory.Record record : records) {
+				builder.add(record.getMillis() / 1000.0, record.getStackName() + " " + record.getOperation(),
+						record.getBuildNumber());
+			}
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.amazonaws.services.cloudformation.model.Parameter;
+
+/**
+ * Digest identifying what a stack was created from: its template, its resolved parameters and its region.
+ * Two stacks with the same fingerprint are interchangeable.
+ */
+public class StackFingerprint {
+
+	private StackFingerprint() {
+	}
+
+	public static String of(String template, List<Parameter> parameters, Region region) {
+		return ofTemplateDigest(digest(template), parameters, region);
+	}
+
+	/**
+	 * @param templateDigest the {@link #digest(String)} of the template.
+	 */
+	public static String ofTemplateDigest(String templateDigest, List<Parameter> parameters, Region region) {
+		Map<String, String> sorted = new TreeMap<String, String>();
+		if (parameters != null) {
+			for (Parameter parameter : parameters) {
+				sorted.put(parameter.getParameterKey(), parameter.getParameterValue());
+			}
+		}
+
+		MessageDigest digest = sha256();
+		update(digest, region != null ? region.name() : "");
+		update(digest, templateDigest);
+		for (Map.Entry<String, String> parameter : sorted.entrySet()) {
+			update(digest, parameter.getKey());
+			update(digest, parameter.getValue());
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * @return the hex encoded SHA-256 digest of the given text.
+	 */
+	public static String digest(String text) {
+		MessageDigest digest = sha256();
+		update(digest, text);
+		return hex(digest.digest());
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		try {
+			if (value != null) digest.update(value.getBytes("UTF-8"));
+			// Separator, so that ("ab", "c") and ("a", "bc") differ.
+			digest.update((byte) 0);
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+}
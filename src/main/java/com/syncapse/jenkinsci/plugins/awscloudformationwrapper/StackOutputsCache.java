@@ -0,0 +1,129 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+/**
+ * Outputs of stacks, shared by all builds on the controller.
+ * <p>
+ * Outputs read by {@link StackOutputsReader} are reused for a short time so that many builds reading the same
+ * stack do not each call AWS. Independently, outputs are kept by stack version, the stack id, last update time
+ * and status, which only change along with the outputs. A stack whose version is unchanged does not need its
+ * outputs read again.
+ */
+public class StackOutputsCache {
+
+	/**
+	 * Number of stack versions whose outputs are kept, least recently used first out.
+	 */
+	static final int MAX_VERSIONS = 1000;
+
+	private static final StackOutputsCache INSTANCE = new StackOutputsCache();
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private final Map<String, Map<String, String>> versions = Collections.synchronizedMap(
+			new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+					return size() > MAX_VERSIONS;
+				}
+			});
+
+	public static StackOutputsCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the cached outputs of the stack if they were read less than <code>ttlMillis</code> ago, null otherwise.
+	 */
+	public Map<String, String> get(String key, long ttlMillis) {
+		Entry entry = entries.get(key);
+		if (entry == null || System.currentTimeMillis() - entry.readAt > ttlMillis) return null;
+		return entry.outputs;
+	}
+
+	/**
+	 * @return the version of the stack the outputs cached under the key were read from, however old, or null.
+	 */
+	public String getVersion(String key) {
+		Entry entry = entries.get(key);
+		return entry != null ? entry.version : null;
+	}
+
+	public void put(String key, Stack stack) {
+		entries.put(key, new Entry(outputsOf(stack), version(stack)));
+	}
+
+	/**
+	 * Marks the outputs cached under the key as just read, after checking that the stack is still at that version.
+	 * @return the outputs.
+	 */
+	public Map<String, String> revalidate(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) return null;
+		entries.put(key, new Entry(entry.outputs, entry.version));
+		return entry.outputs;
+	}
+
+	/**
+	 * @return the outputs of the stack as an immutable map, shared with every other caller asking for the same version.
+	 */
+	public Map<String, String> outputsOf(Stack stack) {
+		String version = version(stack);
+		Map<String, String> outputs = version != null ? versions.get(version) : null;
+		if (outputs != null) return outputs;
+
+		Map<String, String> map = new HashMap<String, String>();
+		for (Output output : stack.getOutputs()) {
+			map.put(output.getOutputKey(), output.getOutputValue());
+		}
+		outputs = Collections.unmodifiableMap(map);
+		if (version != null) versions.put(version, outputs);
+		return outputs;
+	}
+
+	/**
+	 * @return the version of the stack, or null while an operation is in progress, as outputs may still change.
+	 */
+	static String version(Stack stack) {
+		return version(stack.getStackId(), stack.getLastUpdatedTime(), stack.getCreationTime(), stack.getStackStatus());
+	}
+
+	static String version(StackSummary summary) {
+		return version(summary.getStackId(), summary.getLastUpdatedTime(), summary.getCreationTime(),
+				summary.getStackStatus());
+	}
+
+	private static String version(String stackId, Date lastUpdated, Date created, String status) {
+		if (stackId == null || status == null || StackState.isInProgress(status)) return null;
+		Date time = lastUpdated != null ? lastUpdated : created;
+		return stackId + "|" + (time != null ? time.getTime() : 0) + "|" + status;
+	}
+
+	public void clear() {
+		entries.clear();
+		versions.clear();
+	}
+
+	private static final class Entry {
+		final Map<String, String> outputs;
+		final String version;
+		final long readAt = System.currentTimeMillis();
+
+		Entry(Map<String, String> outputs, String version) {
+			this.outputs = outputs;
+			this.version = version;
+		}
+	}
+
+}
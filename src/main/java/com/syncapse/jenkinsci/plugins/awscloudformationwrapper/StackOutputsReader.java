@@ -0,0 +1,132 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.AmazonCloudFormationAsyncClient;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.ListStacksRequest;
+import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+/**
+ * Reads the outputs of existing stacks of one region and account without changing them. All the stacks
+ * not found in the {@link StackOutputsCache} are read with a single, paginated, describe call. When several
+ * cached stacks have expired, a listing of the stack summaries first tells which of them changed, and only
+ * those are described again.
+ */
+public class StackOutputsReader {
+
+	/**
+	 * Statuses of the stacks whose outputs can be read.
+	 */
+	private static final String[] LIVE_STATUSES;
+
+	static {
+		List<String> statuses = new ArrayList<String>();
+		for (StackStatus status : StackState.USABLE) {
+			statuses.add(status.toString());
+		}
+		LIVE_STATUSES = statuses.toArray(new String[statuses.size()]);
+	}
+
+	private final AWSCredentialsProvider credentials;
+	private final Region region;
+	private final PrintStream logger;
+
+	public StackOutputsReader(AWSCredentialsProvider credentials, Region region, PrintStream logger) {
+		this.credentials = credentials;
+		this.region = region != null ? region : Region.getDefault();
+		this.logger = logger;
+	}
+
+	/**
+	 * @param ttlMillis how old cached outputs may be.
+	 * @return the outputs of each stack found, by stack name. Stacks that do not exist or were deleted are left out.
+	 */
+	public Map<String, Map<String, String>> read(Collection<String> stackNames, long ttlMillis) {
+		Map<String, Map<String, String>> result = new LinkedHashMap<String, Map<String, String>>();
+		Set<String> missing = new LinkedHashSet<String>();
+		for (String stackName : stackNames) {
+			Map<String, String> cached = StackOutputsCache.get().get(cacheKey(stackName), ttlMillis);
+			if (cached != null) {
+				result.put(stackName, cached);
+			} else {
+				missing.add(stackName);
+			}
+		}
+		if (missing.isEmpty()) return result;
+
+		AmazonCloudFormation client = MeteredClient.wrap(AmazonCloudFormation.class, getAWSClient(),
+				"cloudformation", region, null);
+		revalidate(client, missing, result);
+		if (missing.isEmpty()) return result;
+
+		logger.println("Reading the outputs of " + missing + " in " + region.readableName);
+		DescribeStacksRequest request = new DescribeStacksRequest();
+		if (missing.size() == 1) request.withStackName(missing.iterator().next());
+		do {
+			DescribeStacksResult page = client.describeStacks(request);
+			for (Stack stack : page.getStacks()) {
+				if (!missing.contains(stack.getStackName()) || isDeleted(stack)) continue;
+				StackOutputsCache.get().put(cacheKey(stack.getStackName()), stack);
+				result.put(stack.getStackName(), StackOutputsCache.get().outputsOf(stack));
+			}
+			request = new DescribeStacksRequest().withNextToken(page.getNextToken());
+		} while (request.getNextToken() != null && !result.keySet().containsAll(missing));
+		return result;
+	}
+
+	/**
+	 * Moves the expired stacks whose version is unchanged from <code>missing</code> to <code>result</code>.
+	 * For a single stack, describing it costs no more than listing, so nothing is done.
+	 */
+	private void revalidate(AmazonCloudFormation client, Set<String> missing, Map<String, Map<String, String>> result) {
+		Map<String, String> cachedVersions = new HashMap<String, String>();
+		for (String stackName : missing) {
+			String version = StackOutputsCache.get().getVersion(cacheKey(stackName));
+			if (version != null) cachedVersions.put(stackName, version);
+		}
+		if (cachedVersions.size() < 2) return;
+
+		ListStacksRequest request = new ListStacksRequest().withStackStatusFilters(LIVE_STATUSES);
+		do {
+			ListStacksResult page = client.listStacks(request);
+			for (StackSummary summary : page.getStackSummaries()) {
+				String cached = cachedVersions.remove(summary.getStackName());
+				if (cached != null && cached.equals(StackOutputsCache.version(summary))) {
+					result.put(summary.getStackName(), StackOutputsCache.get().revalidate(cacheKey(summary.getStackName())));
+					missing.remove(summary.getStackName());
+				}
+			}
+			request = new ListStacksRequest().withStackStatusFilters(LIVE_STATUSES).withNextToken(page.getNextToken());
+		} while (request.getNextToken() != null && !cachedVersions.isEmpty());
+	}
+
+	protected AmazonCloudFormation getAWSClient() {
+		AmazonCloudFormation client = new AmazonCloudFormationAsyncClient(credentials);
+		client.setEndpoint(region.endpointFor("cloudformation"));
+		return client;
+	}
+
+	private String cacheKey(String stackName) {
+		return region.name() + "|" + StackCredentials.identity(credentials) + "|" + stackName;
+	}
+
+	private static boolean isDeleted(Stack stack) {
+		return StackStatus.DELETE_COMPLETE.toString().equals(stack.getStackStatus());
+	}
+
+}
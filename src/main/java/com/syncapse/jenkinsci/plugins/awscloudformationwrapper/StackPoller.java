@@ -0,0 +1,117 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.util.DaemonThreadFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls every outstanding stack wait from a small shared pool of threads, instead of a thread per
+ * waiting stack sleeping between polls. Callers get a {@link Future} completed once the wait is over.
+ */
+public class StackPoller {
+
+	/**
+	 * Default number of polling threads. A poll makes one or two API calls, which SDK retries stretch out when
+	 * CloudFormation throttles, so controllers waiting for many stacks at once should raise it.
+	 */
+	public static final int DEFAULT_THREADS = 4;
+
+	private static final StackPoller INSTANCE = new StackPoller(DEFAULT_THREADS);
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	StackPoller(int threads) {
+		this.scheduler = new ScheduledThreadPoolExecutor(threads, new DaemonThreadFactory());
+	}
+
+	public static StackPoller get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Sets the number of polling threads of the shared poller, 0 or less for {@link #DEFAULT_THREADS}.
+	 */
+	public static void setThreads(int threads) {
+		INSTANCE.scheduler.setCorePoolSize(threads > 0 ? threads : DEFAULT_THREADS);
+	}
+
+	int getThreads() {
+		return scheduler.getCorePoolSize();
+	}
+
+	/**
+	 * One step of a wait.
+	 */
+	public interface Check<T> {
+		/**
+		 * @return the outcome once the wait is over, or null to be polled again after the interval.
+		 */
+		T poll() throws Exception;
+	}
+
+	/**
+	 * Polls the check at once, then every <code>intervalMillis</code> until it returns an outcome or throws.
+	 * Cancelling the future stops the polling.
+	 */
+	public <T> Future<T> watch(Check<T> check, long intervalMillis) {
+		Watch<T> watch = new Watch<T>(check, intervalMillis);
+		watch.schedule(0);
+		return watch;
+	}
+
+	/**
+	 * @return a future already completed with the given value.
+	 */
+	public static <T> Future<T> completed(final T value) {
+		FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+			public T call() {
+				return value;
+			}
+		});
+		future.run();
+		return future;
+	}
+
+	private final class Watch<T> extends FutureTask<T> {
+
+		private final Check<T> check;
+		private final long intervalMillis;
+
+		Watch(Check<T> check, long intervalMillis) {
+			super(new Callable<T>() {
+				public T call() {
+					throw new IllegalStateException("Completed by the poller only");
+				}
+			});
+			this.check = check;
+			this.intervalMillis = intervalMillis;
+		}
+
+		void schedule(long delayMillis) {
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					poll();
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		private void poll() {
+			if (isDone()) return;
+			try {
+				T outcome = check.poll();
+				if (outcome != null) {
+					set(outcome);
+				} else {
+					schedule(intervalMillis);
+				}
+			} catch (Throwable t) {
+				setException(t);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Hudson;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Globally configured pool of stacks created ahead of time from one template and parameter set,
+ * so builds can lease a ready stack instead of waiting for a new one.
+ */
+public class StackPool extends AbstractDescribableImpl<StackPool> {
+
+	/**
+	 * Name of the pool, also used as the prefix of the names of its stacks.
+	 */
+	private final String name;
+
+	/**
+	 * The json body of the Cloud Formation template the pooled stacks are created from.
+	 */
+	private final String template;
+
+	/**
+	 * The parameters the pooled stacks are created with.
+	 */
+	private final String parameters;
+
+	private final String awsRegion;
+
+	private final String awsAccessKey;
+
+	private final String awsSecretKey;
+
+	/**
+	 * Number of ready stacks to keep in the pool.
+	 */
+	private final int size;
+
+	/**
+	 * Maximum number of stacks of this pool being created at the same time.
+	 */
+	private final int maxConcurrentCreations;
+
+	/**
+	 * Whether leased stacks are deleted at the end of the build rather than returned to the pool.
+	 */
+	private final boolean recycleAfterUse;
+
+	private final long timeout;
+
+	@DataBoundConstructor
+	public StackPool(String name, String template, String parameters, String awsRegion, String awsAccessKey,
+			String awsSecretKey, int size, int maxConcurrentCreations, boolean recycleAfterUse, long timeout) {
+		this.name = name;
+		this.template = template;
+		this.parameters = parameters;
+		this.awsRegion = awsRegion != null && awsRegion.length() > 0 ? awsRegion : Region.getDefault().name();
+		this.awsAccessKey = awsAccessKey;
+		this.awsSecretKey = awsSecretKey;
+		this.size = size;
+		this.maxConcurrentCreations = maxConcurrentCreations > 0 ? maxConcurrentCreations : 1;
+		this.recycleAfterUse = recycleAfterUse;
+		this.timeout = timeout;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	public String getParameters() {
+		return parameters;
+	}
+
+	public Region getAwsRegion() {
+		return Region.fromName(awsRegion);
+	}
+
+	public String getAwsAccessKey() {
+		return awsAccessKey;
+	}
+
+	public String getAwsSecretKey() {
+		return awsSecretKey;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getMaxConcurrentCreations() {
+		return maxConcurrentCreations;
+	}
+
+	public boolean getRecycleAfterUse() {
+		return recycleAfterUse;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public Map<String, String> getParsedParameters() {
+		return StackBean.parseParameters(parameters, new EnvVars());
+	}
+
+	/**
+	 * @return the prefix of the names of the stacks in this pool. Stack names only allow letters, digits and dashes.
+	 */
+	public String getStackNamePrefix() {
+		return "pool-" + name.replaceAll("[^A-Za-z0-9-]", "-") + "-";
+	}
+
+	/**
+	 * @return the pools configured in the global configuration.
+	 */
+	public static List<StackPool> all() {
+		Hudson hudson = Hudson.getInstance();
+		if (hudson == null) return Collections.emptyList();
+		return hudson.getDescriptorByType(CloudFormationBuildWrapper.DescriptorImpl.class).getPools();
+	}
+
+	public static StackPool get(String name) {
+		for (StackPool pool : all()) {
+			if (pool.getName().equals(name)) return pool;
+		}
+		return null;
+	}
+
+	@Extension
+	public static final class DescriptorImpl extends Descriptor<StackPool> {
+
+		@Override
+		public String getDisplayName() {
+			return "Warm stack pool";
+		}
+
+		public FormValidation doCheckName(@QueryParameter String value) {
+			if (0 == value.length()) {
+				return FormValidation.error("Empty pool name");
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckSize(@QueryParameter String value) {
+			try {
+				if (Integer.parseInt(value) < 0) return FormValidation.error("The pool size can not be negative.");
+			} catch (NumberFormatException e) {
+				return FormValidation.error("Pool size " + value + " is not a number.");
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckAwsRegion(@QueryParameter String value) {
+			return Region.isKnown(value) ? FormValidation.ok() : FormValidation.error(Region.unknown(value));
+		}
+
+		public ListBoxModel doFillAwsRegionItems() {
+			ListBoxModel items = new ListBoxModel();
+			for (Region region : Region.values()) {
+				items.add(region.readableName, region.name());
+			}
+			return items;
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+/**
+ * Periodically brings the warm stack pools back up to size, e.g. after failed creations or a restart.
+ */
+@Extension
+public class StackPoolMaintenance extends AsyncPeriodicWork {
+
+	public StackPoolMaintenance() {
+		super("CloudFormation stack pool maintenance");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return MIN;
+	}
+
+	@Override
+	protected void execute(TaskListener listener) {
+		StackPoolManager.get().refillAll();
+	}
+
+}
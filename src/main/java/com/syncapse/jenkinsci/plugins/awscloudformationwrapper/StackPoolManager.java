@@ -0,0 +1,386 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.XmlFile;
+import hudson.model.Hudson;
+import hudson.util.DaemonThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+/**
+ * Keeps the {@link StackPool}s filled and hands out their stacks to builds. Stacks are created and deleted
+ * in the background, never on a build thread, with at most {@link StackPool#getMaxConcurrentCreations()}
+ * creations of a pool in flight.
+ * <p>
+ * The state is kept in memory, except for the leased stacks, persisted to <code>cloudformation-stack-pools.xml</code>
+ * in the Jenkins home. The first time a pool is maintained after a restart, its existing stacks are found by name
+ * prefix and taken back into the pool, but the ones leased before the restart are deleted: the builds using them did
+ * not survive it and may have changed them. A pool is only refilled once that is done.
+ * <p>
+ * A pool whose creations fail is not refilled again for {@link #RETRY_DELAY}, doubled on every failure in a row up to
+ * {@link #MAX_RETRY_DELAY}, so that a broken template or expired keys do not create and delete stacks non-stop.
+ */
+public class StackPoolManager {
+
+	private static final Logger LOGGER = Logger.getLogger(StackPoolManager.class.getName());
+
+	static final long RETRY_DELAY = 60 * 1000L;
+
+	static final long MAX_RETRY_DELAY = 60 * 60 * 1000L;
+
+	private static StackPoolManager instance;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+	private final Map<String, PoolState> states = new HashMap<String, PoolState>();
+	private final AtomicInteger stackCounter = new AtomicInteger();
+
+	private final XmlFile file;
+
+	/**
+	 * Stacks leased before the restart, by pool, to delete once their pool is adopted.
+	 */
+	private final Map<String, Set<String>> leasedBeforeRestart;
+
+	public static synchronized StackPoolManager get() {
+		if (instance == null) {
+			instance = new StackPoolManager(new XmlFile(Hudson.XSTREAM,
+					new File(Hudson.getInstance().getRootDir(), "cloudformation-stack-pools.xml")));
+		}
+		return instance;
+	}
+
+	/**
+	 * @param file where the leased stacks are persisted, or null not to persist them.
+	 */
+	StackPoolManager(XmlFile file) {
+		this.file = file;
+		LeasedStacks leased = null;
+		if (file != null && file.exists()) {
+			try {
+				leased = (LeasedStacks) file.read();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+			}
+		}
+		leasedBeforeRestart = leased != null && leased.stacks != null ? leased.stacks : new HashMap<String, Set<String>>();
+	}
+
+	/**
+	 * Takes a ready stack out of the pool.
+	 * @return the lease, or null if the pool has no ready stack.
+	 */
+	public Lease lease(StackPool pool) {
+		String stackName;
+		synchronized (this) {
+			PoolState state = state(pool);
+			stackName = state.available.poll();
+			if (stackName != null) {
+				state.leased.add(stackName);
+				save();
+			}
+		}
+		refill(pool);
+		return stackName != null ? new Lease(pool, stackName) : null;
+	}
+
+	/**
+	 * Gives a leased stack back. It goes back to the pool unless the pool recycles its stacks after use,
+	 * the build changed its parameters, or the pool no longer exists, in which case it is deleted.
+	 */
+	public void release(Lease lease) {
+		StackPool pool = configuredPool(lease.getPoolName());
+		synchronized (this) {
+			PoolState state = states.get(lease.getPoolName());
+			if (state != null && state.leased.remove(lease.getStackName())) save();
+			if (pool != null && !pool.getRecycleAfterUse() && !lease.isModified() && state != null) {
+				state.available.add(lease.getStackName());
+				return;
+			}
+		}
+		recycle(lease.getPool(), lease.getStackName());
+	}
+
+	/**
+	 * Maintains every configured pool.
+	 */
+	public void refillAll() {
+		for (StackPool pool : StackPool.all()) {
+			maintain(pool);
+		}
+	}
+
+	/**
+	 * Takes back the existing stacks of the pool, the first time only, then refills it. Looking for the existing
+	 * stacks lists every stack of the account, so it is left to the periodic maintenance and never done for a lease.
+	 */
+	public void maintain(StackPool pool) {
+		if (!adopted(pool)) adoptExistingStacks(pool);
+		refill(pool);
+	}
+
+	/**
+	 * Starts as many creations as needed to bring the pool up to size, within its concurrency limit and unless its
+	 * creations are failing, and deletes ready stacks in excess of its size. Does nothing until the pool took back its
+	 * existing stacks.
+	 */
+	public void refill(final StackPool pool) {
+		synchronized (this) {
+			PoolState state = state(pool);
+			if (!state.adopted) return;
+			while (state.available.size() > pool.getSize()) {
+				recycle(pool, state.available.removeLast());
+			}
+			if (System.currentTimeMillis() < state.retryAt) return;
+			while (state.available.size() + state.creating.size() < pool.getSize()
+					&& state.creating.size() < pool.getMaxConcurrentCreations()) {
+				final String stackName = pool.getStackNamePrefix() + Long.toString(System.currentTimeMillis(), 36)
+						+ "-" + stackCounter.incrementAndGet();
+				state.creating.add(stackName);
+				executor.submit(new Runnable() {
+					public void run() {
+						create(pool, stackName);
+					}
+				});
+			}
+		}
+	}
+
+	private void create(StackPool pool, String stackName) {
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		CloudFormation cloudFormation = newCloudFormation(pool, stackName, new PrintStream(log));
+		boolean created = false;
+		try {
+			created = cloudFormation.create();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warning("Interrupted while creating pooled stack " + stackName);
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Failed to create pooled stack " + stackName, e);
+		}
+
+		long retryDelay = 0;
+		synchronized (this) {
+			PoolState state = state(pool);
+			state.creating.remove(stackName);
+			if (created) {
+				state.available.add(stackName);
+				state.failures = 0;
+			} else {
+				retryDelay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(state.failures, 6));
+				state.failures++;
+				state.retryAt = System.currentTimeMillis() + retryDelay;
+			}
+		}
+
+		if (created) {
+			// Keep going until the pool is full.
+			refill(pool);
+		} else {
+			LOGGER.warning("Failed to create pooled stack " + stackName + ", not creating stacks for pool " + pool.getName()
+					+ " again for " + retryDelay / 1000 + " seconds:\n" + log);
+			// The same instance knows whether the stack is rolling back, and waits for that before deleting it.
+			delete(cloudFormation, stackName, log);
+		}
+	}
+
+	/**
+	 * Deletes the stack in the background, then refills its pool if it is still configured.
+	 */
+	private void recycle(final StackPool pool, final String stackName) {
+		executor.submit(new Runnable() {
+			public void run() {
+				ByteArrayOutputStream log = new ByteArrayOutputStream();
+				delete(newCloudFormation(pool, stackName, new PrintStream(log)), stackName, log);
+				StackPool current = configuredPool(pool.getName());
+				if (current != null) refill(current);
+			}
+		});
+	}
+
+	/**
+	 * @param log where the stack logs to.
+	 */
+	private void delete(CloudFormation cloudFormation, String stackName, ByteArrayOutputStream log) {
+		try {
+			if (!cloudFormation.delete()) {
+				LOGGER.warning("Failed to delete pooled stack " + stackName + ":\n" + log);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warning("Interrupted while deleting pooled stack " + stackName + ", the deletion goes on in AWS.");
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Failed to delete pooled stack " + stackName, e);
+		}
+	}
+
+	private synchronized boolean adopted(StackPool pool) {
+		return state(pool).adopted;
+	}
+
+	private void adoptExistingStacks(StackPool pool) {
+		Set<String> existing = new HashSet<String>();
+		try {
+			CloudFormation cloudFormation = newCloudFormation(pool, "", new PrintStream(new ByteArrayOutputStream()));
+			for (StackSummary summary : cloudFormation.listStacks(StackStatus.CREATE_COMPLETE, StackStatus.UPDATE_COMPLETE)) {
+				if (summary.getStackName().startsWith(pool.getStackNamePrefix())) existing.add(summary.getStackName());
+			}
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Failed to look for existing stacks of pool " + pool.getName(), e);
+			return;
+		}
+
+		Set<String> orphaned;
+		synchronized (this) {
+			PoolState state = state(pool);
+			if (state.adopted) return;
+			state.adopted = true;
+			orphaned = leasedBeforeRestart.remove(pool.getName());
+			if (orphaned == null) orphaned = new HashSet<String>();
+			for (String stackName : existing) {
+				if (!orphaned.contains(stackName) && !state.leased.contains(stackName)
+						&& !state.available.contains(stackName)) {
+					state.available.add(stackName);
+				}
+			}
+			save();
+		}
+		for (String stackName : orphaned) {
+			if (existing.contains(stackName)) {
+				LOGGER.info("Deleting pooled stack " + stackName + ", leased to a build that did not survive the restart.");
+				recycle(pool, stackName);
+			}
+		}
+	}
+
+	/**
+	 * @return the pool of that name in the global configuration, or null if it was removed.
+	 */
+	protected StackPool configuredPool(String name) {
+		return StackPool.get(name);
+	}
+
+	protected CloudFormation newCloudFormation(StackPool pool, String stackName, PrintStream logger) {
+		return new CloudFormation(logger, stackName, pool.getTemplate(), pool.getParsedParameters(), pool.getTimeout(),
+				pool.getAwsAccessKey(), pool.getAwsSecretKey(), pool.getAwsRegion(), false, new EnvVars(), false, false);
+	}
+
+	/**
+	 * @return the ready stacks of the pool.
+	 */
+	synchronized List<String> getAvailable(StackPool pool) {
+		return new ArrayList<String>(state(pool).available);
+	}
+
+	/**
+	 * @return the number of stacks of the pool being created.
+	 */
+	synchronized int getCreating(StackPool pool) {
+		return state(pool).creating.size();
+	}
+
+	private void save() {
+		if (file == null) return;
+		LeasedStacks leased = new LeasedStacks();
+		for (Map.Entry<String, Set<String>> pool : leasedBeforeRestart.entrySet()) {
+			leased.stacks.put(pool.getKey(), new HashSet<String>(pool.getValue()));
+		}
+		for (Map.Entry<String, PoolState> pool : states.entrySet()) {
+			if (pool.getValue().leased.isEmpty()) continue;
+			Set<String> stacks = leased.stacks.get(pool.getKey());
+			if (stacks == null) leased.stacks.put(pool.getKey(), stacks = new HashSet<String>());
+			stacks.addAll(pool.getValue().leased);
+		}
+		try {
+			file.write(leased);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to save " + file, e);
+		}
+	}
+
+	private PoolState state(StackPool pool) {
+		PoolState state = states.get(pool.getName());
+		if (state == null) {
+			state = new PoolState();
+			states.put(pool.getName(), state);
+		}
+		return state;
+	}
+
+	/**
+	 * The persisted form of the leased stacks, by pool.
+	 */
+	static class LeasedStacks {
+		Map<String, Set<String>> stacks = new HashMap<String, Set<String>>();
+	}
+
+	private static class PoolState {
+		final LinkedList<String> available = new LinkedList<String>();
+		final Set<String> leased = new HashSet<String>();
+		final Set<String> creating = new HashSet<String>();
+		boolean adopted;
+		/**
+		 * Creations failed in a row, and when the pool may be refilled again after the last one.
+		 */
+		int failures;
+		long retryAt;
+	}
+
+	/**
+	 * A stack of a pool in use by a build.
+	 */
+	public static class Lease {
+		private final StackPool pool;
+		private final String stackName;
+		private boolean modified;
+
+		Lease(StackPool pool, String stackName) {
+			this.pool = pool;
+			this.stackName = stackName;
+		}
+
+		/**
+		 * @return the pool as configured when the stack was leased, even if it was changed or removed since.
+		 */
+		public StackPool getPool() {
+			return pool;
+		}
+
+		public String getPoolName() {
+			return pool.getName();
+		}
+
+		public String getStackName() {
+			return stackName;
+		}
+
+		public boolean isModified() {
+			return modified;
+		}
+
+		/**
+		 * Marks the stack as changed by the build, so it is not handed out again.
+		 */
+		public void setModified(boolean modified) {
+			this.modified = modified;
+		}
+	}
+
+}
@@ -0,0 +1,221 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+import hudson.util.DaemonThreadFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Resolves the <code>${cfn:StackName.OutputKey}</code> references of stack parameters to the outputs of other,
+ * existing stacks of the same region and account. A build reads each referenced stack once: the stacks referenced
+ * by a whole step are read up front, with one {@link StackOutputsReader} call per region and account, the regions
+ * concurrently.
+ */
+public class StackReferences extends InvisibleAction {
+
+	static final Pattern REFERENCE = Pattern.compile("\\$\\{cfn:([A-Za-z][-A-Za-z0-9]*)\\.([A-Za-z0-9]+)\\}");
+
+	/**
+	 * Maximum number of regions and accounts read at once.
+	 */
+	private static final int MAX_THREADS = 8;
+
+	/**
+	 * Outputs read by this build, by region and account, then by stack name. Stacks that do not exist map to null.
+	 */
+	private transient Map<String, Map<String, Map<String, String>>> outputs;
+
+	/**
+	 * @return the references of the build, added to it if it has none yet.
+	 */
+	public static synchronized StackReferences of(AbstractBuild<?, ?> build) {
+		StackReferences references = build.getAction(StackReferences.class);
+		if (references == null) {
+			references = new StackReferences();
+			build.addAction(references);
+		}
+		return references;
+	}
+
+	public static boolean hasReferences(Map<String, String> parameters) {
+		for (String value : parameters.values()) {
+			if (value != null && REFERENCE.matcher(value).find()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The parameters of a stack, with the region and account their references are read from.
+	 */
+	public static class Lookup {
+
+		private final Map<String, String> parameters;
+		private final AWSCredentialsProvider credentials;
+		private final Region region;
+
+		public Lookup(Map<String, String> parameters, AWSCredentialsProvider credentials, Region region) {
+			this.parameters = parameters;
+			this.credentials = credentials;
+			this.region = region != null ? region : Region.getDefault();
+		}
+
+		String scope() {
+			return region.name() + "|" + StackCredentials.identity(credentials);
+		}
+	}
+
+	/**
+	 * Reads the stacks referenced by the parameters that the build has not read yet, then checks that every
+	 * reference resolves, so that a step fails before it creates any stack.
+	 * @throws IllegalArgumentException if a referenced stack or output does not exist.
+	 */
+	public void prefetch(List<Lookup> lookups, final PrintStream logger) throws InterruptedException {
+		final Map<Lookup, Set<String>> unread = new LinkedHashMap<Lookup, Set<String>>();
+		Map<String, Lookup> scopes = new HashMap<String, Lookup>();
+		for (Lookup lookup : lookups) {
+			if (!hasReferences(lookup.parameters)) continue;
+			Lookup scope = scopes.get(lookup.scope());
+			if (scope == null) {
+				scope = lookup;
+				scopes.put(lookup.scope(), lookup);
+				unread.put(lookup, new LinkedHashSet<String>());
+			}
+			unread.get(scope).addAll(unread(lookup));
+		}
+
+		List<Lookup> reads = new ArrayList<Lookup>();
+		for (Map.Entry<Lookup, Set<String>> scope : unread.entrySet()) {
+			if (!scope.getValue().isEmpty()) reads.add(scope.getKey());
+		}
+		if (reads.size() == 1) {
+			read(reads.get(0), unread.get(reads.get(0)), logger);
+		} else if (reads.size() > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(reads.size(), MAX_THREADS),
+					new DaemonThreadFactory());
+			try {
+				List<Future<Void>> futures = new ArrayList<Future<Void>>();
+				for (final Lookup scope : reads) {
+					futures.add(executor.submit(new Callable<Void>() {
+						public Void call() {
+							read(scope, unread.get(scope), logger);
+							return null;
+						}
+					}));
+				}
+				for (Future<Void> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+						throw new AmazonClientException("Failed to read the referenced stacks", e.getCause());
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		for (Lookup lookup : lookups) {
+			if (hasReferences(lookup.parameters)) substitute(lookup);
+		}
+	}
+
+	/**
+	 * @return the parameters with their references replaced by the outputs, read now if the build has not read them yet.
+	 * @throws IllegalArgumentException if a referenced stack or output does not exist.
+	 */
+	public Map<String, String> resolve(Map<String, String> parameters, AWSCredentialsProvider credentials, Region region,
+			PrintStream logger) {
+		if (!hasReferences(parameters)) return parameters;
+		Lookup lookup = new Lookup(parameters, credentials, region);
+		Set<String> unread = unread(lookup);
+		if (!unread.isEmpty()) read(lookup, unread, logger);
+		return substitute(lookup);
+	}
+
+	protected StackOutputsReader newReader(AWSCredentialsProvider credentials, Region region, PrintStream logger) {
+		return new StackOutputsReader(credentials, region, logger);
+	}
+
+	private synchronized Set<String> unread(Lookup lookup) {
+		Map<String, Map<String, String>> scope = scope(lookup.scope());
+		Set<String> unread = new LinkedHashSet<String>();
+		for (String value : lookup.parameters.values()) {
+			if (value == null) continue;
+			Matcher matcher = REFERENCE.matcher(value);
+			while (matcher.find()) {
+				if (!scope.containsKey(matcher.group(1))) unread.add(matcher.group(1));
+			}
+		}
+		return unread;
+	}
+
+	private void read(Lookup lookup, Set<String> stackNames, PrintStream logger) {
+		Map<String, Map<String, String>> found = newReader(lookup.credentials, lookup.region, logger).read(stackNames,
+				DescribeStackBean.DEFAULT_CACHE_TTL * 1000);
+		synchronized (this) {
+			Map<String, Map<String, String>> scope = scope(lookup.scope());
+			for (String stackName : stackNames) {
+				scope.put(stackName, found.get(stackName));
+			}
+		}
+	}
+
+	private synchronized Map<String, String> substitute(Lookup lookup) {
+		Map<String, Map<String, String>> scope = scope(lookup.scope());
+		Map<String, String> resolved = new HashMap<String, String>();
+		for (Map.Entry<String, String> parameter : lookup.parameters.entrySet()) {
+			if (parameter.getValue() == null) {
+				resolved.put(parameter.getKey(), null);
+				continue;
+			}
+			Matcher matcher = REFERENCE.matcher(parameter.getValue());
+			StringBuffer value = new StringBuffer();
+			while (matcher.find()) {
+				Map<String, String> stackOutputs = scope.get(matcher.group(1));
+				if (stackOutputs == null) {
+					throw new IllegalArgumentException("Parameter " + parameter.getKey() + " refers to stack "
+							+ matcher.group(1) + ", which does not exist in " + lookup.region.readableName);
+				}
+				String output = stackOutputs.get(matcher.group(2));
+				if (output == null) {
+					throw new IllegalArgumentException("Parameter " + parameter.getKey() + " refers to output "
+							+ matcher.group(2) + " of stack " + matcher.group(1) + ", which has no such output");
+				}
+				matcher.appendReplacement(value, Matcher.quoteReplacement(output));
+			}
+			matcher.appendTail(value);
+			resolved.put(parameter.getKey(), value.toString());
+		}
+		return resolved;
+	}
+
+	private Map<String, Map<String, String>> scope(String scope) {
+		if (outputs == null) outputs = new HashMap<String, Map<String, Map<String, String>>>();
+		Map<String, Map<String, String>> stacks = outputs.get(scope);
+		if (stacks == null) {
+			stacks = new HashMap<String, Map<String, String>>();
+			outputs.put(scope, stacks);
+		}
+		return stacks;
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+/**
+ * Selects stacks by name. Supports three forms:
+ * <ul>
+ * <li>a list of names separated by commas or new lines, e.g. <code>tenant-a, tenant-b</code></li>
+ * <li>a glob where <code>*</code> matches any characters and <code>?</code> one, e.g. <code>tenant-*</code></li>
+ * <li>a regular expression between slashes, e.g. <code>/tenant-(a|b)-.+/</code></li>
+ * </ul>
+ * The form is told from the selector as configured, and variables are only expanded within its names and the literal
+ * parts of its patterns, so that the value of a variable can never widen the selection. A pattern without any literal
+ * character, which would select every stack, is refused.
+ * Patterns are matched against a single, paginated listing of the stacks in the wanted statuses.
+ */
+public class StackSelector {
+
+	/**
+	 * A variable in a regular expression. Only the braced form is expanded there, <code>$</code> being an anchor.
+	 */
+	private static final Pattern REGEX_VARIABLE = Pattern.compile("\\$\\{([A-Za-z_][A-Za-z0-9_.]*)\\}");
+
+	private final String selector;
+
+	/**
+	 * Null when the selector is a list of names.
+	 */
+	private final Pattern pattern;
+
+	private final List<String> names;
+
+	/**
+	 * @throws IllegalArgumentException if the selector is an invalid regular expression, or selects every stack.
+	 */
+	public StackSelector(String selector) {
+		this(selector, new EnvVars());
+	}
+
+	/**
+	 * @param selector the selector as configured, with its variables not expanded yet.
+	 * @throws IllegalArgumentException if the selector is an invalid regular expression, or selects every stack.
+	 */
+	public StackSelector(String selector, EnvVars env) {
+		this.selector = selector != null ? selector.trim() : "";
+		if (this.selector.length() > 2 && this.selector.startsWith("/") && this.selector.endsWith("/")) {
+			String regex = this.selector.substring(1, this.selector.length() - 1);
+			if (regex.replaceAll("[\\^$.*+?()|]", "").length() == 0) {
+				throw new IllegalArgumentException("Stack name pattern " + this.selector + " would select every stack");
+			}
+			try {
+				pattern = Pattern.compile(expandRegex(regex, env));
+			} catch (PatternSyntaxException e) {
+				throw new IllegalArgumentException("Invalid stack name pattern " + this.selector + ": " + e.getDescription());
+			}
+			names = Collections.emptyList();
+		} else if (this.selector.indexOf('*') >= 0 || this.selector.indexOf('?') >= 0) {
+			if (this.selector.replaceAll("[*?]", "").length() == 0) {
+				throw new IllegalArgumentException("Stack name pattern " + this.selector + " would select every stack");
+			}
+			pattern = Pattern.compile(globToRegex(this.selector, env));
+			names = Collections.emptyList();
+		} else {
+			pattern = null;
+			List<String> list = new ArrayList<String>();
+			for (String name : this.selector.split("[,\\r\\n]+")) {
+				String expanded = env.expand(name.trim());
+				if (expanded.length() > 0 && !list.contains(expanded)) list.add(expanded);
+			}
+			names = Collections.unmodifiableList(list);
+		}
+	}
+
+	/**
+	 * @return true if the selector lists the stack names, so that no listing is needed.
+	 */
+	public boolean isLiteral() {
+		return pattern == null;
+	}
+
+	public boolean matches(String stackName) {
+		return pattern != null ? pattern.matcher(stackName).matches() : names.contains(stackName);
+	}
+
+	/**
+	 * @param cloudFormation lists the stacks of the account and region to select from.
+	 * @param statuses the statuses of the stacks that may be selected.
+	 * @return the names of the selected stacks. Listed names are returned as they are, whether the stacks exist or not.
+	 */
+	public List<String> select(CloudFormation cloudFormation, StackStatus... statuses) {
+		if (isLiteral()) return names;
+
+		List<String> selected = new ArrayList<String>();
+		for (StackSummary summary : cloudFormation.listStacks(statuses)) {
+			if (matches(summary.getStackName()) && !selected.contains(summary.getStackName())) {
+				selected.add(summary.getStackName());
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the glob as a regular expression, with the variables of its literal parts expanded and quoted.
+	 */
+	private static String globToRegex(String glob, EnvVars env) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) regex.append(Pattern.quote(env.expand(literal.toString())));
+				literal.setLength(0);
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) regex.append(Pattern.quote(env.expand(literal.toString())));
+		return regex.toString();
+	}
+
+	/**
+	 * @return the regular expression with its variables replaced by their quoted values.
+	 */
+	private static String expandRegex(String regex, EnvVars env) {
+		StringBuffer expanded = new StringBuffer();
+		Matcher variable = REGEX_VARIABLE.matcher(regex);
+		while (variable.find()) {
+			String value = env.get(variable.group(1));
+			variable.appendReplacement(expanded, Matcher.quoteReplacement(Pattern.quote(value != null ? value : variable.group())));
+		}
+		variable.appendTail(expanded);
+		return expanded.toString();
+	}
+
+	@Override
+	public String toString() {
+		return selector;
+	}
+
+}
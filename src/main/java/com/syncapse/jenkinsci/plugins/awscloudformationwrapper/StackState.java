@@ -0,0 +1,153 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static com.amazonaws.services.cloudformation.model.StackStatus.*;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+/**
+ * The stack statuses as a state machine, shared by every wait on a stack. Each {@link Operation} knows which
+ * statuses it waits through and which one it succeeds with; every other status fails it. Statuses seen by
+ * {@link CloudFormation} are published to the registered {@link Listener}s as transitions.
+ */
+public final class StackState {
+
+	private static final Logger LOGGER = Logger.getLogger(StackState.class.getName());
+
+	/**
+	 * Statuses of stacks with an operation under way.
+	 */
+	public static final Set<StackStatus> IN_PROGRESS = Collections.unmodifiableSet(EnumSet.of(CREATE_IN_PROGRESS,
+			ROLLBACK_IN_PROGRESS, DELETE_IN_PROGRESS, UPDATE_IN_PROGRESS, UPDATE_COMPLETE_CLEANUP_IN_PROGRESS,
+			UPDATE_ROLLBACK_IN_PROGRESS, UPDATE_ROLLBACK_COMPLETE_CLEANUP_IN_PROGRESS));
+
+	/**
+	 * Statuses of stacks whose resources and outputs are usable, and which can be updated.
+	 */
+	public static final Set<StackStatus> USABLE = Collections.unmodifiableSet(EnumSet.of(CREATE_COMPLETE,
+			UPDATE_COMPLETE, UPDATE_ROLLBACK_COMPLETE));
+
+	/**
+	 * Statuses of stacks that exist and can be deleted: every status with no operation under way, except deleted.
+	 */
+	public static final Set<StackStatus> DELETABLE;
+
+	static {
+		EnumSet<StackStatus> deletable = EnumSet.complementOf(EnumSet.copyOf(IN_PROGRESS));
+		deletable.remove(DELETE_COMPLETE);
+		DELETABLE = Collections.unmodifiableSet(deletable);
+	}
+
+	/**
+	 * {@link StackStatus#fromValue(String)} compares the value with every status in turn, on every poll.
+	 */
+	private static final Map<String, StackStatus> BY_VALUE = new HashMap<String, StackStatus>();
+
+	static {
+		for (StackStatus status : StackStatus.values()) {
+			BY_VALUE.put(status.toString(), status);
+		}
+	}
+
+	private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<Listener>();
+
+	private StackState() {
+	}
+
+	public enum Outcome {
+		WAITING, SUCCEEDED, FAILED
+	}
+
+	/**
+	 * The operations waited for, with the statuses each of them waits through and succeeds with.
+	 */
+	public enum Operation {
+		CREATE(EnumSet.of(CREATE_IN_PROGRESS), EnumSet.of(CREATE_COMPLETE)),
+		UPDATE(EnumSet.of(UPDATE_IN_PROGRESS, UPDATE_COMPLETE_CLEANUP_IN_PROGRESS, UPDATE_ROLLBACK_IN_PROGRESS,
+				UPDATE_ROLLBACK_COMPLETE_CLEANUP_IN_PROGRESS), EnumSet.of(UPDATE_COMPLETE)),
+		// The stack may not show the deletion yet right after it was requested.
+		DELETE(EnumSet.complementOf(EnumSet.of(DELETE_COMPLETE, DELETE_FAILED)), EnumSet.of(DELETE_COMPLETE)),
+		// A creation given up on a failed resource is still CREATE_IN_PROGRESS until CloudFormation starts rolling back.
+		ROLLBACK(EnumSet.of(CREATE_IN_PROGRESS, ROLLBACK_IN_PROGRESS), EnumSet.of(ROLLBACK_COMPLETE));
+
+		private final Set<StackStatus> waiting;
+		private final Set<StackStatus> succeeded;
+
+		Operation(Set<StackStatus> waiting, Set<StackStatus> succeeded) {
+			this.waiting = waiting;
+			this.succeeded = succeeded;
+		}
+
+		public Outcome outcome(StackStatus status) {
+			if (waiting.contains(status)) return Outcome.WAITING;
+			return succeeded.contains(status) ? Outcome.SUCCEEDED : Outcome.FAILED;
+		}
+
+		/**
+		 * Statuses the SDK does not know yet are waited through if they are transitional, and fail the operation otherwise.
+		 */
+		public Outcome outcome(String status) {
+			StackStatus known = parse(status);
+			if (known != null) return outcome(known);
+			return status != null && status.endsWith("_IN_PROGRESS") ? Outcome.WAITING : Outcome.FAILED;
+		}
+	}
+
+	/**
+	 * @return the status with the given value, or null if the SDK does not know it.
+	 */
+	public static StackStatus parse(String status) {
+		return status != null ? BY_VALUE.get(status) : null;
+	}
+
+	public static boolean isInProgress(String status) {
+		StackStatus known = parse(status);
+		return known != null ? IN_PROGRESS.contains(known) : status != null && status.endsWith("_IN_PROGRESS");
+	}
+
+	public static boolean isUsable(String status) {
+		return USABLE.contains(parse(status));
+	}
+
+	public static StackStatus[] toArray(Set<StackStatus> statuses) {
+		return statuses.toArray(new StackStatus[statuses.size()]);
+	}
+
+	/**
+	 * Notified of the status changes of the stacks waited for by {@link CloudFormation}, on the polling thread.
+	 */
+	public interface Listener {
+		/**
+		 * @param from the status seen before, or null if this is the first status seen.
+		 */
+		void onTransition(CloudFormation cloudFormation, String from, String to);
+	}
+
+	public static void addListener(Listener listener) {
+		LISTENERS.add(listener);
+	}
+
+	public static void removeListener(Listener listener) {
+		LISTENERS.remove(listener);
+	}
+
+	static void fireTransition(CloudFormation cloudFormation, String from, String to) {
+		for (Listener listener : LISTENERS) {
+			try {
+				listener.onTransition(cloudFormation, from, to);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Stack state listener failed", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+/**
+ * The body of a template as it is sent to CloudFormation, with its digest, computed once.
+ */
+public final class StackTemplate {
+
+	private final String body;
+	private String digest;
+
+	public StackTemplate(String body) {
+		this(body, null);
+	}
+
+	/**
+	 * @param digest the {@link StackFingerprint#digest(String)} of the body, if already known.
+	 */
+	public StackTemplate(String body, String digest) {
+		this.body = body;
+		this.digest = digest;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public synchronized String getDigest() {
+		if (digest == null) digest = StackFingerprint.digest(body);
+		return digest;
+	}
+
+}
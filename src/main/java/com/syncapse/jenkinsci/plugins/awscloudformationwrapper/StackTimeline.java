@@ -0,0 +1,236 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+/**
+ * Per-resource view of one stack operation: when each resource started and finished provisioning,
+ * and which chain of resources made up the critical path.
+ * <p>
+ * Stored as a small tab separated file with one line per resource, times being offsets in seconds
+ * from the start of the operation.
+ */
+public class StackTimeline {
+
+	/**
+	 * Stack events only have second precision; resources finishing this close to another one's start
+	 * are considered to be its dependencies.
+	 */
+	private static final long DEPENDENCY_SLACK_MILLIS = 1000;
+
+	private final long startTime;
+	private final List<Entry> entries;
+
+	StackTimeline(long startTime, List<Entry> entries) {
+		this.startTime = startTime;
+		this.entries = entries;
+	}
+
+	/**
+	 * @param stackName the name of the stack, whose own events bracket the operation.
+	 * @param events the events of one stack operation, oldest first.
+	 */
+	public static StackTimeline fromEvents(String stackName, List<StackEvent> events) {
+		Map<String, Entry> byResource = new LinkedHashMap<String, Entry>();
+		long startTime = Long.MAX_VALUE;
+		for (StackEvent event : events) {
+			if (event.getTimestamp() == null || event.getLogicalResourceId() == null) continue;
+			long time = event.getTimestamp().getTime();
+			startTime = Math.min(startTime, time);
+
+			Entry entry = byResource.get(event.getLogicalResourceId());
+			if (entry == null) {
+				entry = new Entry(event.getLogicalResourceId(), event.getResourceType());
+				entry.stack = entry.resource.equals(stackName);
+				entry.start = time;
+				entry.end = time;
+				byResource.put(entry.resource, entry);
+			}
+			entry.start = Math.min(entry.start, time);
+			entry.end = Math.max(entry.end, time);
+			entry.status = event.getResourceStatus();
+		}
+
+		List<Entry> entries = new ArrayList<Entry>(byResource.values());
+		if (entries.isEmpty()) startTime = 0;
+		for (Entry entry : entries) {
+			entry.start -= startTime;
+			entry.end -= startTime;
+		}
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+			}
+		});
+		markCriticalPath(entries);
+		return new StackTimeline(startTime, entries);
+	}
+
+	/**
+	 * Walks back from the resource finishing last, each time to the resource finishing last before
+	 * the current one started. Events carry no dependency information, so this is an approximation.
+	 */
+	private static void markCriticalPath(List<Entry> entries) {
+		Entry current = null;
+		for (Entry entry : entries) {
+			if (entry.isStack()) continue;
+			if (current == null || entry.end > current.end) current = entry;
+		}
+		while (current != null) {
+			current.critical = true;
+			Entry previous = null;
+			for (Entry entry : entries) {
+				if (entry.isStack() || entry.critical) continue;
+				if (entry.end <= current.start + DEPENDENCY_SLACK_MILLIS && (previous == null || entry.end > previous.end)) {
+					previous = entry;
+				}
+			}
+			current = previous;
+		}
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the time from the first to the last event, in milliseconds.
+	 */
+	public long getDuration() {
+		long duration = 0;
+		for (Entry entry : entries) {
+			duration = Math.max(duration, entry.end);
+		}
+		return duration;
+	}
+
+	public long getDurationSeconds() {
+		return getDuration() / 1000;
+	}
+
+	public void write(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			w.println(startTime);
+			for (Entry entry : entries) {
+				w.print(entry.resource);
+				w.print('\t');
+				w.print(entry.type);
+				w.print('\t');
+				w.print(entry.status);
+				w.print('\t');
+				w.print(entry.start / 1000);
+				w.print('\t');
+				w.print((entry.end - entry.start) / 1000);
+				w.print('\t');
+				w.println(entry.stack ? "S" : (entry.critical ? "1" : "0"));
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	public static StackTimeline read(File file) throws IOException {
+		BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			long startTime = Long.parseLong(r.readLine().trim());
+			List<Entry> entries = new ArrayList<Entry>();
+			String line;
+			while ((line = r.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 6) continue;
+				Entry entry = new Entry(fields[0], fields[1]);
+				entry.status = fields[2];
+				entry.start = Long.parseLong(fields[3]) * 1000;
+				entry.end = entry.start + Long.parseLong(fields[4]) * 1000;
+				entry.stack = "S".equals(fields[5]);
+				entry.critical = "1".equals(fields[5]);
+				entries.add(entry);
+			}
+			return new StackTimeline(startTime, entries);
+		} finally {
+			r.close();
+		}
+	}
+
+	/**
+	 * Provisioning of one resource. Times are milliseconds since the start of the operation.
+	 */
+	public static class Entry {
+		private final String resource;
+		private final String type;
+		private String status;
+		private long start;
+		private long end;
+		private boolean critical;
+		private boolean stack;
+
+		Entry(String resource, String type) {
+			this.resource = resource;
+			this.type = type;
+		}
+
+		public String getResource() {
+			return resource;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getStatus() {
+			return status;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		public long getDuration() {
+			return end - start;
+		}
+
+		public long getStartSeconds() {
+			return start / 1000;
+		}
+
+		public long getDurationSeconds() {
+			return getDuration() / 1000;
+		}
+
+		public boolean isCritical() {
+			return critical;
+		}
+
+		/**
+		 * @return true for the row of the stack itself, which spans the whole operation.
+		 */
+		public boolean isStack() {
+			return stack;
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+import org.kohsuke.stapler.Stapler;
+
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+/**
+ * Build action showing the per-resource provisioning timeline of a stack created or updated by the build.
+ * Only the stack name is kept in the build record, the timeline itself lives in a file next to it
+ * and is loaded on demand.
+ */
+public class StackTimelineAction implements Action {
+
+	private final String stackName;
+	private final String operation;
+
+	/**
+	 * Name of the region of the stack, which the same stack name may be used in several times by one build.
+	 * Null in the records of builds made before it was kept.
+	 */
+	private final String region;
+
+	private transient AbstractBuild<?, ?> build;
+	private transient SoftReference<StackTimeline> timeline;
+
+	StackTimelineAction(AbstractBuild<?, ?> build, String stackName, String region, String operation, StackTimeline timeline) {
+		this.build = build;
+		this.stackName = stackName;
+		this.region = region;
+		this.operation = operation;
+		this.timeline = new SoftReference<StackTimeline>(timeline);
+	}
+
+	/**
+	 * Builds the timeline out of the events of the last operation of the given stack and attaches it to the build.
+	 * Failures are only logged, a missing report is not worth failing the build for.
+	 */
+	public static void attach(AbstractBuild<?, ?> build, CloudFormation cloudFormation, String operation, PrintStream logger) {
+		List<StackEvent> events = cloudFormation.getStackEvents();
+		if (events == null || events.isEmpty()) return;
+
+		String stackName = cloudFormation.getExpandedStackName();
+		String region = cloudFormation.getAwsRegion().name();
+		StackTimeline timeline = StackTimeline.fromEvents(stackName, events);
+		try {
+			timeline.write(file(build, key(stackName, region)));
+			build.addAction(new StackTimelineAction(build, stackName, region, operation, timeline));
+		} catch (IOException e) {
+			logger.println("Could not save the provisioning timeline of stack " + stackName + ": " + e);
+		}
+	}
+
+	private static File file(AbstractBuild<?, ?> build, String key) {
+		return new File(new File(build.getRootDir(), "cloudformation"), key + "-timeline.tsv");
+	}
+
+	/**
+	 * @return the stack name and region, made safe for file names and URLs.
+	 */
+	static String key(String stackName, String region) {
+		return (stackName + (region != null ? "-" + region : "")).replaceAll("[^A-Za-z0-9-]", "_");
+	}
+
+	public String getIconFileName() {
+		return "clock.gif";
+	}
+
+	public String getDisplayName() {
+		return "Stack timeline: " + stackName + (region != null ? " (" + region + ")" : "");
+	}
+
+	public String getUrlName() {
+		return "cloudformation-timeline-" + key(stackName, region);
+	}
+
+	/**
+	 * @return the build this action belongs to. After a restart it is looked up from the request being served.
+	 */
+	public AbstractBuild<?, ?> getBuild() {
+		if (build == null) {
+			build = Stapler.getCurrentRequest().findAncestorObject(AbstractBuild.class);
+		}
+		return build;
+	}
+
+	public String getStackName() {
+		return stackName;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public StackTimeline getTimeline() throws IOException {
+		StackTimeline result = timeline != null ? timeline.get() : null;
+		if (result == null) {
+			result = StackTimeline.read(file(getBuild(), key(stackName, region)));
+			timeline = new SoftReference<StackTimeline>(result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the position of the given time in the timeline, as a percentage of the total duration.
+	 */
+	public long percent(long millis) throws IOException {
+		long duration = getTimeline().getDuration();
+		return duration == 0 ? 0 : Math.min(100, millis * 100 / duration);
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+
+/**
+ * Build step that starts creating stacks and moves on without waiting for them. The build can compile and
+ * test while the stacks are provisioned, and wait for them with {@link AwaitStackBuilder} when it needs them.
+ */
+public class StartStackBuilder extends Builder {
+
+	private final List<StackBean> stacks;
+
+	@DataBoundConstructor
+	public StartStackBuilder(List<StackBean> stacks) {
+		this.stacks = stacks;
+	}
+
+	public List<StackBean> getStacks() {
+		return stacks;
+	}
+
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+			throws InterruptedException, IOException {
+		EnvVars env = build.getEnvironment(listener);
+		env.overrideAll(build.getBuildVariables());
+
+		for (StackBean stackBean : stacks) {
+			List<String> unsupported = unsupportedOptions(stackBean);
+			if (!unsupported.isEmpty()) {
+				listener.error("Stack " + env.expand(stackBean.getStackName()) + " sets " + unsupported
+						+ ", which only the build wrapper supports.");
+				return false;
+			}
+		}
+
+		Map<StackBean, Map<String, String>> parameters = new HashMap<StackBean, Map<String, String>>();
+		Map<StackBean, StackTemplate> templates = new HashMap<StackBean, StackTemplate>();
+		List<StackReferences.Lookup> lookups = new ArrayList<StackReferences.Lookup>();
+		List<TemplateValidator.Check> checks = new ArrayList<TemplateValidator.Check>();
+		for (StackBean stackBean : stacks) {
+			try {
+				parameters.put(stackBean, readParameters(stackBean, build, env));
+				templates.put(stackBean, stackBean.readTemplate(build.getWorkspace(), env, listener.getLogger()));
+			} catch (IOException e) {
+				listener.error(e.getMessage());
+				return false;
+			}
+			lookups.add(new StackReferences.Lookup(parameters.get(stackBean),
+					stackBean.getCredentials(env, stackBean.getAwsRegion()), stackBean.getAwsRegion()));
+			checks.add(new TemplateValidator.Check(stackBean, env, templates.get(stackBean), parameters.get(stackBean).keySet()));
+		}
+		try {
+			TemplateValidator.validate(checks);
+		} catch (AbortException e) {
+			listener.error(e.getMessage());
+			return false;
+		}
+		try {
+			StackReferences.of(build).prefetch(lookups, listener.getLogger());
+		} catch (RuntimeException e) {
+			listener.error("Failed to resolve the references to other stacks: " + e.getMessage());
+			return false;
+		}
+
+		StartedStacksAction action = StartedStacksAction.of(build);
+		for (StackBean stackBean : stacks) {
+			CloudFormation cloudFormation = newCloudFormation(stackBean, templates.get(stackBean), parameters.get(stackBean), build,
+					env, listener);
+			if (action.get(cloudFormation.getExpandedStackName()) != null) {
+				listener.error("Stack " + cloudFormation.getExpandedStackName() + " was already started by this build.");
+				return false;
+			}
+			action.add(new StartedStacksAction.StartedStack(cloudFormation, cloudFormation.createAsync()));
+			listener.getLogger().println("Started creating stack " + cloudFormation.getExpandedStackName());
+		}
+		return true;
+	}
+
+	/**
+	 * @return the options of the bean that are only supported by {@link CloudFormationBuildWrapper}, none if it
+	 *         can be started here.
+	 */
+	static List<String> unsupportedOptions(StackBean stackBean) {
+		List<String> unsupported = new ArrayList<String>();
+		if (stackBean.getPoolName() != null && stackBean.getPoolName().trim().length() > 0) unsupported.add("poolName");
+		if (stackBean.getReuseStack()) unsupported.add("reuseStack");
+		if (stackBean.getTargetRegions() != null && stackBean.getTargetRegions().trim().length() > 0) {
+			unsupported.add("targetRegions");
+		}
+		return unsupported;
+	}
+
+	/**
+	 * @return the parameters of the bean, including the ones of its parameters file.
+	 */
+	private Map<String, String> readParameters(StackBean stackBean, AbstractBuild<?, ?> build, EnvVars env)
+			throws IOException, InterruptedException {
+		String file = stackBean.getParsedParametersFile(env);
+		if (file == null) return stackBean.getParsedParameters(env);
+		return stackBean.getParsedParameters(env, ParametersFile.read(build.getWorkspace().child(file)));
+	}
+
+	/**
+	 * @param parameters the parameters of the bean, with variables expanded.
+	 */
+	protected CloudFormation newCloudFormation(StackBean stackBean, StackTemplate template, Map<String, String> parameters,
+			AbstractBuild<?, ?> build, EnvVars env, BuildListener listener) {
+		AWSCredentialsProvider credentials = stackBean.getCredentials(env, stackBean.getAwsRegion());
+		CloudFormation cloudFormation = new CloudFormation(listener.getLogger(), stackBean.getStackName(), template.getBody(),
+				StackReferences.of(build).resolve(parameters, credentials,
+						stackBean.getAwsRegion(), listener.getLogger()), stackBean.getTimeout(),
+				credentials, stackBean.getAwsRegion(),
+				stackBean.getAutoDeleteStack(), env, false, false);
+		cloudFormation.setDisableRollback(stackBean.getDisableRollback());
+		cloudFormation.setTemplateDigest(template.getDigest());
+		return cloudFormation;
+	}
+
+	@Extension
+	public static class DescriptorImpl extends BuildStepDescriptor<Builder> {
+
+		@Override
+		public String getDisplayName() {
+			return "Start AWS Cloud Formation stack (without waiting)";
+		}
+
+		@Override
+		public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+			return true;
+		}
+
+		/**
+		 * Refuses to save stacks set up with options this step does not support.
+		 */
+		@Override
+		public Builder newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+			StartStackBuilder builder = (StartStackBuilder) super.newInstance(req, formData);
+			for (StackBean stackBean : builder.getStacks()) {
+				List<String> unsupported = unsupportedOptions(stackBean);
+				if (!unsupported.isEmpty()) {
+					throw new FormException("Stack " + stackBean.getStackName() + " sets " + unsupported
+							+ ", which only the build wrapper supports.", "stacks");
+				}
+			}
+			return builder;
+		}
+	}
+
+}
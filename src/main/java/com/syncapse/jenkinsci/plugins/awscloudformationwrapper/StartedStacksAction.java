@@ -0,0 +1,92 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+import hudson.model.InvisibleAction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps track of the stacks a build started with {@link StartStackBuilder}, so that {@link AwaitStackBuilder}
+ * can wait for them and {@link StartedStacksCleanup} can delete them when the build is over.
+ * The outputs of the awaited stacks are contributed to the build environment.
+ */
+public class StartedStacksAction extends InvisibleAction implements EnvironmentContributingAction {
+
+	private transient Map<String, StartedStack> stacks;
+
+	/**
+	 * @return the action of the build, added to it if it has none yet.
+	 */
+	public static synchronized StartedStacksAction of(AbstractBuild<?, ?> build) {
+		StartedStacksAction action = build.getAction(StartedStacksAction.class);
+		if (action == null) {
+			action = new StartedStacksAction();
+			build.addAction(action);
+		}
+		return action;
+	}
+
+	public synchronized void add(StartedStack stack) {
+		stacks().put(stack.getCloudFormation().getExpandedStackName(), stack);
+	}
+
+	/**
+	 * @return the started stack with the given expanded name, or null if the build did not start it.
+	 */
+	public synchronized StartedStack get(String stackName) {
+		return stacks().get(stackName);
+	}
+
+	public synchronized List<StartedStack> getStacks() {
+		return new ArrayList<StartedStack>(stacks().values());
+	}
+
+	public synchronized void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
+		for (StartedStack stack : stacks().values()) {
+			if (stack.isAwaited()) env.putAll(stack.getCloudFormation().getOutputs());
+		}
+	}
+
+	private Map<String, StartedStack> stacks() {
+		if (stacks == null) stacks = new LinkedHashMap<String, StartedStack>();
+		return stacks;
+	}
+
+	public static class StartedStack {
+
+		private final CloudFormation cloudFormation;
+		private final Future<Boolean> creation;
+		private volatile boolean awaited;
+
+		public StartedStack(CloudFormation cloudFormation, Future<Boolean> creation) {
+			this.cloudFormation = cloudFormation;
+			this.creation = creation;
+		}
+
+		public CloudFormation getCloudFormation() {
+			return cloudFormation;
+		}
+
+		public Future<Boolean> getCreation() {
+			return creation;
+		}
+
+		/**
+		 * @return true once a build step has waited for the stack and it was created successfully.
+		 */
+		public boolean isAwaited() {
+			return awaited;
+		}
+
+		void setAwaited(boolean awaited) {
+			this.awaited = awaited;
+		}
+	}
+
+}
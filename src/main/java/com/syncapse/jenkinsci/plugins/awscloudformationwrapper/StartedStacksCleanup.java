@@ -0,0 +1,64 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Deletes the stacks started by {@link StartStackBuilder} that are set to be deleted automatically, once
+ * the build is over. Creations still in progress are aborted, and the deletions are left to the {@link StackPoller}
+ * rather than waited for, so that the executor is not held.
+ */
+@Extension
+public class StartedStacksCleanup extends RunListener<AbstractBuild> {
+
+	public StartedStacksCleanup() {
+		super(AbstractBuild.class);
+	}
+
+	@Override
+	public void onCompleted(AbstractBuild build, TaskListener listener) {
+		StartedStacksAction action = (StartedStacksAction) build.getAction(StartedStacksAction.class);
+		if (action == null) return;
+
+		List<StartedStacksAction.StartedStack> stacks = action.getStacks();
+		Collections.reverse(stacks);
+		for (StartedStacksAction.StartedStack stack : stacks) {
+			CloudFormation cloudFormation = stack.getCloudFormation();
+			if (!cloudFormation.getAutoDeleteStack()) continue;
+			// Aborting a creation under way deletes the stack.
+			if (!stack.getCreation().isDone() && cloudFormation.abort()) continue;
+			boolean created = false;
+			try {
+				created = stack.getCreation().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (CancellationException e) {
+				// Aborted by the build, which deleted the stack.
+				continue;
+			} catch (ExecutionException e) {
+				// A failed creation still leaves a stack behind to delete.
+			}
+			if (!created && cloudFormation.getDisableRollback()) {
+				listener.getLogger().println("Keeping stack " + cloudFormation.getExpandedStackName()
+						+ " that failed to be created, for debugging.");
+				continue;
+			}
+			try {
+				cloudFormation.deleteAsync();
+			} catch (AmazonClientException e) {
+				listener.error("Failed to delete stack " + cloudFormation.getExpandedStackName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+}
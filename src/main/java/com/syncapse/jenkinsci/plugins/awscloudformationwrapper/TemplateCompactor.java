@@ -0,0 +1,85 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Strips the whitespace out of JSON templates before they are sent, so that larger templates fit in the
+ * {@value #MAX_INLINE_BYTES} bytes CloudFormation accepts inline. The template is streamed token by token into the
+ * compact form: strings and numbers are copied as written.
+ */
+public final class TemplateCompactor {
+
+	/**
+	 * Largest template body CloudFormation accepts in a request.
+	 */
+	public static final int MAX_INLINE_BYTES = 51200;
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private TemplateCompactor() {
+	}
+
+	/**
+	 * @return the template without whitespace, or the template as it is if it is not JSON.
+	 */
+	public static String compact(String template) {
+		if (!template.trim().startsWith("{")) return template;
+		StringWriter compacted = new StringWriter(template.length());
+		try {
+			JsonParser parser = JSON.createParser(template);
+			JsonGenerator generator = JSON.createGenerator(compacted);
+			try {
+				JsonToken token;
+				while ((token = parser.nextToken()) != null) {
+					if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+						generator.writeNumber(parser.getText());
+					} else {
+						generator.copyCurrentEvent(parser);
+					}
+				}
+			} finally {
+				generator.close();
+				parser.close();
+			}
+		} catch (IOException e) {
+			// not valid JSON: sent as it is, for CloudFormation to report
+			return template;
+		}
+		return compacted.toString();
+	}
+
+	/**
+	 * Compacts the template, and logs the bytes saved.
+	 */
+	public static String compact(String template, String stackName, PrintStream logger) {
+		String compacted = compact(template);
+		int before = bytes(template);
+		int after = bytes(compacted);
+		if (after < before) {
+			logger.println("Compacted the template of stack " + stackName + " from " + before + " to " + after
+					+ " bytes, saving " + (before - after) + " (" + (100L * (before - after) / before) + "%).");
+		}
+		if (after > MAX_INLINE_BYTES) {
+			logger.println("WARNING: the template of stack " + stackName + " is " + after + " bytes, more than the "
+					+ MAX_INLINE_BYTES + " bytes CloudFormation accepts inline.");
+		}
+		return compacted;
+	}
+
+	static int bytes(String text) {
+		try {
+			return text.getBytes("UTF-8").length;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
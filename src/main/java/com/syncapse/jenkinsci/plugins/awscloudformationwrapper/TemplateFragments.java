@@ -0,0 +1,204 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.AbortException;
+import hudson.FilePath;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Merges JSON template fragments of the workspace into one template. The members of the sections of every fragment
+ * (<code>Parameters</code>, <code>Resources</code>, <code>Outputs</code>...) are put together, and a member may only
+ * be declared by one fragment. Fragments are identified by the digest of their content, computed on the node they are
+ * on: only the fragments that changed since they were last merged are read over the channel and parsed again, and a
+ * set of fragments that has not changed at all is not merged again.
+ */
+public final class TemplateFragments {
+
+	/**
+	 * Number of fragments and of merged templates kept, least recently used first out.
+	 */
+	static final int MAX_CACHED = 200;
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private static final Map<String, Fragment> FRAGMENTS = lru();
+	private static final Map<String, StackTemplate> MERGED = lru();
+
+	private TemplateFragments() {
+	}
+
+	/**
+	 * The top level members of a fragment, as JSON text. A member whose value is an object is a section, whose members
+	 * are kept one by one.
+	 */
+	static class Fragment {
+
+		private final String name;
+		private final Map<String, String> values = new LinkedHashMap<String, String>();
+		private final Map<String, Map<String, String>> sections = new LinkedHashMap<String, Map<String, String>>();
+
+		Fragment(String name, String content) throws IOException {
+			this.name = name;
+			JsonParser parser = JSON.createParser(content);
+			try {
+				if (parser.nextToken() != JsonToken.START_OBJECT) throw new IOException("Not a JSON object");
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String key = parser.getCurrentName();
+					if (parser.nextToken() == JsonToken.START_OBJECT) {
+						Map<String, String> members = new LinkedHashMap<String, String>();
+						while (parser.nextToken() == JsonToken.FIELD_NAME) {
+							String member = parser.getCurrentName();
+							parser.nextToken();
+							members.put(member, copy(parser));
+						}
+						sections.put(key, members);
+					} else {
+						values.put(key, copy(parser));
+					}
+				}
+			} finally {
+				parser.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the template merged from the fragments, in their order.
+	 * @throws AbortException if a fragment is not a JSON object, or two fragments declare the same member.
+	 */
+	public static StackTemplate merge(List<FilePath> files, PrintStream logger) throws IOException, InterruptedException {
+		List<String> digests = new ArrayList<String>();
+		for (FilePath file : files) {
+			digests.add(file.digest());
+		}
+		String key = digests.toString();
+		StackTemplate merged = MERGED.get(key);
+		if (merged != null) return merged;
+
+		List<Fragment> fragments = new ArrayList<Fragment>();
+		int read = 0;
+		for (int i = 0; i < files.size(); i++) {
+			Fragment fragment = FRAGMENTS.get(digests.get(i));
+			if (fragment == null) {
+				try {
+					fragment = new Fragment(files.get(i).getName(), files.get(i).readToString());
+				} catch (IOException e) {
+					throw new AbortException("Failed to read template fragment " + files.get(i).getName() + ": " + e.getMessage());
+				}
+				FRAGMENTS.put(digests.get(i), fragment);
+				read++;
+			}
+			fragments.add(fragment);
+		}
+		try {
+			merged = new StackTemplate(merge(fragments));
+		} catch (IllegalArgumentException e) {
+			throw new AbortException(e.getMessage());
+		}
+		MERGED.put(key, merged);
+		logger.println("Merged " + files.size() + " template fragments, " + read + " of them changed since they were last read.");
+		return merged;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if two fragments declare the same member differently.
+	 */
+	static String merge(List<Fragment> fragments) throws IOException {
+		Map<String, Object> merged = new LinkedHashMap<String, Object>();
+		Map<String, String> declaredBy = new LinkedHashMap<String, String>();
+		for (Fragment fragment : fragments) {
+			for (Map.Entry<String, String> value : fragment.values.entrySet()) {
+				Object existing = merged.get(value.getKey());
+				if (existing != null && !existing.equals(value.getValue())) {
+					throw new IllegalArgumentException("Template fragments " + declaredBy.get(value.getKey()) + " and "
+							+ fragment.name + " set " + value.getKey() + " differently");
+				}
+				merged.put(value.getKey(), value.getValue());
+				declaredBy.put(value.getKey(), fragment.name);
+			}
+			for (Map.Entry<String, Map<String, String>> section : fragment.sections.entrySet()) {
+				Object existing = merged.get(section.getKey());
+				if (existing instanceof String) {
+					throw new IllegalArgumentException("Template fragments " + declaredBy.get(section.getKey()) + " and "
+							+ fragment.name + " set " + section.getKey() + " differently");
+				}
+				@SuppressWarnings("unchecked")
+				Map<String, String> members = (Map<String, String>) existing;
+				if (members == null) {
+					members = new LinkedHashMap<String, String>();
+					merged.put(section.getKey(), members);
+				}
+				for (Map.Entry<String, String> member : section.getValue().entrySet()) {
+					String qualified = section.getKey() + "." + member.getKey();
+					if (members.containsKey(member.getKey())) {
+						throw new IllegalArgumentException("Template fragments " + declaredBy.get(qualified) + " and "
+								+ fragment.name + " both declare " + member.getKey() + " in " + section.getKey());
+					}
+					members.put(member.getKey(), member.getValue());
+					declaredBy.put(qualified, fragment.name);
+				}
+				declaredBy.put(section.getKey(), fragment.name);
+			}
+		}
+
+		StringWriter template = new StringWriter();
+		JsonGenerator generator = JSON.createGenerator(template);
+		generator.writeStartObject();
+		for (Map.Entry<String, Object> entry : merged.entrySet()) {
+			generator.writeFieldName(entry.getKey());
+			if (entry.getValue() instanceof String) {
+				generator.writeRawValue((String) entry.getValue());
+				continue;
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, String> members = (Map<String, String>) entry.getValue();
+			generator.writeStartObject();
+			for (Map.Entry<String, String> member : members.entrySet()) {
+				generator.writeFieldName(member.getKey());
+				generator.writeRawValue(member.getValue());
+			}
+			generator.writeEndObject();
+		}
+		generator.writeEndObject();
+		generator.close();
+		return template.toString();
+	}
+
+	/**
+	 * @return the current value of the parser as compact JSON text.
+	 */
+	private static String copy(JsonParser parser) throws IOException {
+		StringWriter value = new StringWriter();
+		JsonGenerator generator = JSON.createGenerator(value);
+		generator.copyCurrentStructure(parser);
+		generator.close();
+		return value.toString();
+	}
+
+	static void clear() {
+		FRAGMENTS.clear();
+		MERGED.clear();
+	}
+
+	private static <V> Map<String, V> lru() {
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > MAX_CACHED;
+			}
+		});
+	}
+
+}
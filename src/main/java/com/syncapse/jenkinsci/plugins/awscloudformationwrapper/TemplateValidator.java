@@ -0,0 +1,239 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.util.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Checks templates locally before any stack is created from them, so that a template CloudFormation would reject
+ * fails the build at once instead of after a create, rollback and delete. A template is checked in one streaming pass:
+ * it must parse, declare every parameter it is given and be given every parameter without a default, and its
+ * <code>Ref</code> and <code>Fn::GetAtt</code> must name declared parameters and resources.
+ * Templates that are not JSON are left to CloudFormation.
+ */
+public final class TemplateValidator {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private static final Set<String> PSEUDO_PARAMETERS = new HashSet<String>(Arrays.asList("AWS::AccountId",
+			"AWS::NotificationARNs", "AWS::NoValue", "AWS::Partition", "AWS::Region", "AWS::StackId", "AWS::StackName",
+			"AWS::URLSuffix"));
+
+	/**
+	 * Maximum number of templates checked at once.
+	 */
+	private static final int MAX_THREADS = 8;
+
+	private TemplateValidator() {
+	}
+
+	/**
+	 * The template of a stack as it is sent, with the names of the parameters it is to be created with.
+	 */
+	public static class Check {
+
+		private final String stackName;
+		private final String source;
+		private final StackTemplate template;
+		private final Set<String> parameters;
+
+		public Check(StackBean stackBean, EnvVars env, StackTemplate template, Set<String> parameters) {
+			this.stackName = env.expand(stackBean.getStackName());
+			this.source = stackBean.getParsedTemplateFragments(env).isEmpty()
+					? env.expand(stackBean.getCloudFormationRecipe()) : "merged template fragments";
+			this.template = template;
+			this.parameters = parameters;
+		}
+
+		private List<String> run() throws IOException {
+			List<String> problems = new ArrayList<String>();
+			for (String problem : validate(template.getBody(), parameters)) {
+				problems.add("Stack " + stackName + " (" + source + "): " + problem);
+			}
+			return problems;
+		}
+	}
+
+	/**
+	 * Checks every template, several at once.
+	 * @throws AbortException listing the problems of all the templates, if any has one.
+	 */
+	public static void validate(List<Check> checks) throws IOException, InterruptedException {
+		List<String> problems = new ArrayList<String>();
+		if (checks.size() == 1) {
+			problems.addAll(checks.get(0).run());
+		} else if (checks.size() > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(checks.size(), MAX_THREADS),
+					new DaemonThreadFactory());
+			try {
+				List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+				for (final Check check : checks) {
+					futures.add(executor.submit(new Callable<List<String>>() {
+						public List<String> call() throws Exception {
+							return check.run();
+						}
+					}));
+				}
+				for (Future<List<String>> future : futures) {
+					try {
+						problems.addAll(future.get());
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+						if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+						throw new IOException("Failed to check the templates", e.getCause());
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		if (!problems.isEmpty()) {
+			StringBuilder message = new StringBuilder("Invalid templates, no stack was created:");
+			for (String problem : problems) {
+				message.append("\n  ").append(problem);
+			}
+			throw new AbortException(message.toString());
+		}
+	}
+
+	/**
+	 * @param parameters the names of the parameters the stack is to be created with.
+	 * @return the problems of the template, none if it is fine or not JSON.
+	 */
+	public static List<String> validate(String template, Set<String> parameters) throws IOException {
+		if (!template.trim().startsWith("{")) return Collections.emptyList();
+
+		Map<String, Boolean> declared = new LinkedHashMap<String, Boolean>();
+		Set<String> resources = new HashSet<String>();
+		Map<String, Integer> refs = new LinkedHashMap<String, Integer>();
+		Map<String, Integer> attributes = new LinkedHashMap<String, Integer>();
+		List<String> problems = new ArrayList<String>();
+
+		JsonParser parser = JSON.createParser(template);
+		try {
+			parser.nextToken();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String section = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("Parameters".equals(section) && token == JsonToken.START_OBJECT) {
+					readParameters(parser, declared);
+				} else if ("Resources".equals(section) && token == JsonToken.START_OBJECT) {
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						resources.add(parser.getCurrentName());
+						parser.nextToken();
+						readReferences(parser, refs, attributes);
+					}
+				} else {
+					readReferences(parser, refs, attributes);
+				}
+			}
+			if (parser.getCurrentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+				throw new JsonParseException("Unexpected content after the template", parser.getCurrentLocation());
+			}
+		} catch (JsonParseException e) {
+			return Collections.singletonList("does not parse: " + e.getOriginalMessage() + " at line "
+					+ e.getLocation().getLineNr() + ", column " + e.getLocation().getColumnNr());
+		} finally {
+			parser.close();
+		}
+
+		if (resources.isEmpty()) problems.add("declares no resources");
+		for (String parameter : parameters) {
+			if (!declared.containsKey(parameter)) problems.add("parameter " + parameter + " is not declared by the template");
+		}
+		for (Map.Entry<String, Boolean> parameter : declared.entrySet()) {
+			if (!parameter.getValue() && !parameters.contains(parameter.getKey())) {
+				problems.add("parameter " + parameter.getKey() + " has no default and is not given");
+			}
+		}
+		for (Map.Entry<String, Integer> ref : refs.entrySet()) {
+			if (!declared.containsKey(ref.getKey()) && !resources.contains(ref.getKey())
+					&& !PSEUDO_PARAMETERS.contains(ref.getKey())) {
+				problems.add("Ref to " + ref.getKey() + " at line " + ref.getValue()
+						+ " names no parameter or resource of the template");
+			}
+		}
+		for (Map.Entry<String, Integer> attribute : attributes.entrySet()) {
+			if (!resources.contains(attribute.getKey())) {
+				problems.add("Fn::GetAtt of " + attribute.getKey() + " at line " + attribute.getValue()
+						+ " names no resource of the template");
+			}
+		}
+		return problems;
+	}
+
+	/**
+	 * Reads the declared parameters, and whether each has a default.
+	 */
+	private static void readParameters(JsonParser parser, Map<String, Boolean> declared) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			boolean hasDefault = false;
+			if (parser.nextToken() == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					if ("Default".equals(parser.getCurrentName())) hasDefault = true;
+					parser.nextToken();
+					parser.skipChildren();
+				}
+			} else {
+				parser.skipChildren();
+			}
+			declared.put(name, hasDefault);
+		}
+	}
+
+	/**
+	 * Collects the targets of the <code>Ref</code> and <code>Fn::GetAtt</code> in the current value, with the
+	 * line of their first use.
+	 */
+	private static void readReferences(JsonParser parser, Map<String, Integer> refs, Map<String, Integer> attributes)
+			throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.START_ARRAY) {
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				readReferences(parser, refs, attributes);
+			}
+		} else if (token == JsonToken.START_OBJECT) {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				int line = parser.getCurrentLocation().getLineNr();
+				if ("Ref".equals(name) && value == JsonToken.VALUE_STRING) {
+					if (!refs.containsKey(parser.getText())) refs.put(parser.getText(), line);
+				} else if ("Fn::GetAtt".equals(name) && value == JsonToken.START_ARRAY) {
+					if (parser.nextToken() == JsonToken.VALUE_STRING && !attributes.containsKey(parser.getText())) {
+						attributes.put(parser.getText(), line);
+					}
+					while (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+						readReferences(parser, refs, attributes);
+						parser.nextToken();
+					}
+				} else {
+					readReferences(parser, refs, attributes);
+				}
+			}
+		}
+	}
+
+}
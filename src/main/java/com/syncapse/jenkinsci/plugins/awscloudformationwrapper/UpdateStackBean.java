@@ -48,7 +48,10 @@ public class UpdateStackBean extends AbstractDescribableImpl<UpdateStackBean> {
 	 */
 	private String awsSecretKey;
 
-    private Region awsRegion;
+    /**
+     * Name of the {@link Region}. Older configurations hold the name of the former enum constant, which is the same.
+     */
+    private String awsRegion;
 
     /**
      * Flag on whether to terminate EC2 instances in cloud formation template auto-scaling groups
@@ -64,7 +67,7 @@ public class UpdateStackBean extends AbstractDescribableImpl<UpdateStackBean> {
     @DataBoundConstructor
 	public UpdateStackBean(String stackName,
                            String parameters, long timeout,
-                           String awsAccessKey, String awsSecretKey, Region awsRegion, boolean terminateAutoScaleEC2Resources, boolean waitForInstancesToRestart) {
+                           String awsAccessKey, String awsSecretKey, String awsRegion, boolean terminateAutoScaleEC2Resources, boolean waitForInstancesToRestart) {
 		super();
 		this.stackName = stackName;
 		this.parameters = parameters;
@@ -97,7 +100,7 @@ public class UpdateStackBean extends AbstractDescribableImpl<UpdateStackBean> {
 	}
 
     public Region getAwsRegion(){
-    	return awsRegion;
+    	return Region.fromName(awsRegion);
     }
 
     public boolean getTerminateAutoScaleEC2Resources() {
@@ -192,6 +195,10 @@ public class UpdateStackBean extends AbstractDescribableImpl<UpdateStackBean> {
 			return FormValidation.ok();
 		}
 		
+		public FormValidation doCheckAwsRegion(@QueryParameter String value) {
+			return Region.isKnown(value) ? FormValidation.ok() : FormValidation.error(Region.unknown(value));
+		}
+
 		public ListBoxModel doFillAwsRegionItems() {
             ListBoxModel items = new ListBoxModel();
             for (Region region : Region.values()) {
@@ -0,0 +1,110 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.services.securitytoken.model.AssumeRoleRequest;
+import com.amazonaws.services.securitytoken.model.Credentials;
+
+public class AssumedRoleCredentialsProviderTest {
+
+	private final AtomicInteger stsCalls = new AtomicInteger();
+	private long sessionMillis = 60 * 60 * 1000;
+
+	@After
+	public void tearDown() {
+		AssumedRoleCredentialsProvider.clearSessions();
+	}
+
+	@Test
+	public void when_builds_assume_the_same_role_concurrently_then_sts_is_called_once() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(20);
+		try {
+			List<Future<AWSCredentials>> results = new ArrayList<Future<AWSCredentials>>();
+			for (int i = 0; i < 50; i++) {
+				results.add(executor.submit(new Callable<AWSCredentials>() {
+					public AWSCredentials call() {
+						return newProvider("arn:aws:iam::1:role/deployer").getCredentials();
+					}
+				}));
+			}
+			for (Future<AWSCredentials> result : results) {
+				assertEquals("session-1", ((AWSSessionCredentials) result.get()).getSessionToken());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, stsCalls.get());
+	}
+
+	@Test
+	public void when_the_session_is_about_to_expire_then_it_is_renewed() {
+		sessionMillis = AssumedRoleCredentialsProvider.REFRESH_AHEAD_MILLIS - 1000;
+		newProvider("arn:aws:iam::1:role/deployer").getCredentials();
+		AWSCredentials renewed = newProvider("arn:aws:iam::1:role/deployer").getCredentials();
+
+		assertEquals(2, stsCalls.get());
+		assertEquals("session-2", ((AWSSessionCredentials) renewed).getSessionToken());
+	}
+
+	@Test
+	public void when_roles_differ_then_sessions_are_separate() {
+		newProvider("arn:aws:iam::1:role/deployer").getCredentials();
+		newProvider("arn:aws:iam::1:role/reader").getCredentials();
+
+		assertEquals(2, stsCalls.get());
+	}
+
+	@Test
+	public void when_no_role_is_given_then_the_keys_are_used_directly() {
+		AWSCredentials credentials = StackCredentials.of("key", "secret", false, "", null).getCredentials();
+
+		assertEquals("key", credentials.getAWSAccessKeyId());
+		assertTrue(!(credentials instanceof AWSSessionCredentials));
+	}
+
+	@Test
+	public void when_the_secrets_differ_then_sessions_are_separate() {
+		newProvider("arn:aws:iam::1:role/deployer").getCredentials();
+		newProvider("arn:aws:iam::1:role/deployer", "guessed").getCredentials();
+
+		assertEquals(2, stsCalls.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void when_the_instance_profile_is_not_allowed_then_it_is_refused() {
+		StackCredentials.setInstanceProfileAllowed(false);
+		StackCredentials.of("", "", true, "", null);
+	}
+
+	private AssumedRoleCredentialsProvider newProvider(String roleArn) {
+		return newProvider(roleArn, "secret");
+	}
+
+	private AssumedRoleCredentialsProvider newProvider(String roleArn, String secret) {
+		return new AssumedRoleCredentialsProvider(StackCredentials.forKeys("key", secret), roleArn, null) {
+			@Override
+			protected Credentials assumeRole(AssumeRoleRequest request) {
+				int call = stsCalls.incrementAndGet();
+				return new Credentials().withAccessKeyId("ASIA" + call).withSecretAccessKey("secret" + call)
+						.withSessionToken("session-" + call)
+						.withExpiration(new Date(System.currentTimeMillis() + sessionMillis));
+			}
+		};
+	}
+
+}
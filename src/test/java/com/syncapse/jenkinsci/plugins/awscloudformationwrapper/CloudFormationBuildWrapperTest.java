@@ -2,24 +2,34 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.BuildListener;
 import hudson.model.AbstractBuild;
 import hudson.tasks.BuildWrapper.Environment;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,18 +44,34 @@ public class CloudFormationBuildWrapperTest {
 	@Mock private CloudFormation mockCF1;
 	@Mock private CloudFormation mockCF2;
 	@Mock private AbstractBuild build;
+	@Mock private AbstractBuild build2;
 	@Mock private Launcher launcher;
 	@Mock private BuildListener listener;
 
 	private EnvVars envVars;
+	private FilePath workspace;
 
 	@Before
 	public void setUp() throws Exception {
+		File dir = File.createTempFile("workspace", "");
+		dir.delete();
+		dir.mkdirs();
+		workspace = new FilePath(dir);
+		workspace.child("stack.json").write("{\"Parameters\": {\"Vpc\": {\"Type\": \"String\", \"Default\": \"\"}},\n"
+				+ " \"Resources\": {\"Queue\": {\"Type\": \"AWS::SQS::Queue\"}}}", "UTF-8");
+
 		envVars = new EnvVars();
 		when(build.getEnvironment(listener)).thenReturn(envVars);
+		when(build.getWorkspace()).thenReturn(workspace);
+		when(build2.getWorkspace()).thenReturn(workspace);
 		when(listener.getLogger()).thenReturn(System.out);
 	}
 
+	@After
+	public void tearDown() throws Exception {
+		workspace.deleteRecursive();
+	}
+
 	@Test
 	public void when_1_stack_is_created_on_tearDown_1_stack_is_deleted()
 			throws Exception {
@@ -61,6 +87,57 @@ public class CloudFormationBuildWrapperTest {
 		then_first_stack_is_deleted();
 	}
 
+	@Test
+	public void when_the_2nd_stack_uses_an_output_of_the_1st_then_it_is_created_with_its_value() throws Exception {
+		when_2_stack_are_entered("", "Vpc=$VpcId");
+		when(mockCF1.create()).thenReturn(true);
+		when(mockCF1.getOutputs()).thenReturn(Collections.singletonMap("VpcId", "vpc-1"));
+		when(mockCF2.create()).thenReturn(true);
+
+		wrapper.setUp(build, launcher, listener);
+
+		verify(wrapper).newCloudFormation(((StackBean) argThat(hasProperty("stackName", equalTo("stack2")))),
+				any(StackTemplate.class), eq(Collections.singletonMap("Vpc", "vpc-1")), any(AbstractBuild.class), any(EnvVars.class),
+				any(PrintStream.class));
+	}
+
+	@Test
+	public void when_2_builds_run_at_once_then_each_deletes_only_its_own_stack() throws Exception {
+		when_1_stack_is_entered();
+		when(build2.getEnvironment(listener)).thenReturn(new EnvVars());
+		doReturn(mockCF2).when(wrapper).newCloudFormation(any(StackBean.class), any(StackTemplate.class), any(Map.class), eq(build2),
+				any(EnvVars.class), any(PrintStream.class));
+		when(mockCF2.getAutoDeleteStack()).thenReturn(true);
+		when(mockCF2.create()).thenReturn(true);
+
+		Environment first = wrapper.setUp(build, launcher, listener);
+		Environment second = wrapper.setUp(build2, launcher, listener);
+		first.tearDown(build, listener);
+
+		verify(mockCF1, times(1)).delete();
+		verify(mockCF2, never()).delete();
+		second.tearDown(build2, listener);
+		verify(mockCF2, times(1)).delete();
+		verify(mockCF1, times(1)).delete();
+	}
+
+	@Test
+	public void when_a_stack_with_target_regions_sets_a_region_pool_and_reuse_then_all_three_conflict() {
+		StackBean stackBean = new StackBean("name", "description", "aRecipe", "", 0, "awsAccessKey", "awsSecretKey", true,
+				"EU_Ireland", "pool", true, 0, "US_WEST_Oregon", 0, false, null, false, null, false, null);
+
+		assertEquals(Arrays.asList("awsRegion", "poolName", "reuseStack"),
+				CloudFormationBuildWrapper.conflictingOptions(stackBean));
+	}
+
+	@Test
+	public void when_a_stack_has_no_target_regions_then_nothing_conflicts() {
+		StackBean stackBean = new StackBean("name", "description", "aRecipe", "", 0, "awsAccessKey", "awsSecretKey", true,
+				"EU_Ireland", "pool", true, 0, " ", 0, false, null, false, null, false, null);
+
+		assertTrue(CloudFormationBuildWrapper.conflictingOptions(stackBean).isEmpty());
+	}
+
 	private void then_first_stack_is_deleted() throws Exception {
 		Environment env = wrapper.setUp(build, launcher, listener);
 		verify(mockCF1, times(1)).create();
@@ -75,11 +152,15 @@ public class CloudFormationBuildWrapperTest {
 	}
 
 	private void when_2_stack_are_entered() throws Exception {
+		when_2_stack_are_entered("", "");
+	}
+
+	private void when_2_stack_are_entered(String parameters1, String parameters2) throws Exception {
 		List<StackBean> stackBeans = new ArrayList<StackBean>();
 		stackBeans.add(new StackBean("stack1", "stack description",
-				"{resources: }", "", 0, "accessKey", "secretKey", true, null));
+				"stack.json", parameters1, 0, "accessKey", "secretKey", true, null));
 		stackBeans.add(new StackBean("stack2", "stack2 description",
-				"{resources: }", "", 0, "accessKey", "secretKey", true, null));
+				"stack.json", parameters2, 0, "accessKey", "secretKey", true, null));
 
 		wrapper = spy(new CloudFormationBuildWrapper(stackBeans));
 
@@ -88,12 +169,12 @@ public class CloudFormationBuildWrapperTest {
 		
 		doReturn(mockCF1).when(wrapper).newCloudFormation(
 				((StackBean)argThat(hasProperty("stackName", equalTo("stack1")))),
-				any(AbstractBuild.class), any(EnvVars.class),
+				any(StackTemplate.class), any(Map.class), any(AbstractBuild.class), any(EnvVars.class),
 				any(PrintStream.class));
 
 		doReturn(mockCF2).when(wrapper).newCloudFormation(
 				((StackBean)argThat(hasProperty("stackName", equalTo("stack2")))),
-				any(AbstractBuild.class), any(EnvVars.class),
+				any(StackTemplate.class), any(Map.class), any(AbstractBuild.class), any(EnvVars.class),
 				any(PrintStream.class));
 
 	}
@@ -108,14 +189,14 @@ public class CloudFormationBuildWrapperTest {
 	private void when_1_stack_is_entered() throws Exception {
 		List<StackBean> stackBeans = new ArrayList<StackBean>();
 		stackBeans.add(new StackBean("stack1", "stack description",
-				"{resources: }", "", 0, "accessKey", "secretKey", true, null));
+				"stack.json", "", 0, "accessKey", "secretKey", true, null));
 
 		wrapper = spy(new CloudFormationBuildWrapper(stackBeans));
 
         when(mockCF1.getAutoDeleteStack()).thenReturn(true);
 
         doReturn(mockCF1).when(wrapper).newCloudFormation(any(StackBean.class),
-				any(AbstractBuild.class), any(EnvVars.class),
+				any(StackTemplate.class), any(Map.class), any(AbstractBuild.class), any(EnvVars.class),
 				any(PrintStream.class));
 
 		when(mockCF1.create()).thenReturn(true);
@@ -0,0 +1,119 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.tasks.BuildWrapper.Environment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.Parameter;
+
+public class CloudFormationBulkUpdateBuildWrapperTest {
+
+	private FakeAmazonCloudFormation fake;
+	private AmazonCloudFormation client;
+	private AbstractBuild build;
+	private BuildListener listener;
+
+	@Before
+	public void setUp() throws Exception {
+		fake = new FakeAmazonCloudFormation();
+		fake.setPageSize(2);
+		client = fake.client();
+		for (String name : Arrays.asList("tenant-1", "tenant-2", "tenant-3", "tenant-4", "tenant-5", "shared")) {
+			client.createStack(new CreateStackRequest().withStackName(name)
+					.withParameters(new Parameter().withParameterKey("Version").withParameterValue("1")));
+		}
+
+		build = mock(AbstractBuild.class);
+		listener = mock(BuildListener.class);
+		when(build.getEnvironment(listener)).thenReturn(new EnvVars());
+		when(build.getBuildVariables()).thenReturn(new HashMap<String, String>());
+		when(listener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void when_a_pattern_is_given_then_only_the_matching_stacks_are_updated() throws Exception {
+		newWrapper("tenant-*", 2, 0).setUp(build, mock(Launcher.class), listener);
+
+		for (int i = 1; i <= 5; i++) {
+			assertEquals("2", version("tenant-" + i));
+		}
+		assertEquals("1", version("shared"));
+		verify(build, never()).setResult(Result.FAILURE);
+	}
+
+	@Test
+	public void when_more_stacks_fail_than_tolerated_then_no_more_updates_are_started() throws Exception {
+		newWrapper("tenant-1, missing, tenant-2", 1, 0).setUp(build, mock(Launcher.class), listener);
+
+		assertEquals("2", version("tenant-1"));
+		assertEquals("1", version("tenant-2"));
+		verify(build).setResult(Result.FAILURE);
+	}
+
+	@Test
+	public void when_failures_are_tolerated_then_the_roll_out_goes_on() throws Exception {
+		newWrapper("tenant-1, missing, tenant-2", 1, 1).setUp(build, mock(Launcher.class), listener);
+
+		assertEquals("2", version("tenant-2"));
+		verify(build, never()).setResult(Result.FAILURE);
+	}
+
+	@Test
+	public void when_stacks_are_updated_then_their_outputs_are_exported_to_the_build() throws Exception {
+		Environment environment = newWrapper("tenant-1, tenant-2", 2, 0).setUp(build, mock(Launcher.class), listener);
+
+		Map<String, String> env = new HashMap<String, String>();
+		environment.buildEnvVars(env);
+		assertEquals("2", env.get("tenant-1_Version"));
+		assertEquals("2", env.get("tenant-2_Version"));
+	}
+
+	private String version(String stackName) {
+		return client.describeStacks(new DescribeStacksRequest().withStackName(stackName)).getStacks().get(0)
+				.getParameters().get(0).getParameterValue();
+	}
+
+	private CloudFormationBulkUpdateBuildWrapper newWrapper(String stackNames, int concurrency, int failureTolerance) {
+		BulkUpdateStackBean bean = new BulkUpdateStackBean(stackNames, "Version=2", -12345, "accessKey", "secretKey",
+				null, false, null, concurrency, failureTolerance);
+		return new CloudFormationBulkUpdateBuildWrapper(Arrays.asList(bean)) {
+			@Override
+			protected CloudFormation newCloudFormation(BulkUpdateStackBean stackBean, String stackName, EnvVars env,
+					PrintStream logger) {
+				return new CloudFormation(logger, stackName, null, stackBean.getParsedParameters(env),
+						stackBean.getTimeout(), "accessKey", "secretKey", false, env) {
+					@Override
+					protected AmazonCloudFormation getAWSClient() {
+						return client;
+					}
+
+					@Override
+					protected EC2 getEC2Client() {
+						return null;
+					}
+				};
+			}
+		};
+	}
+
+}
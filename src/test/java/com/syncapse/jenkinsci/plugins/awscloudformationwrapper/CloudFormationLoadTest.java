@@ -0,0 +1,331 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import hudson.EnvVars;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+/**
+ * Runs many simulated builds concurrently against the in-process AWS stand-ins.
+ */
+public class CloudFormationLoadTest {
+
+	private static final int CONCURRENT_BUILDS = 200;
+
+	private FakeAmazonCloudFormation cloudFormation;
+	private FakeAmazonEC2 ec2;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		cloudFormation = new FakeAmazonCloudFormation();
+		cloudFormation.setApiLatencyMillis(2);
+		cloudFormation.setCreateLatencyMillis(200);
+		cloudFormation.setUpdateLatencyMillis(100);
+		cloudFormation.setDeleteLatencyMillis(100);
+		cloudFormation.setPageSize(25);
+
+		ec2 = new FakeAmazonEC2();
+		ec2.setApiLatencyMillis(2);
+
+		executor = Executors.newFixedThreadPool(CONCURRENT_BUILDS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void concurrent_builds_create_update_and_delete_their_stacks() throws Exception {
+		List<Future<Boolean>> builds = startBuilds(new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				return cf.create() && cf.update() && cf.delete();
+			}
+		}, CONCURRENT_BUILDS);
+
+		for (Future<Boolean> build : builds) {
+			assertTrue(build.get());
+		}
+		assertEquals(0, cloudFormation.getStackCount());
+		assertEquals(CONCURRENT_BUILDS, cloudFormation.getCallCount("createStack"));
+		assertEquals(CONCURRENT_BUILDS, cloudFormation.getCallCount("deleteStack"));
+	}
+
+	@Test
+	public void concurrent_builds_recycle_auto_scaling_groups() throws Exception {
+		cloudFormation.withAutoScalingGroups(ec2);
+		ec2.setTerminateLatencyMillis(50);
+		ec2.setLaunchLatencyMillis(50);
+
+		List<Future<Boolean>> builds = startBuilds(new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				return cf.create() && cf.doTerminateAutoScaleEC2Resources() && cf.delete();
+			}
+		}, CONCURRENT_BUILDS / 4);
+
+		for (Future<Boolean> build : builds) {
+			assertTrue(build.get());
+		}
+		assertEquals(CONCURRENT_BUILDS / 4, ec2.getCallCount("terminateInstances"));
+	}
+
+	@Test
+	public void failed_creations_are_reported_without_affecting_other_builds() throws Exception {
+		for (int i = 0; i < CONCURRENT_BUILDS; i += 10) {
+			cloudFormation.failCreation("stack-" + i);
+		}
+
+		List<Future<Boolean>> builds = startBuilds(new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				boolean created = cf.create();
+				cf.delete();
+				return created;
+			}
+		}, CONCURRENT_BUILDS);
+
+		for (int i = 0; i < builds.size(); i++) {
+			assertEquals("stack-" + i, i % 10 != 0, builds.get(i).get());
+		}
+		assertEquals(0, cloudFormation.getStackCount());
+	}
+
+	@Test
+	public void a_failed_resource_fails_the_creation_before_the_rollback_and_the_deletion_waits_for_it() throws Exception {
+		cloudFormation.failCreation("stack-0");
+		CloudFormation cf = newCloudFormation("stack-0");
+
+		cloudFormation.pauseStacks();
+		assertFalse(cf.create());
+		assertEquals(StackStatus.CREATE_IN_PROGRESS.toString(), statusOf("stack-0"));
+
+		cloudFormation.resumeStacks();
+		assertTrue(cf.delete());
+		assertEquals(1, cloudFormation.getCallCount("deleteStack"));
+		assertEquals(0, cloudFormation.getStackCount());
+	}
+
+	@Test
+	public void the_events_of_an_operation_are_paged_through_once_and_not_mixed_with_earlier_ones() throws Exception {
+		cloudFormation.setPageSize(1);
+		assertTrue(newCloudFormation("stack-0").create());
+		CloudFormation cf = newCloudFormation("stack-0", "m1.large");
+		int before = cloudFormation.getCallCount("describeStackEvents");
+
+		assertTrue(cf.update());
+
+		assertEquals(2, cloudFormation.getCallCount("describeStackEvents") - before);
+		assertEquals(2, cf.getStackEvents().size());
+		assertEquals(StackStatus.UPDATE_IN_PROGRESS.toString(), cf.getStackEvents().get(0).getResourceStatus());
+		assertEquals(StackStatus.UPDATE_COMPLETE.toString(), cf.getStackEvents().get(1).getResourceStatus());
+	}
+
+	@Test
+	public void a_stack_kept_for_debugging_is_not_rolled_back() throws Exception {
+		// Without any latency, a stack that was rolled back would already be ROLLBACK_COMPLETE.
+		cloudFormation.setCreateLatencyMillis(0);
+		cloudFormation.failCreation("stack-0");
+		CloudFormation cf = newCloudFormation("stack-0");
+		cf.setDisableRollback(true);
+
+		assertFalse(cf.create());
+
+		assertEquals(StackStatus.CREATE_FAILED.toString(), statusOf("stack-0"));
+	}
+
+	@Test
+	public void throttling_surfaces_as_a_failed_build() throws Exception {
+		cloudFormation.injectThrottling("createStack", 20);
+
+		List<Future<Boolean>> builds = startBuilds(new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				return cf.create();
+			}
+		}, CONCURRENT_BUILDS);
+
+		int failed = 0;
+		for (Future<Boolean> build : builds) {
+			if (!build.get()) failed++;
+		}
+		assertEquals(20, failed);
+		assertEquals(CONCURRENT_BUILDS - 20, cloudFormation.getStackCount());
+	}
+
+	@Test
+	public void injected_errors_fail_the_affected_build_only() throws Exception {
+		cloudFormation.injectFailures("createStack", 1);
+
+		List<Future<Boolean>> builds = startBuilds(new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				return cf.create();
+			}
+		}, 10);
+
+		int failed = 0;
+		for (Future<Boolean> build : builds) {
+			if (!build.get()) failed++;
+		}
+		assertEquals(1, failed);
+		assertFalse(cloudFormation.getStackCount() == 0);
+	}
+
+	@Test
+	public void asynchronous_operations_run_without_a_thread_per_caller() throws Exception {
+		List<CloudFormation> stacks = new ArrayList<CloudFormation>();
+		List<Future<Boolean>> creations = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < CONCURRENT_BUILDS; i++) {
+			CloudFormation cf = newCloudFormation("stack-" + i);
+			stacks.add(cf);
+			creations.add(cf.createAsync());
+		}
+		for (Future<Boolean> creation : creations) {
+			assertTrue(creation.get());
+		}
+
+		List<Future<Boolean>> deletions = new ArrayList<Future<Boolean>>();
+		for (CloudFormation cf : stacks) {
+			deletions.add(cf.deleteAsync());
+		}
+		for (Future<Boolean> deletion : deletions) {
+			assertTrue(deletion.get());
+		}
+		assertEquals(0, cloudFormation.getStackCount());
+	}
+
+	@Test
+	public void aborting_a_creation_stops_the_wait_at_once_and_deletes_the_stack() throws Exception {
+		// The stack is never created, so only the abort can end the wait.
+		cloudFormation.pauseStacks();
+		CloudFormation cf = newCloudFormation("stack-0");
+
+		abort(cf, StackStatus.CREATE_IN_PROGRESS, new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				return cf.create();
+			}
+		});
+		assertEquals(1, cloudFormation.getCallCount("deleteStack"));
+	}
+
+	@Test
+	public void aborting_an_update_cancels_it() throws Exception {
+		assertTrue(newCloudFormation("stack-0").create());
+		cloudFormation.pauseStacks();
+		CloudFormation cf = newCloudFormation("stack-0", "m1.large");
+
+		abort(cf, StackStatus.UPDATE_IN_PROGRESS, new Build() {
+			public boolean run(CloudFormation cf) throws Exception {
+				return cf.update();
+			}
+		});
+		assertEquals(1, cloudFormation.getCallCount("cancelUpdateStack"));
+		assertEquals(StackStatus.UPDATE_ROLLBACK_IN_PROGRESS.toString(), statusOf("stack-0"));
+	}
+
+	private interface Build {
+		boolean run(CloudFormation cf) throws Exception;
+	}
+
+	/**
+	 * Runs the build on a thread of its own and interrupts it once it has seen the stack in the given status.
+	 */
+	private void abort(final CloudFormation cf, final StackStatus waitingIn, final Build build) throws Exception {
+		final CountDownLatch waiting = new CountDownLatch(1);
+		StackState.Listener listener = new StackState.Listener() {
+			public void onTransition(CloudFormation cloudFormation, String from, String to) {
+				if (cloudFormation == cf && waitingIn.toString().equals(to)) waiting.countDown();
+			}
+		};
+		final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					build.run(cf);
+				} catch (Throwable t) {
+					thrown.set(t);
+				}
+			}
+		};
+		StackState.addListener(listener);
+		try {
+			thread.start();
+			assertTrue(waiting.await(10, TimeUnit.SECONDS));
+		} finally {
+			StackState.removeListener(listener);
+		}
+		thread.interrupt();
+		thread.join(10000);
+		assertFalse("still waiting on a stack that never settles", thread.isAlive());
+		assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof InterruptedException);
+	}
+
+	private String statusOf(String stackName) {
+		return cloudFormation.client().describeStacks(new DescribeStacksRequest().withStackName(stackName)).getStacks()
+				.get(0).getStackStatus();
+	}
+
+	private List<Future<Boolean>> startBuilds(final Build build, int count) {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> builds = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < count; i++) {
+			final CloudFormation cf = newCloudFormation("stack-" + i);
+			builds.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					start.await();
+					return build.run(cf);
+				}
+			}));
+		}
+		start.countDown();
+		return builds;
+	}
+
+	private CloudFormation newCloudFormation(String stackName) {
+		return newCloudFormation(stackName, "m1.small");
+	}
+
+	private CloudFormation newCloudFormation(String stackName, String instanceType) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("Environment", stackName);
+		parameters.put("InstanceType", instanceType);
+
+		final PrintStream logger = new PrintStream(new ByteArrayOutputStream());
+		final AmazonCloudFormation client = cloudFormation.client();
+		CloudFormation cf = new CloudFormation(logger, stackName, "{}", parameters, -12345,
+				"accessKey", "secretKey", true, new EnvVars()) {
+			@Override
+			protected AmazonCloudFormation getAWSClient() {
+				return client;
+			}
+
+			@Override
+			protected EC2 getEC2Client() {
+				return new EC2(ec2.ec2Client(), ec2.autoScalingClient(), null, logger, 0);
+			}
+		};
+		return cf;
+	}
+
+}
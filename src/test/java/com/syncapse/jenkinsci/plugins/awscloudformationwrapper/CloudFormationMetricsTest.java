@@ -0,0 +1,86 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+public class CloudFormationMetricsTest {
+
+	private final CloudFormationMetrics metrics = new CloudFormationMetrics();
+
+	@Test
+	public void when_operations_are_recorded_then_they_add_up_per_operation_region_and_stack() {
+		metrics.record("create", "us-east-1", "stack", 100, true, 4);
+		metrics.record("create", "us-east-1", "stack", 300, false, 2);
+		metrics.record("describeStacks", "us-east-1", "stack", 20, true, 0);
+
+		List<CloudFormationMetrics.Series> series = metrics.getSeries();
+		assertEquals(2, series.size());
+		CloudFormationMetrics.Series create = series.get(0);
+		assertEquals("create", create.getOperation());
+		assertEquals(2, create.getCount());
+		assertEquals(1, create.getFailures());
+		assertEquals(200, create.getMeanMillis());
+		assertEquals(300, create.getMaxMillis());
+		assertEquals(6, create.getPolls());
+		assertEquals(3.0, create.getPollsPerWait(), 0);
+		assertEquals(0.0, series.get(1).getPollsPerWait(), 0);
+	}
+
+	@Test
+	public void when_there_are_too_many_stacks_then_new_ones_share_one_series() {
+		for (int i = 0; i < CloudFormationMetrics.MAX_SERIES; i++) {
+			metrics.record("create", "us-east-1", "stack-" + i, 10, true, 1);
+		}
+		metrics.record("create", "us-east-1", "new-stack", 10, true, 1);
+		metrics.record("create", "us-east-1", "other-new-stack", 10, true, 1);
+		metrics.record("create", "us-east-1", "stack-0", 10, true, 1);
+
+		List<CloudFormationMetrics.Series> series = metrics.getSeries();
+		assertEquals(CloudFormationMetrics.MAX_SERIES + 1, series.size());
+		for (CloudFormationMetrics.Series s : series) {
+			if (CloudFormationMetrics.OTHER_STACKS.equals(s.getStack())) assertEquals(2, s.getCount());
+			if ("stack-0".equals(s.getStack())) assertEquals(2, s.getCount());
+		}
+	}
+
+	@Test
+	public void when_exported_then_the_json_has_the_bucket_bounds_and_every_series() {
+		metrics.record("update", "eu-west-1", "stack", 40, true, 3);
+
+		JSONObject json = metrics.toJSON();
+
+		assertEquals(LatencyHistogram.BUCKET_BOUNDS.length, json.getJSONArray("bucketBoundsMillis").size());
+		JSONObject series = json.getJSONArray("series").getJSONObject(0);
+		assertEquals("update", series.getString("operation"));
+		assertEquals("eu-west-1", series.getString("region"));
+		assertEquals(1, series.getLong("count"));
+		assertEquals(40, series.getLong("p50Millis"));
+		assertEquals(LatencyHistogram.BUCKET_BOUNDS.length + 1, series.getJSONArray("buckets").size());
+	}
+
+	@Test
+	public void when_a_stack_leaves_a_status_in_progress_then_the_time_in_it_is_recorded() {
+		CloudFormation cloudFormation = mock(CloudFormation.class);
+		when(cloudFormation.getAwsRegion()).thenReturn(Region.US_East_Northern_Virginia);
+		when(cloudFormation.getExpandedStackName()).thenReturn("stack");
+		CloudFormationMetrics.StatusDurations durations = new CloudFormationMetrics.StatusDurations(metrics);
+
+		durations.onTransition(cloudFormation, null, "CREATE_IN_PROGRESS");
+		durations.onTransition(cloudFormation, "CREATE_IN_PROGRESS", "CREATE_COMPLETE");
+		durations.onTransition(cloudFormation, "CREATE_COMPLETE", "DELETE_IN_PROGRESS");
+
+		List<CloudFormationMetrics.Series> series = metrics.getSeries();
+		assertEquals(1, series.size());
+		assertEquals("status:CREATE_IN_PROGRESS", series.get(0).getOperation());
+		assertEquals("stack", series.get(0).getStack());
+		assertEquals(1, series.get(0).getCount());
+	}
+
+}
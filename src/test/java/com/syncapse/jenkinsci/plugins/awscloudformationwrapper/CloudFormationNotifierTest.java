@@ -0,0 +1,83 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+
+public class CloudFormationNotifierTest {
+
+	private FakeAmazonCloudFormation fake;
+	private AmazonCloudFormation client;
+	private AbstractBuild build;
+	private BuildListener listener;
+
+	@Before
+	public void setUp() throws Exception {
+		fake = new FakeAmazonCloudFormation();
+		fake.setPageSize(2);
+		fake.setDeleteLatencyMillis(50);
+		client = fake.client();
+		for (String name : Arrays.asList("feature-a", "feature-b", "feature-c", "main")) {
+			client.createStack(new CreateStackRequest().withStackName(name));
+		}
+
+		build = mock(AbstractBuild.class);
+		listener = mock(BuildListener.class);
+		when(build.getEnvironment(listener)).thenReturn(new EnvVars());
+		when(listener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void when_a_pattern_is_given_then_the_matching_stacks_are_deleted_with_one_listing() throws Exception {
+		assertTrue(newNotifier("feature-*").perform(build, mock(Launcher.class), listener));
+
+		assertEquals(2, fake.getCallCount("listStacks"));
+		assertEquals(3, fake.getCallCount("deleteStack"));
+		assertEquals(1, fake.getStackCount());
+	}
+
+	@Test
+	public void when_stack_names_are_listed_then_no_listing_is_needed() throws Exception {
+		assertTrue(newNotifier("feature-a, main").perform(build, mock(Launcher.class), listener));
+
+		assertEquals(2, fake.getStackCount());
+		assertEquals(2, fake.getCallCount("deleteStack"));
+	}
+
+	private CloudFormationNotifier newNotifier(String stackName) {
+		SimpleStackBean bean = new SimpleStackBean(stackName, "accessKey", "secretKey", null);
+		return new CloudFormationNotifier(Arrays.asList(bean)) {
+			@Override
+			protected CloudFormation newCloudFormation(SimpleStackBean stack, String stackName, EnvVars envVars,
+					PrintStream logger) {
+				return new CloudFormation(logger, stackName, "", null, -12345, "accessKey", "secretKey", false, envVars) {
+					@Override
+					protected AmazonCloudFormation getAWSClient() {
+						return client;
+					}
+
+					@Override
+					protected EC2 getEC2Client() {
+						return null;
+					}
+				};
+			}
+		};
+	}
+
+}
@@ -112,7 +112,7 @@ public class CloudFormationTest {
 	}
 
     @Test
-    public void update_stack_waits_for_update() {
+    public void update_stack_waits_for_update() throws Exception {
         when(stack.getStackStatus()).thenReturn(StackStatus.UPDATE_COMPLETE.toString());
         boolean result = cf.update();
         assertTrue(result);
@@ -120,7 +120,7 @@ public class CloudFormationTest {
     }
 
     @Test
-    public void update_stack_sets_params_correctly() {
+    public void update_stack_sets_params_correctly() throws Exception {
         when(stack.getStackStatus()).thenReturn(StackStatus.UPDATE_COMPLETE.toString());
         boolean result = cf.update();
         assertTrue(result);
@@ -145,7 +145,7 @@ public class CloudFormationTest {
     }
 
     @Test
-    public void create_stack_timeout() {
+    public void create_stack_timeout() throws Exception {
         cf.setTimeout(1);
         when(stack.getStackStatus()).thenReturn(StackStatus.CREATE_IN_PROGRESS.toString());
         try {
@@ -158,7 +158,7 @@ public class CloudFormationTest {
     }
 
     @Test
-    public void update_stack_timeout() {
+    public void update_stack_timeout() throws Exception {
         cf.setTimeout(1);
         when(stack.getStackStatus()).thenReturn(StackStatus.UPDATE_IN_PROGRESS.toString());
         try {
@@ -171,35 +171,35 @@ public class CloudFormationTest {
     }
 
     @Test
-    public void update_stack_fails() {
+    public void update_stack_fails() throws Exception {
         when(stack.getStackStatus()).thenReturn(StackStatus.UPDATE_ROLLBACK_COMPLETE.toString());
         boolean result = cf.update();
         assertFalse(result);
     }
 
     @Test
-    public void update_stack_no_updates_needed() {
+    public void update_stack_no_updates_needed() throws Exception {
         when(awsClient.updateStack(any(UpdateStackRequest.class))).thenThrow(new AmazonServiceException("No updates are to be performed"));
         boolean result = cf.update();
         assertTrue(result);
     }
 
     @Test
-    public void update_stack_aws_service_exception() {
+    public void update_stack_aws_service_exception() throws Exception {
         when(awsClient.updateStack(any(UpdateStackRequest.class))).thenThrow(new AmazonServiceException("Some service exception"));
         boolean result = cf.update();
         assertFalse(result);
     }
 
     @Test
-    public void terminate_autoscale_ec2_resources_none_found() {
+    public void terminate_autoscale_ec2_resources_none_found() throws Exception {
         when(awsClient.listStackResources(any(ListStackResourcesRequest.class))).thenReturn(new ListStackResourcesResult().withStackResourceSummaries(Arrays.asList(new StackResourceSummary().withResourceType("Blah").withPhysicalResourceId("blah"))));
         boolean result = cf.doTerminateAutoScaleEC2Resources();
         verify(ec2Client, times(0)).stopInstancesInScalingGroup(anyString(), anyBoolean());
     }
 
     @Test
-    public void terminate_autoscale_ec2_resources() {
+    public void terminate_autoscale_ec2_resources() throws Exception {
         when(awsClient.listStackResources(any(ListStackResourcesRequest.class))).thenReturn(new ListStackResourcesResult().withStackResourceSummaries(Arrays.asList(new StackResourceSummary().withResourceType("AWS::AutoScaling::AutoScalingGroup").withPhysicalResourceId("someid"))));
         boolean result = cf.doTerminateAutoScaleEC2Resources();
         verify(ec2Client, times(1)).stopInstancesInScalingGroup("someid", false);
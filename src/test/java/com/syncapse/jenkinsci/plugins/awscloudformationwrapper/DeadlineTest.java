@@ -0,0 +1,43 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DeadlineTest {
+
+	@Test
+	public void when_no_phase_runs_then_the_budget_is_not_spent() throws Exception {
+		Deadline deadline = new Deadline(1);
+		Thread.sleep(1100);
+		assertFalse(deadline.isExpired());
+
+		deadline.start();
+		Thread.sleep(1100);
+		deadline.stop();
+		assertTrue(deadline.isExpired());
+	}
+
+	@Test
+	public void when_phases_overlap_then_the_time_is_spent_once() throws Exception {
+		Deadline deadline = new Deadline(2);
+		deadline.start();
+		deadline.start();
+		Thread.sleep(1100);
+		deadline.stop();
+		deadline.stop();
+		assertFalse(deadline.isExpired());
+	}
+
+	@Test
+	public void an_unlimited_deadline_never_expires() throws Exception {
+		Deadline deadline = Deadline.unlimited();
+		deadline.start();
+		Thread.sleep(10);
+		assertFalse(deadline.isExpired());
+		assertEquals(Long.MAX_VALUE, deadline.remainingMillis());
+	}
+
+}
@@ -0,0 +1,353 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.AlreadyExistsException;
+import com.amazonaws.services.cloudformation.model.CancelUpdateStackRequest;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+import com.amazonaws.services.cloudformation.model.CreateStackResult;
+import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.ListStackResourcesRequest;
+import com.amazonaws.services.cloudformation.model.ListStackResourcesResult;
+import com.amazonaws.services.cloudformation.model.ListStacksRequest;
+import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+import com.amazonaws.services.cloudformation.model.StackResourceSummary;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+import com.amazonaws.services.cloudformation.model.Tag;
+import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
+import com.amazonaws.services.cloudformation.model.UpdateStackResult;
+import com.amazonaws.services.cloudformation.model.ValidateTemplateRequest;
+import com.amazonaws.services.cloudformation.model.ValidateTemplateResult;
+
+/**
+ * In-process stand-in for the CloudFormation API. Stacks move through their states on a wall clock with
+ * configurable latencies, listings are paginated, and every parameter is echoed back as a stack output.
+ */
+class FakeAmazonCloudFormation extends FakeAwsService {
+
+	private final AtomicInteger stackIds = new AtomicInteger();
+	private final Map<String, FakeStack> stacks = new LinkedHashMap<String, FakeStack>();
+	private final List<StackSummary> deletedStacks = new ArrayList<StackSummary>();
+	private final Set<String> failingCreations = new HashSet<String>();
+
+	private volatile long createLatencyMillis;
+	private volatile long updateLatencyMillis;
+	private volatile long deleteLatencyMillis;
+	private volatile int pageSize = 100;
+	private volatile FakeAmazonEC2 ec2;
+	private volatile boolean paused;
+
+	public void setCreateLatencyMillis(long createLatencyMillis) {
+		this.createLatencyMillis = createLatencyMillis;
+	}
+
+	public void setUpdateLatencyMillis(long updateLatencyMillis) {
+		this.updateLatencyMillis = updateLatencyMillis;
+	}
+
+	public void setDeleteLatencyMillis(long deleteLatencyMillis) {
+		this.deleteLatencyMillis = deleteLatencyMillis;
+	}
+
+	/**
+	 * Maximum number of items returned per page by the describe and list calls.
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Gives every stack created from now on an auto scaling group of the given size in the EC2 stand-in.
+	 */
+	public void withAutoScalingGroups(FakeAmazonEC2 ec2) {
+		this.ec2 = ec2;
+	}
+
+	/**
+	 * Keeps every stack in its current status, however long it has been in it, until {@link #resumeStacks()}.
+	 */
+	public void pauseStacks() {
+		paused = true;
+	}
+
+	public void resumeStacks() {
+		paused = false;
+	}
+
+	public AmazonCloudFormation client() {
+		return newClient(AmazonCloudFormation.class);
+	}
+
+	public synchronized int getStackCount() {
+		return stacks.size();
+	}
+
+	/**
+	 * Makes a resource of the named stack fail as soon as it is created. The stack then goes on "provisioning",
+	 * rolls back for as long again, unless rollback is disabled, and ends in ROLLBACK_COMPLETE or CREATE_FAILED.
+	 * The stack can not be deleted until its rollback is over.
+	 */
+	public synchronized void failCreation(String stackName) {
+		failingCreations.add(stackName);
+	}
+
+	// CloudFormation API
+
+	synchronized CreateStackResult createStack(CreateStackRequest request) {
+		if (stacks.containsKey(request.getStackName())) {
+			throw new AlreadyExistsException("Stack [" + request.getStackName() + "] already exists");
+		}
+		FakeStack stack = new FakeStack(request.getStackName(), "arn:aws:cloudformation:fake:stack/"
+				+ request.getStackName() + "/" + stackIds.incrementAndGet());
+		stack.parameters = toMap(request.getParameters(), null);
+		stack.tags = new ArrayList<Tag>(request.getTags());
+		stack.failCreation = failingCreations.contains(stack.name);
+		stack.disableRollback = Boolean.TRUE.equals(request.getDisableRollback());
+		stacks.put(stack.name, stack);
+		stack.transition(StackStatus.CREATE_IN_PROGRESS, StackStatus.CREATE_COMPLETE, createLatencyMillis);
+		if (ec2 != null) {
+			stack.autoScalingGroup = stack.name + "-asg";
+			ec2.createAutoScalingGroup(stack.autoScalingGroup, 2);
+		}
+		return new CreateStackResult().withStackId(stack.id);
+	}
+
+	synchronized UpdateStackResult updateStack(UpdateStackRequest request) {
+		FakeStack stack = existingStack(request.getStackName());
+		if (!stack.isSettled()) {
+			throw serviceException("Stack " + stack.name + " is in " + stack.status() + " state and can not be updated.",
+					"ValidationError", 400);
+		}
+		Map<String, String> parameters = toMap(request.getParameters(), stack.parameters);
+		if (parameters.equals(stack.parameters)) {
+			throw serviceException("No updates are to be performed.", "ValidationError", 400);
+		}
+		stack.parameters = parameters;
+		stack.lastUpdated = new Date();
+		stack.transition(StackStatus.UPDATE_IN_PROGRESS, StackStatus.UPDATE_COMPLETE, updateLatencyMillis);
+		return new UpdateStackResult().withStackId(stack.id);
+	}
+
+	synchronized void cancelUpdateStack(CancelUpdateStackRequest request) {
+		FakeStack stack = existingStack(request.getStackName());
+		if (stack.status() != StackStatus.UPDATE_IN_PROGRESS) {
+			throw serviceException("CancelUpdateStack cannot be called from current stack status.", "ValidationError", 400);
+		}
+		stack.transition(StackStatus.UPDATE_ROLLBACK_IN_PROGRESS, StackStatus.UPDATE_ROLLBACK_COMPLETE, updateLatencyMillis);
+	}
+
+	synchronized void deleteStack(DeleteStackRequest request) {
+		FakeStack stack = stacks.get(request.getStackName());
+		if (stack == null || stack.status() == StackStatus.DELETE_IN_PROGRESS) return;
+		if (stack.status() == StackStatus.ROLLBACK_IN_PROGRESS
+				|| (stack.failCreation && stack.status() == StackStatus.CREATE_IN_PROGRESS)) {
+			throw serviceException("Stack " + stack.name + " is in " + stack.status() + " state and can not be deleted.",
+					"ValidationError", 400);
+		}
+		stack.transition(StackStatus.DELETE_IN_PROGRESS, StackStatus.DELETE_COMPLETE, deleteLatencyMillis);
+	}
+
+	synchronized DescribeStacksResult describeStacks() {
+		return describeStacks(new DescribeStacksRequest());
+	}
+
+	synchronized DescribeStacksResult describeStacks(DescribeStacksRequest request) {
+		purgeDeletedStacks();
+		if (request.getStackName() != null) {
+			return new DescribeStacksResult().withStacks(existingStack(request.getStackName()).toStack());
+		}
+		List<FakeStack> all = new ArrayList<FakeStack>(stacks.values());
+		int start = pageStart(request.getNextToken());
+		int end = Math.min(start + pageSize, all.size());
+		List<Stack> page = new ArrayList<Stack>();
+		for (FakeStack stack : all.subList(start, end)) {
+			page.add(stack.toStack());
+		}
+		return new DescribeStacksResult().withStacks(page).withNextToken(nextToken(end, all.size()));
+	}
+
+	synchronized DescribeStackEventsResult describeStackEvents(DescribeStackEventsRequest request) {
+		FakeStack stack = existingStack(request.getStackName());
+		List<StackEvent> newestFirst = new ArrayList<StackEvent>(stack.events);
+		Collections.reverse(newestFirst);
+		int start = pageStart(request.getNextToken());
+		int end = Math.min(start + pageSize, newestFirst.size());
+		return new DescribeStackEventsResult().withStackEvents(new ArrayList<StackEvent>(newestFirst.subList(start, end)))
+				.withNextToken(nextToken(end, newestFirst.size()));
+	}
+
+	synchronized ListStackResourcesResult listStackResources(ListStackResourcesRequest request) {
+		FakeStack stack = existingStack(request.getStackName());
+		List<StackResourceSummary> resources = new ArrayList<StackResourceSummary>();
+		if (stack.autoScalingGroup != null) {
+			resources.add(new StackResourceSummary().withLogicalResourceId("AutoScalingGroup")
+					.withPhysicalResourceId(stack.autoScalingGroup).withResourceType("AWS::AutoScaling::AutoScalingGroup")
+					.withResourceStatus("CREATE_COMPLETE").withLastUpdatedTimestamp(stack.created));
+		}
+		return new ListStackResourcesResult().withStackResourceSummaries(resources);
+	}
+
+	synchronized ListStacksResult listStacks() {
+		return listStacks(new ListStacksRequest());
+	}
+
+	synchronized ListStacksResult listStacks(ListStacksRequest request) {
+		purgeDeletedStacks();
+		List<StackSummary> all = new ArrayList<StackSummary>(deletedStacks);
+		for (FakeStack stack : stacks.values()) {
+			all.add(stack.toSummary());
+		}
+		List<String> filters = request.getStackStatusFilters();
+		if (filters != null && !filters.isEmpty()) {
+			List<StackSummary> matching = new ArrayList<StackSummary>();
+			for (StackSummary summary : all) {
+				if (filters.contains(summary.getStackStatus())) matching.add(summary);
+			}
+			all = matching;
+		}
+		int start = pageStart(request.getNextToken());
+		int end = Math.min(start + pageSize, all.size());
+		return new ListStacksResult().withStackSummaries(new ArrayList<StackSummary>(all.subList(start, end)))
+				.withNextToken(nextToken(end, all.size()));
+	}
+
+	ValidateTemplateResult validateTemplate(ValidateTemplateRequest request) {
+		return new ValidateTemplateResult();
+	}
+
+	// Internals
+
+	private FakeStack existingStack(String stackName) {
+		purgeDeletedStacks();
+		FakeStack stack = stacks.get(stackName);
+		if (stack == null) {
+			throw serviceException("Stack with id " + stackName + " does not exist", "ValidationError", 400);
+		}
+		return stack;
+	}
+
+	private void purgeDeletedStacks() {
+		for (FakeStack stack : new ArrayList<FakeStack>(stacks.values())) {
+			if (stack.status() == StackStatus.DELETE_COMPLETE) {
+				stacks.remove(stack.name);
+				deletedStacks.add(stack.toSummary());
+				if (ec2 != null && stack.autoScalingGroup != null) ec2.deleteAutoScalingGroup(stack.autoScalingGroup);
+			}
+		}
+	}
+
+	private static Map<String, String> toMap(List<Parameter> parameters, Map<String, String> previous) {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		if (parameters == null) return previous != null ? new LinkedHashMap<String, String>(previous) : result;
+		for (Parameter parameter : parameters) {
+			if (Boolean.TRUE.equals(parameter.getUsePreviousValue()) && previous != null) {
+				result.put(parameter.getParameterKey(), previous.get(parameter.getParameterKey()));
+			} else {
+				result.put(parameter.getParameterKey(), parameter.getParameterValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A stack whose status is derived from the time its last transition was started.
+	 */
+	private class FakeStack {
+		final String name;
+		final String id;
+		final Date created = new Date();
+		final List<StackEvent> events = new ArrayList<StackEvent>();
+		Date lastUpdated;
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		String autoScalingGroup;
+		List<Tag> tags = new ArrayList<Tag>();
+		boolean failCreation;
+		boolean disableRollback;
+
+		private StackStatus current;
+		private StackStatus target;
+		private long settlesAt;
+		private long latencyMillis;
+
+		FakeStack(String name, String id) {
+			this.name = name;
+			this.id = id;
+		}
+
+		void transition(StackStatus inProgress, StackStatus settled, long latencyMillis) {
+			current = inProgress;
+			target = settled;
+			settlesAt = System.currentTimeMillis() + latencyMillis;
+			this.latencyMillis = latencyMillis;
+			event(inProgress);
+			if (failCreation && settled == StackStatus.CREATE_COMPLETE) {
+				target = disableRollback ? StackStatus.CREATE_FAILED : StackStatus.ROLLBACK_IN_PROGRESS;
+				events.add(new StackEvent().withEventId(name + "-" + events.size()).withStackId(id).withStackName(name)
+						.withLogicalResourceId("Instance").withResourceType("AWS::EC2::Instance")
+						.withResourceStatus("CREATE_FAILED").withResourceStatusReason("Simulated failure")
+						.withTimestamp(new Date()));
+			}
+		}
+
+		StackStatus status() {
+			while (!paused && target != null && System.currentTimeMillis() >= settlesAt) {
+				current = target;
+				target = null;
+				event(current);
+				if (current == StackStatus.ROLLBACK_IN_PROGRESS) {
+					target = StackStatus.ROLLBACK_COMPLETE;
+					settlesAt += latencyMillis;
+				}
+			}
+			return current;
+		}
+
+		boolean isSettled() {
+			return status() != null && target == null;
+		}
+
+		private void event(StackStatus status) {
+			events.add(new StackEvent().withEventId(name + "-" + events.size()).withStackId(id).withStackName(name)
+					.withLogicalResourceId(name).withPhysicalResourceId(id).withResourceType("AWS::CloudFormation::Stack")
+					.withResourceStatus(status.toString()).withTimestamp(new Date()));
+		}
+
+		Stack toStack() {
+			List<Parameter> stackParameters = new ArrayList<Parameter>();
+			List<Output> outputs = new ArrayList<Output>();
+			for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+				stackParameters.add(new Parameter().withParameterKey(parameter.getKey()).withParameterValue(parameter.getValue()));
+				outputs.add(new Output().withOutputKey(parameter.getKey()).withOutputValue(parameter.getValue()));
+			}
+			StackStatus status = status();
+			return new Stack().withStackName(name).withStackId(id).withStackStatus(status.toString())
+					.withCreationTime(created).withLastUpdatedTime(lastUpdated)
+					.withParameters(stackParameters).withTags(tags).withOutputs(status == StackStatus.CREATE_COMPLETE
+							|| status == StackStatus.UPDATE_COMPLETE ? outputs : new ArrayList<Output>());
+		}
+
+		StackSummary toSummary() {
+			return new StackSummary().withStackName(name).withStackId(id).withStackStatus(status().toString())
+					.withCreationTime(created).withLastUpdatedTime(lastUpdated);
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.InstanceStateName;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.amazonaws.services.ec2.model.TerminateInstancesResult;
+
+/**
+ * In-process stand-in for the EC2 and Auto Scaling APIs. Auto scaling groups replace terminated instances,
+ * and instances go through their states with configurable termination and launch latencies.
+ */
+class FakeAmazonEC2 extends FakeAwsService {
+
+	private final AtomicInteger instanceIds = new AtomicInteger();
+	private final Map<String, FakeInstance> instances = new LinkedHashMap<String, FakeInstance>();
+	private final Map<String, List<FakeInstance>> groups = new LinkedHashMap<String, List<FakeInstance>>();
+	private final Map<String, Integer> minSizes = new LinkedHashMap<String, Integer>();
+
+	private volatile long terminateLatencyMillis;
+	private volatile long launchLatencyMillis;
+
+	private final AmazonEC2 ec2Client = newClient(AmazonEC2.class);
+	private final AmazonAutoScaling autoScalingClient = newClient(AmazonAutoScaling.class);
+
+	public void setTerminateLatencyMillis(long terminateLatencyMillis) {
+		this.terminateLatencyMillis = terminateLatencyMillis;
+	}
+
+	public void setLaunchLatencyMillis(long launchLatencyMillis) {
+		this.launchLatencyMillis = launchLatencyMillis;
+	}
+
+	public AmazonEC2 ec2Client() {
+		return ec2Client;
+	}
+
+	public AmazonAutoScaling autoScalingClient() {
+		return autoScalingClient;
+	}
+
+	public synchronized void createAutoScalingGroup(String name, int minSize) {
+		List<FakeInstance> members = new ArrayList<FakeInstance>();
+		for (int i = 0; i < minSize; i++) {
+			members.add(launch(0));
+		}
+		groups.put(name, members);
+		minSizes.put(name, minSize);
+	}
+
+	public synchronized void deleteAutoScalingGroup(String name) {
+		List<FakeInstance> members = groups.remove(name);
+		minSizes.remove(name);
+		if (members == null) return;
+		for (FakeInstance instance : members) {
+			instance.terminate(0);
+		}
+	}
+
+	// EC2 API
+
+	synchronized TerminateInstancesResult terminateInstances(TerminateInstancesRequest request) {
+		for (String id : request.getInstanceIds()) {
+			FakeInstance instance = instances.get(id);
+			if (instance == null) {
+				throw serviceException("The instance ID '" + id + "' does not exist", "InvalidInstanceID.NotFound", 400);
+			}
+			instance.terminate(terminateLatencyMillis);
+		}
+		return new TerminateInstancesResult();
+	}
+
+	synchronized DescribeInstancesResult describeInstances(DescribeInstancesRequest request) {
+		List<Instance> result = new ArrayList<Instance>();
+		for (String id : request.getInstanceIds()) {
+			FakeInstance instance = instances.get(id);
+			if (instance != null) {
+				result.add(new Instance().withInstanceId(id).withState(new InstanceState().withName(instance.state().toString())));
+			}
+		}
+		return new DescribeInstancesResult().withReservations(new Reservation().withInstances(result));
+	}
+
+	// Auto Scaling API
+
+	synchronized DescribeAutoScalingGroupsResult describeAutoScalingGroups(DescribeAutoScalingGroupsRequest request) {
+		List<AutoScalingGroup> result = new ArrayList<AutoScalingGroup>();
+		for (String name : request.getAutoScalingGroupNames()) {
+			List<FakeInstance> members = groups.get(name);
+			if (members == null) continue;
+			replaceTerminatedInstances(members, minSizes.get(name));
+
+			List<com.amazonaws.services.autoscaling.model.Instance> groupInstances = new ArrayList<com.amazonaws.services.autoscaling.model.Instance>();
+			for (FakeInstance instance : members) {
+				groupInstances.add(new com.amazonaws.services.autoscaling.model.Instance().withInstanceId(instance.id)
+						.withHealthStatus(instance.state() == InstanceStateName.Running ? "Healthy" : "Unhealthy")
+						.withLifecycleState(instance.state() == InstanceStateName.Running ? "InService" : "Pending"));
+			}
+			result.add(new AutoScalingGroup().withAutoScalingGroupName(name).withMinSize(minSizes.get(name))
+					.withMaxSize(minSizes.get(name)).withDesiredCapacity(minSizes.get(name)).withInstances(groupInstances));
+		}
+		return new DescribeAutoScalingGroupsResult().withAutoScalingGroups(result);
+	}
+
+	// Internals
+
+	private void replaceTerminatedInstances(List<FakeInstance> members, int minSize) {
+		for (FakeInstance instance : new ArrayList<FakeInstance>(members)) {
+			if (instance.terminating) members.remove(instance);
+		}
+		while (members.size() < minSize) {
+			members.add(launch(launchLatencyMillis));
+		}
+	}
+
+	private FakeInstance launch(long latencyMillis) {
+		FakeInstance instance = new FakeInstance("i-" + Integer.toHexString(0x10000000 + instanceIds.incrementAndGet()));
+		instance.transition(InstanceStateName.Pending, InstanceStateName.Running, latencyMillis);
+		instances.put(instance.id, instance);
+		return instance;
+	}
+
+	private static class FakeInstance {
+		final String id;
+		boolean terminating;
+
+		private InstanceStateName current;
+		private InstanceStateName target;
+		private long settlesAt;
+
+		FakeInstance(String id) {
+			this.id = id;
+		}
+
+		void terminate(long latencyMillis) {
+			terminating = true;
+			transition(InstanceStateName.ShuttingDown, InstanceStateName.Terminated, latencyMillis);
+		}
+
+		void transition(InstanceStateName inProgress, InstanceStateName settled, long latencyMillis) {
+			current = inProgress;
+			target = settled;
+			settlesAt = System.currentTimeMillis() + latencyMillis;
+		}
+
+		InstanceStateName state() {
+			if (target != null && System.currentTimeMillis() >= settlesAt) {
+				current = target;
+				target = null;
+			}
+			return current;
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+
+/**
+ * Base of the in-process AWS stand-ins. Every call made through the proxied client interface goes through
+ * {@link #invoke(Object, Method, Object[])}, which models network latency, throttling and injected errors
+ * before dispatching to the method of the same name on the concrete fake.
+ */
+abstract class FakeAwsService implements InvocationHandler {
+
+	private final Random random = new Random(42);
+	private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+	private final Map<String, AtomicInteger> injectedFailures = new ConcurrentHashMap<String, AtomicInteger>();
+	private final Map<String, AtomicInteger> injectedThrottling = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private volatile long apiLatencyMillis;
+	private volatile double failureRate;
+
+	/**
+	 * Round trip time added to every API call.
+	 */
+	public void setApiLatencyMillis(long apiLatencyMillis) {
+		this.apiLatencyMillis = apiLatencyMillis;
+	}
+
+	/**
+	 * Probability (0..1) of any API call failing with an internal error.
+	 */
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	/**
+	 * Makes the next <code>times</code> calls to the given API method fail with an internal error.
+	 */
+	public void injectFailures(String methodName, int times) {
+		injectedFailures.put(methodName, new AtomicInteger(times));
+	}
+
+	/**
+	 * Makes the next <code>times</code> calls to the given API method fail with a throttling error.
+	 */
+	public void injectThrottling(String methodName, int times) {
+		injectedThrottling.put(methodName, new AtomicInteger(times));
+	}
+
+	public int getCallCount(String methodName) {
+		AtomicInteger count = calls.get(methodName);
+		return count == null ? 0 : count.get();
+	}
+
+	protected <T> T newClient(Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this));
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if (name.equals("setEndpoint") || name.equals("setRegion") || name.equals("shutdown")
+				|| name.equals("getCachedResponseMetadata")) {
+			return null;
+		}
+		if (name.equals("toString")) return getClass().getSimpleName();
+		if (name.equals("hashCode")) return System.identityHashCode(proxy);
+		if (name.equals("equals")) return proxy == args[0];
+
+		count(name);
+		if (apiLatencyMillis > 0) Thread.sleep(apiLatencyMillis);
+		throttle(name);
+		failIfInjected(name);
+
+		Method target = findHandler(name, method.getParameterTypes());
+		try {
+			return target.invoke(this, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Method findHandler(String name, Class<?>[] parameterTypes) {
+		try {
+			Method handler = getClass().getDeclaredMethod(name, parameterTypes);
+			handler.setAccessible(true);
+			return handler;
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException(getClass().getSimpleName() + " does not implement " + name);
+		}
+	}
+
+	private void count(String name) {
+		AtomicInteger count = calls.get(name);
+		if (count == null) {
+			synchronized (calls) {
+				count = calls.get(name);
+				if (count == null) {
+					count = new AtomicInteger();
+					calls.put(name, count);
+				}
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	private void throttle(String name) {
+		AtomicInteger remaining = injectedThrottling.get(name);
+		if (remaining != null && remaining.getAndDecrement() > 0) {
+			throw serviceException("Rate exceeded", "Throttling", 400);
+		}
+	}
+
+	private void failIfInjected(String name) {
+		AtomicInteger remaining = injectedFailures.get(name);
+		boolean fail = remaining != null && remaining.getAndDecrement() > 0;
+		synchronized (random) {
+			fail = fail || (failureRate > 0 && random.nextDouble() < failureRate);
+		}
+		if (fail) {
+			throw serviceException("Injected failure calling " + name, "InternalFailure", 500);
+		}
+	}
+
+	protected static AmazonServiceException serviceException(String message, String errorCode, int statusCode) {
+		AmazonServiceException e = new AmazonServiceException(message);
+		e.setErrorCode(errorCode);
+		e.setStatusCode(statusCode);
+		e.setErrorType(statusCode >= 500 ? ErrorType.Service : ErrorType.Client);
+		return e;
+	}
+
+	/**
+	 * @return the items of one page, starting at the position encoded in the token.
+	 */
+	protected static int pageStart(String nextToken) {
+		return nextToken == null ? 0 : Integer.parseInt(nextToken);
+	}
+
+	protected static String nextToken(int pageEnd, int size) {
+		return pageEnd < size ? String.valueOf(pageEnd) : null;
+	}
+
+}
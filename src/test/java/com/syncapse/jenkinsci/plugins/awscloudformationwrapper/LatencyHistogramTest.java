@@ -0,0 +1,65 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void when_a_value_is_on_a_bucket_bound_then_it_goes_into_that_bucket() {
+		histogram.record(10);
+		histogram.record(11);
+		histogram.record(1800000);
+		histogram.record(1800001);
+		histogram.record(-5);
+
+		long[] buckets = histogram.getBuckets();
+		assertEquals(LatencyHistogram.BUCKET_BOUNDS.length + 1, buckets.length);
+		assertEquals(2, buckets[0]);
+		assertEquals(1, buckets[1]);
+		assertEquals(1, buckets[LatencyHistogram.BUCKET_BOUNDS.length - 1]);
+		assertEquals(1, buckets[LatencyHistogram.BUCKET_BOUNDS.length]);
+	}
+
+	@Test
+	public void when_values_spread_over_buckets_then_percentiles_are_the_bounds_of_their_buckets() {
+		for (int millis = 1; millis <= 100; millis++) {
+			histogram.record(millis);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(50, histogram.getMean());
+		assertEquals(10, histogram.getPercentile(0.1));
+		assertEquals(50, histogram.getPercentile(0.5));
+		assertEquals(100, histogram.getPercentile(0.9));
+		assertEquals(100, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void when_the_bucket_bound_exceeds_the_largest_value_then_the_percentile_is_capped_at_it() {
+		histogram.record(30);
+
+		assertEquals(30, histogram.getPercentile(0.5));
+		assertEquals(30, histogram.getMax());
+	}
+
+	@Test
+	public void when_values_overflow_the_buckets_then_the_percentile_is_the_largest_value() {
+		histogram.record(5);
+		histogram.record(4000000);
+
+		assertEquals(10, histogram.getPercentile(0.5));
+		assertEquals(4000000, histogram.getPercentile(0.99));
+	}
+
+	@Test
+	public void when_nothing_was_recorded_then_everything_is_zero() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean());
+		assertEquals(0, histogram.getPercentile(0.99));
+	}
+
+}
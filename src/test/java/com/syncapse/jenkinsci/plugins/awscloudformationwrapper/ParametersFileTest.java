@@ -0,0 +1,36 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ParametersFileTest {
+
+	@Test
+	public void when_a_json_file_is_read_then_its_parameters_are_returned_in_order() throws Exception {
+		Map<String, String> parameters = ParametersFile.parseJson(new ByteArrayInputStream(
+				("[{\"ParameterKey\": \"Subnet\", \"ParameterValue\": \"${SUBNET}\"},"
+						+ " {\"ParameterValue\": \"large\", \"ParameterKey\": \"Size\", \"UsePreviousValue\": false}]")
+						.getBytes("UTF-8")));
+
+		assertEquals("[Subnet, Size]", parameters.keySet().toString());
+		assertEquals("${SUBNET}", parameters.get("Subnet"));
+		assertEquals("large", parameters.get("Size"));
+	}
+
+	@Test
+	public void when_a_yaml_file_is_read_then_comments_and_quotes_are_dropped() throws Exception {
+		Map<String, String> parameters = ParametersFile.parseYaml(new StringReader(
+				"---\n# network\nSubnet: \"10.0.0.0/24\"\nSize: large # for load tests\nKeyName: ~\n"));
+
+		assertEquals("10.0.0.0/24", parameters.get("Subnet"));
+		assertEquals("large", parameters.get("Size"));
+		assertNull(parameters.get("KeyName"));
+	}
+
+}
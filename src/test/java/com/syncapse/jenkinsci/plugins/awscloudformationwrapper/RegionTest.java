@@ -0,0 +1,81 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RegionTest {
+
+	@After
+	public void tearDown() {
+		Region.setCustomRegions(Collections.<Region>emptyList());
+	}
+
+	@Test
+	public void when_a_former_enum_name_is_given_then_the_built_in_region_is_found() {
+		assertSame(Region.EU_Ireland, Region.valueOf("EU_Ireland"));
+		assertEquals("cloudformation.eu-west-1.amazonaws.com", Region.EU_Ireland.endPoint);
+	}
+
+	@Test
+	public void when_a_region_id_is_given_then_the_region_is_found() {
+		assertSame(Region.US_WEST_Oregon, Region.valueOf("us-west-2"));
+	}
+
+	@Test
+	public void endpoints_follow_the_service_and_domain_of_the_region() {
+		assertEquals("ec2.ap-southeast-2.amazonaws.com", Region.Asia_Pacific_Sydney.endpointFor("ec2"));
+		assertEquals("autoscaling.cn-north-1.amazonaws.com.cn", Region.valueOf("China_Beijing").endpointFor("autoscaling"));
+	}
+
+	@Test
+	public void when_a_custom_region_overrides_an_endpoint_then_it_is_used() {
+		Region.setCustomRegions(Collections.singletonList(new CustomRegion("Local", "us-east-1", "Local simulator", null,
+				"cloudformation=http://localhost:4581\n").toRegion()));
+
+		Region local = Region.valueOf("Local");
+		assertEquals("http://localhost:4581", local.endpointFor("cloudformation"));
+		assertEquals("ec2.us-east-1.amazonaws.com", local.endpointFor("ec2"));
+		assertSame(Region.US_East_Northern_Virginia, Region.valueOf("us-east-1"));
+	}
+
+	@Test
+	public void when_a_custom_region_replaces_a_built_in_one_then_it_is_listed_once_in_its_place() {
+		List<Region> builtIn = Arrays.asList(Region.values());
+		Region fips = new CustomRegion("EU_Ireland", "eu-west-1", "EU (Ireland) FIPS", null,
+				"cloudformation=cloudformation-fips.eu-west-1.amazonaws.com\n").toRegion();
+		Region.setCustomRegions(Collections.singletonList(fips));
+
+		Region[] values = Region.values();
+		assertEquals(builtIn.size(), values.length);
+		assertSame(fips, values[builtIn.indexOf(Region.EU_Ireland)]);
+		assertSame(fips, Region.valueOf("EU_Ireland"));
+	}
+
+	@Test
+	public void when_the_region_of_a_bean_is_empty_then_it_has_none() {
+		assertNull(Region.fromName(" "));
+		assertTrue(Region.isKnown(""));
+		assertFalse(Region.isKnown("Removed_Region"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_the_region_of_a_bean_is_unknown_then_it_fails() {
+		Region.fromName("Removed_Region");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_the_region_is_unknown_then_it_fails() {
+		Region.valueOf("Moon_Base");
+	}
+
+}
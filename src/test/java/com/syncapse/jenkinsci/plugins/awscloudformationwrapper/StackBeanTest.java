@@ -1,8 +1,11 @@
 package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import hudson.EnvVars;
 
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -81,4 +84,25 @@ public class StackBeanTest {
 		
 	}
 
+	@Test
+	public void targetRegions_default_to_the_stack_role() {
+		env.put("REGION", "EU_Ireland");
+		stackBean = new StackBean("name", "description", "aRecipe", "", 0, "awsAccessKey", "awsSecretKey", true, null,
+				null, false, 0, "US_WEST_Oregon\n\n${REGION}=arn:aws:iam::123456789012:role/other\n", 1, false,
+				"arn:aws:iam::123456789012:role/deployer", false, null, false, null);
+
+		List<StackBean.Target> targets = stackBean.getParsedTargetRegions(env);
+
+		assertEquals(2, targets.size());
+		assertEquals(Region.US_WEST_Oregon, targets.get(0).getRegion());
+		assertEquals("arn:aws:iam::123456789012:role/deployer", targets.get(0).getRoleArn());
+		assertEquals(Region.EU_Ireland, targets.get(1).getRegion());
+		assertEquals("arn:aws:iam::123456789012:role/other", targets.get(1).getRoleArn());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_a_target_region_names_an_empty_role_then_it_is_refused() {
+		StackBean.parseTarget("EU_Ireland=", null);
+	}
+
 }
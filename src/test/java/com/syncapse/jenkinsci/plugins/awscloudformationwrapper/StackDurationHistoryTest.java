@@ -0,0 +1,86 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackDurationHistory.Record;
+
+public class StackDurationHistoryTest {
+
+	private File file;
+	private StackDurationHistory history; // SUT
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("durations", ".csv");
+		file.delete();
+		history = new StackDurationHistory(file);
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void median_of_no_records_is_zero() throws Exception {
+		assertEquals(0, history.rollingMedian("stack-${BUILD_NUMBER}", "create", 10));
+	}
+
+	@Test
+	public void median_only_considers_the_same_stack_and_operation() throws Exception {
+		history.record(new Record(1, 0, "stack-${BUILD_NUMBER}", "create", 100000));
+		history.record(new Record(1, 0, "other", "create", 900000));
+		history.record(new Record(2, 0, "stack-${BUILD_NUMBER}", "update", 900000));
+		history.record(new Record(3, 0, "stack-${BUILD_NUMBER}", "create", 300000));
+		history.record(new Record(4, 0, "stack-${BUILD_NUMBER}", "create", 200000));
+
+		assertEquals(200000, history.rollingMedian("stack-${BUILD_NUMBER}", "create", 10));
+	}
+
+	@Test
+	public void median_is_computed_over_the_most_recent_window() throws Exception {
+		for (int build = 1; build <= 20; build++) {
+			history.record(new Record(build, 0, "stack", "create", build * 1000L));
+		}
+
+		assertEquals(17500, history.rollingMedian("stack", "create", 6));
+	}
+
+	@Test
+	public void when_concurrent_builds_record_to_the_same_file_then_no_record_is_lost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int i = 0; i < 200; i++) {
+				final int build = i;
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						// each build gets its own instance of the job's history
+						new StackDurationHistory(file).record(new Record(build, 0, "stack", "create", 1000));
+						return null;
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(200, history.read().size());
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import hudson.EnvVars;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.Parameter;
+
+public class StackFingerprintTest {
+
+	private FakeAmazonCloudFormation fake;
+
+	@Before
+	public void setUp() {
+		fake = new FakeAmazonCloudFormation();
+	}
+
+	@Test
+	public void when_parameters_are_in_a_different_order_then_the_fingerprint_is_the_same() {
+		String first = StackFingerprint.of("{}", Arrays.asList(parameter("a", "1"), parameter("b", "2")), Region.US_East_Northern_Virginia);
+		String second = StackFingerprint.of("{}", Arrays.asList(parameter("b", "2"), parameter("a", "1")), Region.US_East_Northern_Virginia);
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void when_template_parameters_or_region_change_then_the_fingerprint_changes() {
+		String base = StackFingerprint.of("{}", Arrays.asList(parameter("a", "1")), Region.US_East_Northern_Virginia);
+		assertFalse(base.equals(StackFingerprint.of("{ }", Arrays.asList(parameter("a", "1")), Region.US_East_Northern_Virginia)));
+		assertFalse(base.equals(StackFingerprint.of("{}", Arrays.asList(parameter("a", "2")), Region.US_East_Northern_Virginia)));
+		assertFalse(base.equals(StackFingerprint.of("{}", Arrays.asList(parameter("a", "1")), Region.EU_Ireland)));
+	}
+
+	@Test
+	public void when_the_stack_matches_then_it_is_reused_without_creating_it() throws Exception {
+		assertTrue(newCloudFormation("1").createOrReuse());
+
+		CloudFormation second = newCloudFormation("1");
+		assertTrue(second.createOrReuse());
+
+		assertTrue(second.isReused());
+		assertEquals(1, fake.getCallCount("createStack"));
+		assertEquals("1", second.getOutputs().get("stack_Version"));
+	}
+
+	@Test
+	public void when_the_parameters_differ_then_the_stack_is_replaced() throws Exception {
+		assertTrue(newCloudFormation("1").createOrReuse());
+
+		CloudFormation second = newCloudFormation("2");
+		assertTrue(second.createOrReuse());
+
+		assertFalse(second.isReused());
+		assertEquals(2, fake.getCallCount("createStack"));
+		assertEquals(1, fake.getCallCount("deleteStack"));
+		assertEquals("2", second.getOutputs().get("stack_Version"));
+	}
+
+	@Test
+	public void when_the_parameters_differ_and_another_build_uses_the_stack_then_it_is_left_alone() throws Exception {
+		assertTrue(newCloudFormation("1").createOrReuse());
+
+		assertFalse(newCloudFormation("2").createOrReuse(false));
+
+		assertEquals(1, fake.getCallCount("createStack"));
+		assertEquals(0, fake.getCallCount("deleteStack"));
+	}
+
+	@Test
+	public void when_the_stack_is_not_created_for_reuse_then_it_is_not_tagged() throws Exception {
+		assertTrue(newCloudFormation("1").create());
+
+		assertTrue(fake.client().describeStacks(new DescribeStacksRequest().withStackName("stack")).getStacks().get(0)
+				.getTags().isEmpty());
+	}
+
+	private CloudFormation newCloudFormation(String version) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("Version", version);
+		final AmazonCloudFormation client = fake.client();
+		return new CloudFormation(new PrintStream(new ByteArrayOutputStream()), "stack", "{}", parameters, -12345,
+				"accessKey", "secretKey", false, new EnvVars()) {
+			@Override
+			protected AmazonCloudFormation getAWSClient() {
+				return client;
+			}
+		};
+	}
+
+	private static Parameter parameter(String key, String value) {
+		return new Parameter().withParameterKey(key).withParameterValue(value);
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
+
+public class StackOutputsReaderTest {
+
+	private FakeAmazonCloudFormation fake;
+	private AmazonCloudFormation client;
+
+	@Before
+	public void setUp() {
+		fake = new FakeAmazonCloudFormation();
+		fake.setPageSize(2);
+		client = fake.client();
+		for (String name : Arrays.asList("network", "database", "queue", "cache")) {
+			client.createStack(new CreateStackRequest().withStackName(name)
+					.withParameters(new Parameter().withParameterKey("Name").withParameterValue(name)));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		StackOutputsCache.get().clear();
+	}
+
+	@Test
+	public void when_several_stacks_are_read_then_a_single_listing_is_made() {
+		Map<String, Map<String, String>> outputs = newReader().read(Arrays.asList("network", "cache"), 30000);
+
+		assertEquals("network", outputs.get("network").get("Name"));
+		assertEquals("cache", outputs.get("cache").get("Name"));
+		assertEquals(2, fake.getCallCount("describeStacks"));
+	}
+
+	@Test
+	public void when_outputs_were_read_recently_then_they_come_from_the_cache() {
+		newReader().read(Arrays.asList("database"), 30000);
+		newReader().read(Arrays.asList("database"), 30000);
+
+		assertEquals(1, fake.getCallCount("describeStacks"));
+	}
+
+	@Test
+	public void when_the_secret_differs_then_the_cached_outputs_are_not_used() {
+		newReader().read(Arrays.asList("database"), 30000);
+		newReader("guessed").read(Arrays.asList("database"), 30000);
+
+		assertEquals(2, fake.getCallCount("describeStacks"));
+	}
+
+	@Test
+	public void when_cached_outputs_expire_and_the_stacks_are_unchanged_then_they_are_not_described_again() {
+		newReader().read(Arrays.asList("network", "cache"), 30000);
+		Map<String, Map<String, String>> outputs = newReader().read(Arrays.asList("network", "cache"), -1);
+
+		assertEquals("cache", outputs.get("cache").get("Name"));
+		assertEquals(2, fake.getCallCount("describeStacks"));
+		assertEquals(2, fake.getCallCount("listStacks"));
+	}
+
+	@Test
+	public void when_cached_outputs_expire_and_a_stack_was_updated_then_only_that_stack_is_described_again() {
+		newReader().read(Arrays.asList("network", "cache"), 30000);
+		client.updateStack(new UpdateStackRequest().withStackName("cache")
+				.withParameters(new Parameter().withParameterKey("Name").withParameterValue("redis")));
+
+		Map<String, Map<String, String>> outputs = newReader().read(Arrays.asList("network", "cache"), -1);
+
+		assertEquals("network", outputs.get("network").get("Name"));
+		assertEquals("redis", outputs.get("cache").get("Name"));
+		assertEquals(3, fake.getCallCount("describeStacks"));
+	}
+
+	@Test
+	public void when_a_stack_does_not_exist_then_it_is_left_out() {
+		Map<String, Map<String, String>> outputs = newReader().read(Arrays.asList("queue", "missing"), 30000);
+
+		assertEquals(1, outputs.size());
+		assertFalse(outputs.containsKey("missing"));
+	}
+
+	private StackOutputsReader newReader() {
+		return newReader("secret");
+	}
+
+	private StackOutputsReader newReader(String secret) {
+		return new StackOutputsReader(StackCredentials.forKeys("key", secret), null,
+				new PrintStream(new ByteArrayOutputStream())) {
+			@Override
+			protected AmazonCloudFormation getAWSClient() {
+				return client;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class StackPollerTest {
+
+	private final StackPoller poller = new StackPoller(1);
+
+	@Test
+	public void when_the_check_returns_an_outcome_then_the_future_completes_with_it() throws Exception {
+		final AtomicInteger polls = new AtomicInteger();
+		Future<String> future = poller.watch(new StackPoller.Check<String>() {
+			public String poll() {
+				return polls.incrementAndGet() == 3 ? "done" : null;
+			}
+		}, 1);
+
+		assertEquals("done", future.get());
+		assertEquals(3, polls.get());
+	}
+
+	@Test
+	public void when_the_check_throws_then_the_future_fails() throws Exception {
+		Future<String> future = poller.watch(new StackPoller.Check<String>() {
+			public String poll() {
+				throw new TimeoutException("too slow");
+			}
+		}, 1);
+
+		try {
+			future.get();
+			fail("No exception thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	@Test
+	public void when_the_watch_is_cancelled_then_polling_stops() throws Exception {
+		final AtomicInteger polls = new AtomicInteger();
+		Future<String> future = poller.watch(new StackPoller.Check<String>() {
+			public String poll() {
+				polls.incrementAndGet();
+				return null;
+			}
+		}, 5);
+		Thread.sleep(50);
+		future.cancel(false);
+		int afterCancel = polls.get();
+		Thread.sleep(50);
+
+		assertTrue(polls.get() <= afterCancel + 1);
+	}
+
+	@Test
+	public void many_waits_share_one_thread() throws Exception {
+		Future<?>[] futures = new Future<?>[500];
+		for (int i = 0; i < futures.length; i++) {
+			final int remaining = i % 5;
+			futures[i] = poller.watch(new StackPoller.Check<Boolean>() {
+				private int polls;
+				public Boolean poll() {
+					return polls++ == remaining ? Boolean.TRUE : null;
+				}
+			}, 1);
+		}
+		for (Future<?> future : futures) {
+			assertEquals(Boolean.TRUE, future.get());
+		}
+	}
+
+	@Test
+	public void when_no_thread_count_is_configured_then_the_default_is_used() {
+		StackPoller.setThreads(16);
+		assertEquals(16, StackPoller.get().getThreads());
+
+		StackPoller.setThreads(0);
+		assertEquals(StackPoller.DEFAULT_THREADS, StackPoller.get().getThreads());
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import hudson.EnvVars;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+
+public class StackPoolManagerTest {
+
+	private FakeAmazonCloudFormation fake;
+	private AmazonCloudFormation client;
+	private StackPool pool;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		fake = new FakeAmazonCloudFormation();
+		client = fake.client();
+		pool = new StackPool("web", "{}", "Size=small", null, "accessKey", "secretKey", 2, 2, false, -12345);
+		file = File.createTempFile("stack-pools", ".xml");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void when_a_pool_is_maintained_then_it_is_filled_up_to_its_size() throws Exception {
+		StackPoolManager manager = newManager();
+		manager.maintain(pool);
+
+		awaitAvailable(manager, 2);
+		assertEquals(2, fake.getCallCount("createStack"));
+	}
+
+	@Test
+	public void when_a_stack_is_leased_then_the_pool_is_refilled_and_the_stack_is_not_leased_again() throws Exception {
+		StackPoolManager manager = newManager();
+		manager.maintain(pool);
+		awaitAvailable(manager, 2);
+
+		StackPoolManager.Lease lease = manager.lease(pool);
+
+		assertNotNull(lease);
+		awaitAvailable(manager, 2);
+		assertFalse(manager.getAvailable(pool).contains(lease.getStackName()));
+		assertEquals(3, fake.getCallCount("createStack"));
+	}
+
+	@Test
+	public void when_an_unmodified_stack_is_returned_then_it_goes_back_to_the_pool() throws Exception {
+		StackPoolManager manager = newManager();
+		manager.maintain(pool);
+		awaitAvailable(manager, 2);
+		StackPoolManager.Lease lease = manager.lease(pool);
+		awaitAvailable(manager, 2);
+
+		manager.release(lease);
+
+		assertTrue(manager.getAvailable(pool).contains(lease.getStackName()));
+		assertEquals(0, fake.getCallCount("deleteStack"));
+	}
+
+	@Test
+	public void when_a_modified_stack_is_returned_then_it_is_deleted() throws Exception {
+		StackPoolManager manager = newManager();
+		manager.maintain(pool);
+		awaitAvailable(manager, 2);
+		StackPoolManager.Lease lease = manager.lease(pool);
+		awaitAvailable(manager, 2);
+
+		lease.setModified(true);
+		manager.release(lease);
+
+		awaitCalls("deleteStack", 1);
+		assertFalse(manager.getAvailable(pool).contains(lease.getStackName()));
+	}
+
+	@Test
+	public void when_existing_stacks_are_adopted_then_the_ones_leased_before_a_restart_are_deleted() throws Exception {
+		client.createStack(new CreateStackRequest().withStackName("pool-web-a"));
+		client.createStack(new CreateStackRequest().withStackName("pool-web-b"));
+		StackPoolManager before = newManager();
+		before.maintain(pool);
+		awaitAvailable(before, 2);
+		StackPoolManager.Lease lease = before.lease(pool);
+
+		StackPoolManager after = newManager();
+		after.maintain(pool);
+
+		awaitCalls("deleteStack", 1);
+		awaitAvailable(after, 2);
+		assertFalse(after.getAvailable(pool).contains(lease.getStackName()));
+	}
+
+	@Test
+	public void when_a_stack_is_leased_then_the_existing_stacks_are_not_looked_for() throws Exception {
+		StackPoolManager manager = newManager();
+
+		assertNull(manager.lease(pool));
+
+		assertEquals(0, fake.getCallCount("listStacks"));
+		assertEquals(0, fake.getCallCount("createStack"));
+	}
+
+	@Test
+	public void when_creations_fail_then_the_pool_is_not_refilled_until_it_may_retry() throws Exception {
+		fake.injectFailures("createStack", 2);
+		StackPoolManager manager = newManager();
+		manager.maintain(pool);
+		awaitCreating(manager, 0);
+
+		manager.refill(pool);
+
+		assertEquals(0, manager.getCreating(pool));
+		assertEquals(2, fake.getCallCount("createStack"));
+	}
+
+	private StackPoolManager newManager() {
+		return new StackPoolManager(new XmlFile(new XStream2(), file)) {
+			@Override
+			protected StackPool configuredPool(String name) {
+				return pool;
+			}
+
+			@Override
+			protected CloudFormation newCloudFormation(StackPool pool, String stackName, PrintStream logger) {
+				return new CloudFormation(logger, stackName, pool.getTemplate(), pool.getParsedParameters(),
+						pool.getTimeout(), pool.getAwsAccessKey(), pool.getAwsSecretKey(), pool.getAwsRegion(), false,
+						new EnvVars(), false, false) {
+					@Override
+					protected AmazonCloudFormation getAWSClient() {
+						return client;
+					}
+				};
+			}
+		};
+	}
+
+	private void awaitAvailable(StackPoolManager manager, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		List<String> available = manager.getAvailable(pool);
+		while (available.size() != count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			available = manager.getAvailable(pool);
+		}
+		assertEquals(count, available.size());
+	}
+
+	private void awaitCreating(StackPoolManager manager, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (manager.getCreating(pool) != count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, manager.getCreating(pool));
+	}
+
+	private void awaitCalls(String method, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (fake.getCallCount(method) < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, fake.getCallCount(method));
+	}
+
+}
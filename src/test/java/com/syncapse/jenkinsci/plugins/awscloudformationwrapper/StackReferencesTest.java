@@ -0,0 +1,114 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+import com.amazonaws.services.cloudformation.model.Parameter;
+
+public class StackReferencesTest {
+
+	private static final PrintStream LOGGER = new PrintStream(new ByteArrayOutputStream());
+	private static final AWSCredentialsProvider CREDENTIALS = StackCredentials.forKeys("key", "secret");
+
+	private FakeAmazonCloudFormation fake;
+	private AmazonCloudFormation client;
+	private StackReferences references;
+
+	@Before
+	public void setUp() {
+		fake = new FakeAmazonCloudFormation();
+		client = fake.client();
+		for (String name : Arrays.asList("network", "database")) {
+			client.createStack(new CreateStackRequest().withStackName(name)
+					.withParameters(new Parameter().withParameterKey("Name").withParameterValue(name + "-id")));
+		}
+		references = new StackReferences() {
+			@Override
+			protected StackOutputsReader newReader(AWSCredentialsProvider credentials, Region region, PrintStream logger) {
+				return new StackOutputsReader(credentials, region, logger) {
+					@Override
+					protected AmazonCloudFormation getAWSClient() {
+						return client;
+					}
+				};
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		StackOutputsCache.get().clear();
+	}
+
+	@Test
+	public void when_parameters_refer_to_outputs_then_they_are_replaced() {
+		Map<String, String> resolved = references.resolve(parameters("Subnet", "${cfn:network.Name}/24",
+				"Db", "${cfn:database.Name}", "Size", "small"), CREDENTIALS, null, LOGGER);
+
+		assertEquals("network-id/24", resolved.get("Subnet"));
+		assertEquals("database-id", resolved.get("Db"));
+		assertEquals("small", resolved.get("Size"));
+	}
+
+	@Test
+	public void when_stacks_are_prefetched_then_they_are_read_once_for_the_build() throws Exception {
+		Map<String, String> first = parameters("Subnet", "${cfn:network.Name}");
+		Map<String, String> second = parameters("Subnet", "${cfn:network.Name}", "Db", "${cfn:database.Name}");
+		references.prefetch(Arrays.asList(new StackReferences.Lookup(first, CREDENTIALS, null),
+				new StackReferences.Lookup(second, CREDENTIALS, null)), LOGGER);
+		int calls = fake.getCallCount("describeStacks");
+
+		references.resolve(first, CREDENTIALS, null, LOGGER);
+		references.resolve(second, CREDENTIALS, null, LOGGER);
+
+		assertEquals(1, calls);
+		assertEquals(calls, fake.getCallCount("describeStacks"));
+	}
+
+	@Test
+	public void when_parameters_have_no_references_then_nothing_is_read() {
+		Map<String, String> parameters = parameters("Size", "small");
+
+		assertSame(parameters, references.resolve(parameters, CREDENTIALS, null, LOGGER));
+		assertEquals(0, fake.getCallCount("describeStacks"));
+	}
+
+	@Test
+	public void when_a_referenced_output_does_not_exist_then_prefetching_fails() throws Exception {
+		try {
+			references.prefetch(Arrays.asList(new StackReferences.Lookup(parameters("Db", "${cfn:database.Port}"),
+					CREDENTIALS, null)), LOGGER);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Parameter Db refers to output Port of stack database, which has no such output", e.getMessage());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_a_referenced_stack_does_not_exist_then_resolving_fails() {
+		references.resolve(parameters("Queue", "${cfn:queue.Name}"), CREDENTIALS, null, LOGGER);
+	}
+
+	private static Map<String, String> parameters(String... keysAndValues) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			parameters.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return parameters;
+	}
+
+}
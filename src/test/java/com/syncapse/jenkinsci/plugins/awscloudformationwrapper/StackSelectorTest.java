@@ -0,0 +1,74 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class StackSelectorTest {
+
+	@Test
+	public void when_names_are_listed_then_they_are_selected_without_listing_the_stacks() {
+		StackSelector selector = new StackSelector("network,\n database , network");
+
+		assertTrue(selector.isLiteral());
+		assertEquals(Arrays.asList("network", "database"), selector.select(null));
+	}
+
+	@Test
+	public void when_a_glob_is_given_then_only_the_wildcards_are_special() {
+		StackSelector selector = new StackSelector("feature.x-*-??");
+
+		assertFalse(selector.isLiteral());
+		assertTrue(selector.matches("feature.x-login-42"));
+		assertFalse(selector.matches("featureAx-login-42"));
+		assertFalse(selector.matches("feature.x-login-4"));
+	}
+
+	@Test
+	public void when_a_regex_is_given_between_slashes_then_it_must_match_the_whole_name() {
+		StackSelector selector = new StackSelector("/tenant-(a|b)/");
+
+		assertTrue(selector.matches("tenant-a"));
+		assertFalse(selector.matches("tenant-ab"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_the_regex_is_invalid_then_it_is_rejected() {
+		new StackSelector("/tenant-(/");
+	}
+
+	@Test
+	public void when_a_variable_holds_wildcards_then_they_are_matched_literally() {
+		EnvVars env = new EnvVars();
+		env.put("BRANCH", "*");
+
+		StackSelector glob = new StackSelector("feature-${BRANCH}-?", env);
+		assertTrue(glob.matches("feature-*-1"));
+		assertFalse(glob.matches("feature-login-1"));
+
+		StackSelector list = new StackSelector("feature-${BRANCH}", env);
+		assertTrue(list.isLiteral());
+		assertEquals(Arrays.asList("feature-*"), list.select(null));
+
+		StackSelector regex = new StackSelector("/feature-${BRANCH}-[0-9]+/", env);
+		assertTrue(regex.matches("feature-*-12"));
+		assertFalse(regex.matches("feature-login-12"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_a_glob_has_only_wildcards_then_it_is_rejected() {
+		new StackSelector("*");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void when_a_regex_has_no_literal_then_it_is_rejected() {
+		new StackSelector("/^.*$/");
+	}
+
+}
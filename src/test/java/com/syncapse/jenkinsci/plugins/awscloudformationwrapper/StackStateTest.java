@@ -0,0 +1,67 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackState.Operation;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.StackState.Outcome;
+
+public class StackStateTest {
+
+	@Test
+	public void every_status_has_an_outcome_for_every_operation() {
+		for (Operation operation : Operation.values()) {
+			for (StackStatus status : StackStatus.values()) {
+				operation.outcome(status.toString());
+			}
+		}
+		assertEquals(Outcome.WAITING, Operation.UPDATE.outcome(StackStatus.UPDATE_ROLLBACK_IN_PROGRESS));
+		assertEquals(Outcome.FAILED, Operation.UPDATE.outcome(StackStatus.UPDATE_ROLLBACK_FAILED));
+		assertEquals(Outcome.FAILED, Operation.CREATE.outcome(StackStatus.ROLLBACK_IN_PROGRESS));
+		assertEquals(Outcome.WAITING, Operation.DELETE.outcome(StackStatus.CREATE_COMPLETE));
+		assertEquals(Outcome.WAITING, Operation.ROLLBACK.outcome(StackStatus.CREATE_IN_PROGRESS));
+		assertEquals(Outcome.SUCCEEDED, Operation.ROLLBACK.outcome(StackStatus.ROLLBACK_COMPLETE));
+		assertEquals(Outcome.FAILED, Operation.ROLLBACK.outcome(StackStatus.ROLLBACK_FAILED));
+	}
+
+	@Test
+	public void when_a_status_is_unknown_then_only_transitional_ones_are_waited_through() {
+		assertEquals(Outcome.WAITING, Operation.CREATE.outcome("REVIEW_IN_PROGRESS"));
+		assertEquals(Outcome.FAILED, Operation.CREATE.outcome("IMPORT_ROLLBACK_COMPLETE"));
+		assertTrue(StackState.isInProgress("IMPORT_IN_PROGRESS"));
+		assertFalse(StackState.isUsable("IMPORT_COMPLETE"));
+	}
+
+	@Test
+	public void deletable_stacks_have_no_operation_under_way() {
+		assertTrue(StackState.DELETABLE.contains(StackStatus.UPDATE_ROLLBACK_FAILED));
+		assertFalse(StackState.DELETABLE.contains(StackStatus.ROLLBACK_IN_PROGRESS));
+		assertFalse(StackState.DELETABLE.contains(StackStatus.DELETE_COMPLETE));
+	}
+
+	@Test
+	public void listeners_are_told_of_transitions() {
+		final List<String> transitions = new ArrayList<String>();
+		StackState.Listener listener = new StackState.Listener() {
+			public void onTransition(CloudFormation cloudFormation, String from, String to) {
+				transitions.add(from + ">" + to);
+			}
+		};
+		StackState.addListener(listener);
+		try {
+			StackState.fireTransition(null, null, "CREATE_IN_PROGRESS");
+			StackState.fireTransition(null, "CREATE_IN_PROGRESS", "CREATE_COMPLETE");
+		} finally {
+			StackState.removeListener(listener);
+		}
+		assertEquals("[null>CREATE_IN_PROGRESS, CREATE_IN_PROGRESS>CREATE_COMPLETE]", transitions.toString());
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+public class StackTimelineTest {
+
+	private static final long T0 = 1400000000000L;
+
+	private List<StackEvent> events = new ArrayList<StackEvent>();
+
+	@Test
+	public void durations_are_measured_from_first_to_last_event_of_each_resource() {
+		given_a_stack_with_a_vpc_then_an_instance_and_an_unrelated_bucket();
+
+		StackTimeline timeline = StackTimeline.fromEvents("stack", events);
+
+		assertEquals(120000, timeline.getDuration());
+		assertEquals(30000, entry(timeline, "Vpc").getDuration());
+		assertEquals(30000, entry(timeline, "Instance").getStart());
+		assertEquals(80000, entry(timeline, "Instance").getDuration());
+		assertEquals("CREATE_COMPLETE", entry(timeline, "Instance").getStatus());
+	}
+
+	@Test
+	public void critical_path_follows_the_chain_finishing_last() {
+		given_a_stack_with_a_vpc_then_an_instance_and_an_unrelated_bucket();
+
+		StackTimeline timeline = StackTimeline.fromEvents("stack", events);
+
+		assertTrue(entry(timeline, "Vpc").isCritical());
+		assertTrue(entry(timeline, "Instance").isCritical());
+		assertFalse(entry(timeline, "Bucket").isCritical());
+		assertFalse(entry(timeline, "stack").isCritical());
+		assertTrue(entry(timeline, "stack").isStack());
+	}
+
+	@Test
+	public void timeline_survives_a_round_trip_to_disk() throws Exception {
+		given_a_stack_with_a_vpc_then_an_instance_and_an_unrelated_bucket();
+		StackTimeline timeline = StackTimeline.fromEvents("stack", events);
+
+		File file = File.createTempFile("timeline", ".tsv");
+		try {
+			timeline.write(file);
+			StackTimeline read = StackTimeline.read(file);
+
+			assertEquals(timeline.getStartTime(), read.getStartTime());
+			assertEquals(timeline.getEntries().size(), read.getEntries().size());
+			assertEquals(80000, entry(read, "Instance").getDuration());
+			assertTrue(entry(read, "Instance").isCritical());
+			assertTrue(entry(read, "stack").isStack());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void the_same_stack_in_two_regions_gets_two_timelines() {
+		assertFalse(StackTimelineAction.key("stack", "US_East_Northern_Virginia")
+				.equals(StackTimelineAction.key("stack", "EU_Ireland")));
+		assertEquals("stack", StackTimelineAction.key("stack", null));
+	}
+
+	private void given_a_stack_with_a_vpc_then_an_instance_and_an_unrelated_bucket() {
+		event(0, "stack", "AWS::CloudFormation::Stack", "CREATE_IN_PROGRESS");
+		event(0, "Vpc", "AWS::EC2::VPC", "CREATE_IN_PROGRESS");
+		event(1, "Bucket", "AWS::S3::Bucket", "CREATE_IN_PROGRESS");
+		event(20, "Bucket", "AWS::S3::Bucket", "CREATE_COMPLETE");
+		event(30, "Vpc", "AWS::EC2::VPC", "CREATE_COMPLETE");
+		event(30, "Instance", "AWS::EC2::Instance", "CREATE_IN_PROGRESS");
+		event(110, "Instance", "AWS::EC2::Instance", "CREATE_COMPLETE");
+		event(120, "stack", "AWS::CloudFormation::Stack", "CREATE_COMPLETE");
+	}
+
+	private void event(int second, String resource, String type, String status) {
+		events.add(new StackEvent().withLogicalResourceId(resource).withResourceType(type)
+				.withResourceStatus(status).withTimestamp(new Date(T0 + second * 1000L)));
+	}
+
+	private StackTimeline.Entry entry(StackTimeline timeline, String resource) {
+		for (StackTimeline.Entry entry : timeline.getEntries()) {
+			if (entry.getResource().equals(resource)) return entry;
+		}
+		throw new AssertionError("No entry for " + resource);
+	}
+
+}
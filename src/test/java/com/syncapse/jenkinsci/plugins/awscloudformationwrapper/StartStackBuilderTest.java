@@ -0,0 +1,29 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class StartStackBuilderTest {
+
+	@Test
+	public void when_a_stack_sets_no_wrapper_option_then_it_can_be_started() {
+		StackBean stackBean = new StackBean("name", "description", "aRecipe", "", 0, "awsAccessKey", "awsSecretKey",
+				true, null, " ", false, 0, "", 0, false, null, false, null, false, null);
+
+		assertTrue(StartStackBuilder.unsupportedOptions(stackBean).isEmpty());
+	}
+
+	@Test
+	public void when_a_stack_is_pooled_reused_and_multi_region_then_all_three_are_reported() {
+		StackBean stackBean = new StackBean("name", "description", "aRecipe", "", 0, "awsAccessKey", "awsSecretKey",
+				true, null, "pool", true, 0, "EU_Ireland", 0, false, null, false, null, false, null);
+
+		assertEquals(Arrays.asList("poolName", "reuseStack", "targetRegions"),
+				StartStackBuilder.unsupportedOptions(stackBean));
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StartedStacksCleanupTest {
+
+	private AbstractBuild build;
+	private TaskListener listener;
+	private StartedStacksAction action;
+
+	@Before
+	public void setUp() {
+		build = mock(AbstractBuild.class);
+		listener = mock(TaskListener.class);
+		when(listener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+		action = new StartedStacksAction();
+		when(build.getAction(StartedStacksAction.class)).thenReturn(action);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void when_a_creation_is_still_under_way_then_it_is_aborted_without_waiting() throws Exception {
+		CloudFormation cloudFormation = newCloudFormation("slow");
+		Future<Boolean> creation = mock(Future.class);
+		when(creation.isDone()).thenReturn(false);
+		when(cloudFormation.abort()).thenReturn(true);
+		action.add(new StartedStacksAction.StartedStack(cloudFormation, creation));
+
+		new StartedStacksCleanup().onCompleted(build, listener);
+
+		verify(cloudFormation).abort();
+		verify(creation, never()).get();
+		verify(cloudFormation, never()).deleteAsync();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void when_a_creation_is_over_then_the_deletion_is_started_but_not_waited_for() throws Exception {
+		CloudFormation cloudFormation = newCloudFormation("done");
+		Future<Boolean> creation = mock(Future.class);
+		when(creation.isDone()).thenReturn(true);
+		when(creation.get()).thenReturn(true);
+		action.add(new StartedStacksAction.StartedStack(cloudFormation, creation));
+
+		new StartedStacksCleanup().onCompleted(build, listener);
+
+		verify(cloudFormation).deleteAsync();
+		verify(cloudFormation, never()).delete();
+	}
+
+	private CloudFormation newCloudFormation(String name) {
+		CloudFormation cloudFormation = mock(CloudFormation.class);
+		when(cloudFormation.getExpandedStackName()).thenReturn(name);
+		when(cloudFormation.getAutoDeleteStack()).thenReturn(true);
+		return cloudFormation;
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class TemplateCompactorTest {
+
+	@Test
+	public void when_a_template_is_compacted_then_only_whitespace_between_tokens_is_removed() {
+		String template = "{\n  \"Description\" : \"A stack, with spaces\",\n  \"Resources\" : {\n"
+				+ "    \"Queue\" : { \"Type\" : \"AWS::SQS::Queue\", \"Properties\" : { \"DelaySeconds\" : 1.50, \"Tags\" : [ ] } }\n  }\n}\n";
+
+		assertEquals("{\"Description\":\"A stack, with spaces\",\"Resources\":{\"Queue\":{\"Type\":\"AWS::SQS::Queue\","
+				+ "\"Properties\":{\"DelaySeconds\":1.50,\"Tags\":[]}}}}", TemplateCompactor.compact(template));
+	}
+
+	@Test
+	public void when_a_template_is_not_json_then_it_is_sent_as_it_is() {
+		String yaml = "Resources:\n  Queue:\n    Type: AWS::SQS::Queue\n";
+		String broken = "{\n  \"Resources\" : {\n  this is not JSON\n}\n";
+
+		assertSame(yaml, TemplateCompactor.compact(yaml));
+		assertSame(broken, TemplateCompactor.compact(broken));
+	}
+
+	@Test
+	public void when_a_template_is_compacted_then_the_savings_are_logged() {
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		String template = "{\n    \"Resources\" : { }\n}\n";
+
+		TemplateCompactor.compact(template, "stack", new PrintStream(log, true));
+
+		assertTrue(log.toString(), log.toString().startsWith(
+				"Compacted the template of stack stack from 26 to 16 bytes, saving 10 (38%)."));
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import hudson.AbortException;
+import hudson.FilePath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TemplateFragmentsTest {
+
+	private FilePath workspace;
+	private ByteArrayOutputStream log;
+	private PrintStream logger;
+
+	@Before
+	public void setUp() throws Exception {
+		File dir = File.createTempFile("fragments", "");
+		dir.delete();
+		dir.mkdirs();
+		workspace = new FilePath(dir);
+		log = new ByteArrayOutputStream();
+		logger = new PrintStream(log, true);
+		TemplateFragments.clear();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		workspace.deleteRecursive();
+	}
+
+	@Test
+	public void when_fragments_are_merged_then_their_sections_are_put_together() throws Exception {
+		List<FilePath> files = Arrays.asList(
+				write("base.json", "{\"AWSTemplateFormatVersion\": \"2010-09-09\",\n \"Parameters\": {\"Size\": {\"Type\": \"String\"}}}"),
+				write("queue.json", "{\"AWSTemplateFormatVersion\": \"2010-09-09\",\n \"Resources\": {\"Queue\": {\"Type\": \"AWS::SQS::Queue\"}}}"),
+				write("topic.json", "{\"Resources\": {\"Topic\": {\"Type\": \"AWS::SNS::Topic\"}},\n \"Outputs\": {\"Arn\": {\"Value\": {\"Ref\": \"Topic\"}}}}"));
+
+		StackTemplate template = TemplateFragments.merge(files, logger);
+
+		assertEquals("{\"AWSTemplateFormatVersion\":\"2010-09-09\",\"Parameters\":{\"Size\":{\"Type\":\"String\"}},"
+				+ "\"Resources\":{\"Queue\":{\"Type\":\"AWS::SQS::Queue\"},\"Topic\":{\"Type\":\"AWS::SNS::Topic\"}},"
+				+ "\"Outputs\":{\"Arn\":{\"Value\":{\"Ref\":\"Topic\"}}}}", template.getBody());
+		assertEquals(StackFingerprint.digest(template.getBody()), template.getDigest());
+	}
+
+	@Test
+	public void when_no_fragment_changed_then_the_merged_template_is_reused() throws Exception {
+		List<FilePath> files = Arrays.asList(write("a.json", "{\"Resources\": {\"A\": {\"Type\": \"AWS::SQS::Queue\"}}}"),
+				write("b.json", "{\"Resources\": {\"B\": {\"Type\": \"AWS::SQS::Queue\"}}}"));
+		StackTemplate first = TemplateFragments.merge(files, logger);
+
+		assertSame(first, TemplateFragments.merge(files, logger));
+
+		write("b.json", "{\"Resources\": {\"C\": {\"Type\": \"AWS::SQS::Queue\"}}}");
+		StackTemplate changed = TemplateFragments.merge(files, logger);
+
+		assertTrue(changed.getBody().contains("\"C\""));
+		assertTrue(log.toString(), log.toString().contains("Merged 2 template fragments, 1 of them changed"));
+	}
+
+	@Test
+	public void when_two_fragments_declare_the_same_resource_then_merging_fails() throws Exception {
+		try {
+			TemplateFragments.merge(Arrays.asList(write("a.json", "{\"Resources\": {\"Queue\": {}}}"),
+					write("b.json", "{\"Resources\": {\"Queue\": {}}}")), logger);
+			fail();
+		} catch (AbortException e) {
+			assertEquals("Template fragments a.json and b.json both declare Queue in Resources", e.getMessage());
+		}
+	}
+
+	private FilePath write(String name, String content) throws Exception {
+		FilePath file = workspace.child(name);
+		file.write(content, "UTF-8");
+		return file;
+	}
+
+}
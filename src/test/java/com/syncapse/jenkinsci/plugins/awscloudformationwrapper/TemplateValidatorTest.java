@@ -0,0 +1,73 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TemplateValidatorTest {
+
+	private static final String TEMPLATE = "{\"Parameters\": {\"Size\": {\"Type\": \"String\", \"Default\": \"small\"},\n"
+			+ " \"Subnet\": {\"Type\": \"String\"}},\n"
+			+ " \"Resources\": {\"Instance\": {\"Type\": \"AWS::EC2::Instance\", \"Properties\": {\"SubnetId\": {\"Ref\": \"Subnet\"},\n"
+			+ " \"Tags\": [{\"Key\": \"Region\", \"Value\": {\"Ref\": \"AWS::Region\"}}]}}},\n"
+			+ " \"Outputs\": {\"Ip\": {\"Value\": {\"Fn::GetAtt\": [\"Instance\", \"PublicIp\"]}},\n"
+			+ " \"Size\": {\"Value\": {\"Ref\": \"Sise\"}}, \"Zone\": {\"Value\": {\"Fn::GetAtt\": [\"Instanse\", \"AvailabilityZone\"]}}}}";
+
+	@Test
+	public void when_the_template_and_parameters_match_then_only_bad_references_are_reported() throws Exception {
+		List<String> problems = TemplateValidator.validate(TEMPLATE, Collections.singleton("Subnet"));
+
+		assertEquals(Arrays.asList("Ref to Sise at line 6 names no parameter or resource of the template",
+				"Fn::GetAtt of Instanse at line 6 names no resource of the template"), problems);
+	}
+
+	@Test
+	public void when_parameters_do_not_match_the_template_then_they_are_named() throws Exception {
+		List<String> problems = TemplateValidator.validate(TEMPLATE.replace("Sise", "Size").replace("Instanse", "Instance"),
+				Collections.singleton("Sise"));
+
+		assertEquals(Arrays.asList("parameter Sise is not declared by the template",
+				"parameter Subnet has no default and is not given"), problems);
+	}
+
+	@Test
+	public void when_a_template_is_not_json_then_it_is_not_checked() throws Exception {
+		assertTrue(TemplateValidator.validate("Resources:\n  Queue:\n    Type: AWS::SQS::Queue\n",
+				Collections.singleton("Size")).isEmpty());
+	}
+
+	@Test
+	public void when_one_template_of_several_is_broken_then_no_stack_is_created() throws Exception {
+		try {
+			TemplateValidator.validate(Arrays.asList(check("good", "testStack.json"),
+					check("broken", "test-brokenStack.json"), check("other", "testStack2.json", "SecurityGroup")));
+			fail();
+		} catch (AbortException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Stack broken (test-brokenStack.json): does not parse"));
+			assertTrue(e.getMessage(), e.getMessage().contains("at line 8"));
+			assertEquals(2, e.getMessage().split("\n").length);
+		}
+	}
+
+	private TemplateValidator.Check check(String stackName, String resource, String... parameters) throws Exception {
+		StackBean stackBean = new StackBean(stackName, "", resource, "", 0, "accessKey", "secretKey", false, null);
+		File template = new File(getClass().getResource("/" + resource).toURI());
+		return new TemplateValidator.Check(stackBean, new EnvVars(), stackBean.readTemplate(
+				new FilePath(template.getParentFile()), new EnvVars(), new PrintStream(new ByteArrayOutputStream())),
+				new HashSet<String>(Arrays.asList(parameters)));
+	}
+
+}